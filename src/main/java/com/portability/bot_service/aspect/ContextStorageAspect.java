@@ -17,6 +17,9 @@ import com.portability.bot_service.service.ConversationContextHolder;
  * in the conversation context. This enables the bot to maintain state and
  * reuse information across multiple interactions without asking the user again.
  * 
+ * Only extraction runs inside the tool call; the values are queued and written
+ * once per tool round by ChatOrchestratorService.
+ * 
  * Order(2) ensures this runs after ToolExceptionHandlingAspect (Order 1)
  */
 @Aspect
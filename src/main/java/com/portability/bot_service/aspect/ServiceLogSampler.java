@@ -0,0 +1,88 @@
+package com.portability.bot_service.aspect;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.portability.bot_service.config.ServiceLoggingProperties;
+
+/**
+ * Per package / class sampling rates of the service call logs, initialized
+ * from service-logging.sample-rates and adjustable at runtime. The rate of a
+ * class is resolved once (longest matching prefix) and cached until the rates
+ * change, so sampling a call is one map lookup and one random draw.
+ */
+@Component
+public class ServiceLogSampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceLogSampler.class);
+
+    private final ServiceLoggingProperties properties;
+    private final Map<String, Double> rates = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Double> resolved = new ConcurrentHashMap<>();
+    private volatile double defaultRate;
+
+    public ServiceLogSampler(ServiceLoggingProperties properties) {
+        this.properties = properties;
+        this.defaultRate = validate(properties.getDefaultSampleRate());
+        properties.getSampleRates().forEach((target, rate) -> rates.put(target, validate(rate)));
+    }
+
+    /**
+     * Whether a call of the given class is logged with its arguments and result
+     */
+    public boolean sample(Class<?> type) {
+        double rate = resolved.computeIfAbsent(type, this::resolve);
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Set the rate of a package or class, or remove it when rate is null.
+     * A null target changes the default rate.
+     */
+    public void setRate(String target, Double rate) {
+        if (target == null || target.isBlank()) {
+            defaultRate = rate != null ? validate(rate) : properties.getDefaultSampleRate();
+        } else if (rate == null) {
+            rates.remove(target);
+        } else {
+            rates.put(target, validate(rate));
+        }
+        resolved.clear();
+        logger.info("Service log sampling rate of {} set to {}", target != null ? target : "default", rate);
+    }
+
+    public Map<String, Object> getRates() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("default", defaultRate);
+        snapshot.put("rates", new TreeMap<>(rates));
+        snapshot.put("slow_threshold_ms", properties.getSlowThresholdMs());
+        return snapshot;
+    }
+
+    private double resolve(Class<?> type) {
+        String name = type.getName();
+        String match = null;
+        for (String target : rates.keySet()) {
+            boolean matches = name.equals(target) || name.startsWith(target + ".") || name.startsWith(target + "$");
+            if (matches && (match == null || target.length() > match.length())) {
+                match = target;
+            }
+        }
+        Double rate = match != null ? rates.get(match) : null;
+        return rate != null ? rate : defaultRate;
+    }
+
+    private static double validate(Double rate) {
+        if (rate == null || rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Sampling rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+}
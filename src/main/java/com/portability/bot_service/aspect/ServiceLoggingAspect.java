@@ -1,72 +1,139 @@
 package com.portability.bot_service.aspect;
 
-import org.aspectj.lang.JoinPoint;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.*;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
+import com.portability.bot_service.config.ServiceLoggingProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Timing and logging of service layer calls.
+ *
+ * - Every call is recorded in the service.method timer (class, method,
+ *   outcome tags) instead of a log line
+ * - Arguments and result are logged only at DEBUG, at INFO for sampled calls
+ *   (ServiceLogSampler) and at WARN for calls slower than the threshold.
+ *   Collections and maps are described by size and long values truncated,
+ *   so a conversation history is never rendered in full
+ * - Failures are always logged
+ */
 @Aspect
 @Component
 public class ServiceLoggingAspect {
 
     private static final Logger logger = LoggerFactory.getLogger(ServiceLoggingAspect.class);
 
-    /**
-     * Pointcut for all methods in service layer
-     */
-    @Pointcut("execution(* com.portability.bot_service.service.*.*(..))")
-    public void serviceLayerMethods() {}
+    private static final String TIMER_NAME = "service.method";
 
-    /**
-     * Log before method execution
-     */
-    @Before("serviceLayerMethods()")
-    public void logBefore(JoinPoint joinPoint) {
-        String methodName = joinPoint.getSignature().toShortString();
-        Object[] args = joinPoint.getArgs();
-        
-        logger.info("Executing method: {} with arguments: {}", methodName, Arrays.toString(args));
+    private record TimerKey(Method method, boolean success) {
     }
 
-    /**
-     * Log after method execution (successful return)
-     */
-    @AfterReturning(pointcut = "serviceLayerMethods()", returning = "result")
-    public void logAfterReturning(JoinPoint joinPoint, Object result) {
-        String methodName = joinPoint.getSignature().toShortString();
-        logger.info("Method {} executed successfully with result: {}", methodName, result);
+    private final MeterRegistry meterRegistry;
+    private final ServiceLogSampler sampler;
+    private final ServiceLoggingProperties properties;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public ServiceLoggingAspect(MeterRegistry meterRegistry, ServiceLogSampler sampler,
+            ServiceLoggingProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.sampler = sampler;
+        this.properties = properties;
     }
 
     /**
-     * Log after method throws an exception
+     * Pointcut for all methods in service layer
      */
-    @AfterThrowing(pointcut = "serviceLayerMethods()", throwing = "exception")
-    public void logAfterThrowing(JoinPoint joinPoint, Throwable exception) {
-        String methodName = joinPoint.getSignature().toShortString();
-        logger.error("Method {} threw exception: {}", methodName, exception.getMessage(), exception);
-    }
+    @Pointcut("execution(* com.portability.bot_service.service.*.*(..))")
+    public void serviceLayerMethods() {}
 
     /**
-     * Log execution time of methods
+     * Time every service call and log the slow, sampled or failed ones
      */
     @Around("serviceLayerMethods()")
-    public Object logExecutionTime(ProceedingJoinPoint joinPoint) throws Throwable {
-        String methodName = joinPoint.getSignature().toShortString();
-        long startTime = System.currentTimeMillis();
-
+    public Object logServiceCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        long startTime = System.nanoTime();
+        Object result;
         try {
-            Object result = joinPoint.proceed();
-            long executionTime = System.currentTimeMillis() - startTime;
-            logger.info("Method {} executed in {} ms", methodName, executionTime);
-            return result;
+            result = joinPoint.proceed();
         } catch (Throwable throwable) {
-            long executionTime = System.currentTimeMillis() - startTime;
-            logger.error("Method {} failed after {} ms", methodName, executionTime);
+            long elapsed = System.nanoTime() - startTime;
+            timer(joinPoint, false).record(elapsed, TimeUnit.NANOSECONDS);
+            logger.error("Method {} failed after {} ms with arguments: {}",
+                    joinPoint.getSignature().toShortString(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    describeArgs(joinPoint.getArgs()), throwable);
             throw throwable;
         }
+
+        long elapsed = System.nanoTime() - startTime;
+        timer(joinPoint, true).record(elapsed, TimeUnit.NANOSECONDS);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        if (elapsedMillis >= properties.getSlowThresholdMs()) {
+            logger.warn("Slow call {} took {} ms with arguments: {}, result: {}",
+                    joinPoint.getSignature().toShortString(), elapsedMillis,
+                    describeArgs(joinPoint.getArgs()), describe(result));
+        } else if (sampler.sample(joinPoint.getSignature().getDeclaringType())) {
+            logger.info("Method {} executed in {} ms with arguments: {}, result: {}",
+                    joinPoint.getSignature().toShortString(), elapsedMillis,
+                    describeArgs(joinPoint.getArgs()), describe(result));
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Method {} executed in {} ms with arguments: {}, result: {}",
+                    joinPoint.getSignature().toShortString(), elapsedMillis,
+                    describeArgs(joinPoint.getArgs()), describe(result));
+        }
+        return result;
+    }
+
+    private Timer timer(ProceedingJoinPoint joinPoint, boolean success) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return timers.computeIfAbsent(new TimerKey(method, success), key -> Timer.builder(TIMER_NAME)
+                .description("Service layer method execution time")
+                .tag("class", key.method().getDeclaringClass().getSimpleName())
+                .tag("method", key.method().getName())
+                .tag("outcome", key.success() ? "success" : "error")
+                .register(meterRegistry));
+    }
+
+    private String describeArgs(Object[] args) {
+        StringBuilder described = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                described.append(", ");
+            }
+            described.append(describe(args[i]));
+        }
+        return described.append(']').toString();
+    }
+
+    // Bounded rendering: sizes for containers, truncated text otherwise
+    private String describe(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Collection<?> collection) {
+            return value.getClass().getSimpleName() + "[size=" + collection.size() + "]";
+        }
+        if (value instanceof Map<?, ?> map) {
+            return value.getClass().getSimpleName() + "[size=" + map.size() + "]";
+        }
+        if (value.getClass().isArray()) {
+            return value.getClass().getComponentType().getSimpleName() + "[" + Array.getLength(value) + "]";
+        }
+        String text = String.valueOf(value);
+        int maxLength = properties.getMaxValueLength();
+        return text.length() > maxLength ? text.substring(0, maxLength) + "...(" + text.length() + " chars)" : text;
     }
 }
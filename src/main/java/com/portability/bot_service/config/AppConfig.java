@@ -2,6 +2,7 @@ package com.portability.bot_service.config;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,6 +11,9 @@ import com.portability.bot_service.service.PostgresChatMemory;
 
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties({ StateMachineProperties.class, ContextSummaryProperties.class, EncryptionProperties.class,
+        ServiceLoggingProperties.class, MessageRetentionProperties.class,
+        JobProperties.class, InactivityProperties.class })
 public class AppConfig {
 
     @Bean
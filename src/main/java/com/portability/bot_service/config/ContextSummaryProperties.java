@@ -0,0 +1,50 @@
+package com.portability.bot_service.config;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.portability.bot_service.model.enm.ContextSection;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import lombok.Data;
+
+/**
+ * Rendering of the context summary in the system prompt (context.summary).
+ *
+ * - VERBOSE: headed sections with labels and instructions per section
+ * - COMPACT: one key=value line per section with only non-null fields;
+ *   encrypted values are reduced to present / missing flags
+ *
+ * In COMPACT mode, sections lists the sections relevant to each state. States
+ * without an entry get every section; errors are always included.
+ */
+@Data
+@ConfigurationProperties(prefix = "context.summary")
+public class ContextSummaryProperties {
+
+    private static final List<ContextSection> ALL_SECTIONS = List.of(ContextSection.values());
+
+    public enum Format {
+        VERBOSE, COMPACT
+    }
+
+    private Format format = Format.VERBOSE;
+
+    private Map<ConversationState, List<ContextSection>> sections = new EnumMap<>(ConversationState.class);
+
+    private Cache cache = new Cache();
+
+    @Data
+    public static class Cache {
+        private long maximumSize = 10000;
+        private long expireAfterAccessMinutes = 30;
+    }
+
+    public List<ContextSection> sectionsFor(ConversationState state) {
+        List<ContextSection> configured = state != null ? sections.get(state) : null;
+        return configured != null ? configured : ALL_SECTIONS;
+    }
+}
@@ -0,0 +1,61 @@
+package com.portability.bot_service.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Keyring of SensitiveDataEncryptor (security.encryption).
+ *
+ * Ciphertexts carry the version of the key that produced them ("v2:..."). New
+ * values are always encrypted with current-version; older versions stay
+ * readable while they are in the keyring, and SensitiveDataReencryptionService
+ * moves stored values to the current key. Unprefixed ciphertexts written
+ * before versioning are read with version 1.
+ */
+@Data
+@ConfigurationProperties(prefix = "security.encryption")
+public class EncryptionProperties {
+
+    public static final int LEGACY_VERSION = 1;
+
+    /**
+     * Base64 AES key for version 1 (and unversioned ciphertexts), unless keys has an entry for 1
+     */
+    private String key;
+
+    /**
+     * Base64 AES keys by version
+     */
+    private Map<Integer, String> keys = new HashMap<>();
+
+    /**
+     * Version used for new ciphertexts
+     */
+    private int currentVersion = LEGACY_VERSION;
+
+    /**
+     * Base64 HMAC key of the blind indexes (see BlindIndexer); lookups are disabled without it
+     */
+    private String blindIndexKey;
+
+    /**
+     * Idle AES-GCM Cipher instances kept for reuse
+     */
+    private int cipherPoolSize = 64;
+
+    private Reencryption reencryption = new Reencryption();
+
+    @Data
+    public static class Reencryption {
+        private boolean enabled = true;
+        private int batchSize = 500;
+        /**
+         * Upper bound on conversations scanned per second
+         */
+        private int maxRowsPerSecond = 1000;
+    }
+}
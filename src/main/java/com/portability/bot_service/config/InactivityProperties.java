@@ -0,0 +1,42 @@
+package com.portability.bot_service.config;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.portability.bot_service.model.enm.ConversationState;
+
+import lombok.Data;
+
+/**
+ * Inactivity sweep of conversations (conversation.inactivity), see
+ * ConversationInactivitySweeper.
+ *
+ * Active conversations not updated for longer than the idle timeout of their
+ * state are marked ABANDONED and inactive, and resume that state when the user
+ * writes again. idle-timeouts overrides
+ * default-idle-timeout per state; a zero timeout never sweeps the state.
+ */
+@Data
+@ConfigurationProperties(prefix = "conversation.inactivity")
+public class InactivityProperties {
+
+    private boolean enabled = true;
+
+    private Duration defaultIdleTimeout = Duration.ofDays(7);
+
+    private Map<ConversationState, Duration> idleTimeouts = new EnumMap<>(ConversationState.class);
+
+    /**
+     * Conversations updated per statement, with pauseMs between statements
+     */
+    private int batchSize = 500;
+
+    private long pauseMs = 100;
+
+    public Duration idleTimeoutFor(ConversationState state) {
+        return idleTimeouts.getOrDefault(state, defaultIdleTimeout);
+    }
+}
@@ -0,0 +1,31 @@
+package com.portability.bot_service.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Coordination of scheduled jobs across replicas (jobs), see JobCoordinator.
+ *
+ * - shards: number of hash partitions of the work of a job, by job name
+ *   (default 1). Each shard is claimed by one node, so several replicas
+ *   share a sharded job instead of repeating it
+ * - min-interval: a shard that succeeded less than this ago is not run again,
+ *   so replicas firing the same cron a few seconds apart run it once
+ */
+@Data
+@ConfigurationProperties(prefix = "jobs")
+public class JobProperties {
+
+    private Map<String, Integer> shards = new LinkedHashMap<>();
+
+    private Duration minInterval = Duration.ofHours(1);
+
+    public int shardsFor(String jobName) {
+        return Math.max(1, shards.getOrDefault(jobName, 1));
+    }
+}
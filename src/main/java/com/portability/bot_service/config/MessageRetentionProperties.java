@@ -0,0 +1,48 @@
+package com.portability.bot_service.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.model.enm.MessageType;
+
+import lombok.Data;
+
+/**
+ * Retention of chat_messages (chat.messages.retention), applied by
+ * MessageRetentionService.
+ *
+ * A message is deleted once any rule matching it has expired: its type is in
+ * types and its conversation is in one of states (empty lists match all),
+ * and it is older than retentionDays. defaultRetentionDays applies to every
+ * message; when set, monthly partitions entirely past it are removed whole.
+ */
+@Data
+@ConfigurationProperties(prefix = "chat.messages.retention")
+public class MessageRetentionProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Retention of all messages; null keeps them until the partition archive
+     */
+    private Integer defaultRetentionDays;
+
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Rows deleted per statement, with pauseMs between statements
+     */
+    private int batchSize = 1000;
+
+    private long pauseMs = 200;
+
+    @Data
+    public static class Rule {
+        private List<MessageType> types = new ArrayList<>();
+        private List<ConversationState> states = new ArrayList<>();
+        private int retentionDays;
+    }
+}
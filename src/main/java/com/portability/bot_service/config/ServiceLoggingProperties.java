@@ -0,0 +1,31 @@
+package com.portability.bot_service.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Service call logging (service-logging), see ServiceLoggingAspect.
+ *
+ * Every call is timed as a metric; arguments and result are only logged at
+ * DEBUG, for calls slower than slow-threshold-ms, or for the sampled fraction
+ * of calls. sample-rates maps a package or class name to its rate (0..1), the
+ * longest matching prefix wins; rates can be changed at runtime through
+ * /api/logging/sampling.
+ */
+@Data
+@ConfigurationProperties(prefix = "service-logging")
+public class ServiceLoggingProperties {
+
+    private long slowThresholdMs = 1000;
+
+    private double defaultSampleRate = 0.0;
+
+    private Map<String, Double> sampleRates = new LinkedHashMap<>();
+
+    // Longer argument / result descriptions are truncated
+    private int maxValueLength = 500;
+}
@@ -0,0 +1,117 @@
+package com.portability.bot_service.config;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.portability.bot_service.model.enm.ConversationState;
+
+import lombok.Data;
+
+/**
+ * Declarative conversation state machine rules (conversation.state-machine).
+ *
+ * Rules are evaluated in order and the first one matching a (from, to) pair
+ * decides; pairs matching no rule are rejected. Empty from/to lists match any
+ * state. The condition refines a rule using the state ranks:
+ * - ANY: always matches
+ * - SELF: from == to
+ * - FORWARD: rank(to) > rank(from)
+ * - BACKWARD_WITHIN: rank(from) - maxBackward <= rank(to) < rank(from)
+ * - RESUME: to is the state the conversation was swept to ABANDONED from
+ *   (see ConversationInactivitySweeper); never matches otherwise
+ *
+ * The baseline flow (ranks and rules below) is the default; configuration
+ * only overrides it. A rank set in configuration replaces the default rank
+ * of that state, a rules list replaces the default rules as a whole.
+ *
+ * Compiled once at startup by ConversationStateMachine.
+ */
+@Data
+@ConfigurationProperties(prefix = "conversation.state-machine")
+public class StateMachineProperties {
+
+    /**
+     * Position of each state in the flow (lower = earlier). Every state needs a rank.
+     */
+    private Map<ConversationState, Integer> ranks = defaultRanks();
+
+    /**
+     * Maximum rank distance allowed by BACKWARD_WITHIN rules
+     */
+    private int maxBackward = 20;
+
+    private List<Rule> rules = defaultRules();
+
+    public enum Condition {
+        ANY, SELF, FORWARD, BACKWARD_WITHIN, RESUME
+    }
+
+    @Data
+    public static class Rule {
+        private List<ConversationState> from = new ArrayList<>();
+        private List<ConversationState> to = new ArrayList<>();
+        private Condition when = Condition.ANY;
+        private boolean allow = true;
+    }
+
+    private static Map<ConversationState, Integer> defaultRanks() {
+        Map<ConversationState, Integer> ranks = new EnumMap<>(ConversationState.class);
+        ranks.put(ConversationState.INITIAL, 0);
+        ranks.put(ConversationState.CUSTOMER_REGISTRATION, 5);
+        ranks.put(ConversationState.INTENT_SELECTION, 10);
+        ranks.put(ConversationState.PRODUCT_SELECTED, 20);
+        ranks.put(ConversationState.IMEI_REQUIRED, 30);
+        ranks.put(ConversationState.IMEI_VALIDATED, 35);
+        ranks.put(ConversationState.ADDRESS_REQUIRED, 40);
+        ranks.put(ConversationState.PAYMENT_PENDING, 50);
+        ranks.put(ConversationState.PAYMENT_CONFIRMED, 60);
+        ranks.put(ConversationState.SIM_SHIPPED, 70);
+        ranks.put(ConversationState.PORTABILITY_WAIT_SIM, 80);
+        ranks.put(ConversationState.PORTABILITY_NIP_REQUIRED, 85);
+        ranks.put(ConversationState.PORTABILITY_SIM_ACTIVATION, 90);
+        ranks.put(ConversationState.PORTABILITY_IN_PROGRESS, 95);
+        ranks.put(ConversationState.PORTABILITY_COMPLETED, 100);
+        ranks.put(ConversationState.COMPLETED, 110);
+        ranks.put(ConversationState.BLOCKED, 900);
+        ranks.put(ConversationState.ERROR_STATE, 950);
+        ranks.put(ConversationState.ABANDONED, 999);
+        return ranks;
+    }
+
+    private static List<Rule> defaultRules() {
+        List<ConversationState> any = List.of();
+        List<ConversationState> terminal = List.of(
+                ConversationState.COMPLETED, ConversationState.ABANDONED, ConversationState.BLOCKED);
+
+        List<Rule> rules = new ArrayList<>();
+        // Recovery and restart
+        rules.add(rule(List.of(ConversationState.ERROR_STATE, ConversationState.INITIAL), any, Condition.ANY, true));
+        rules.add(rule(any, List.of(ConversationState.ERROR_STATE, ConversationState.BLOCKED), Condition.ANY, true));
+        // Retries
+        rules.add(rule(any, any, Condition.SELF, true));
+        // A conversation swept for inactivity resumes where it stopped
+        rules.add(rule(List.of(ConversationState.ABANDONED), any, Condition.RESUME, true));
+        // Terminal states can only restart
+        rules.add(rule(terminal, List.of(ConversationState.INITIAL, ConversationState.INTENT_SELECTION),
+                Condition.ANY, true));
+        rules.add(rule(terminal, any, Condition.ANY, false));
+        // Forward progression (may skip states) and going back up to max-backward
+        rules.add(rule(any, any, Condition.FORWARD, true));
+        rules.add(rule(any, any, Condition.BACKWARD_WITHIN, true));
+        return rules;
+    }
+
+    private static Rule rule(List<ConversationState> from, List<ConversationState> to, Condition when,
+            boolean allow) {
+        Rule rule = new Rule();
+        rule.setFrom(new ArrayList<>(from));
+        rule.setTo(new ArrayList<>(to));
+        rule.setWhen(when);
+        rule.setAllow(allow);
+        return rule;
+    }
+}
@@ -0,0 +1,88 @@
+package com.portability.bot_service.controller;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.service.ConversationAnalyticsService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/**
+ * Controller exposing conversation funnel analytics.
+ * All endpoints read the rollup tables, never chat_conversations.
+ */
+@RestController
+@RequestMapping("/api/conversations/analytics")
+@Tag(name = "Conversation Analytics", description = "Funnel analytics per conversation state")
+public class ConversationAnalyticsController {
+
+    private static final int DEFAULT_HOURLY_WINDOW_HOURS = 24;
+    private static final int DEFAULT_WINDOW_DAYS = 7;
+
+    private final ConversationAnalyticsService analyticsService;
+
+    public ConversationAnalyticsController(ConversationAnalyticsService analyticsService) {
+        this.analyticsService = analyticsService;
+    }
+
+    @GetMapping("/states")
+    @Operation(summary = "Get the number of conversations currently in each state")
+    public ResponseEntity<List<Map<String, Object>>> getCurrentStates() {
+        return ResponseEntity.ok(analyticsService.getCurrentStateCounts());
+    }
+
+    @GetMapping("/hourly")
+    @Operation(summary = "Get hourly entered/exited counts per state (default: last 24 hours)")
+    public ResponseEntity<List<Map<String, Object>>> getHourly(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) ConversationState state) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusHours(DEFAULT_HOURLY_WINDOW_HOURS);
+        return ResponseEntity.ok(analyticsService.getHourly(start, end, state));
+    }
+
+    @GetMapping("/dwell")
+    @Operation(summary = "Get average and maximum dwell time per state (default: last 7 days)")
+    public ResponseEntity<List<Map<String, Object>>> getDwellTimes(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(DEFAULT_WINDOW_DAYS);
+        return ResponseEntity.ok(analyticsService.getDwellTimes(start, end));
+    }
+
+    @GetMapping("/dropoff")
+    @Operation(summary = "Get funnel drop-off per state (default: last 7 days)")
+    public ResponseEntity<List<Map<String, Object>>> getDropoff(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(DEFAULT_WINDOW_DAYS);
+        return ResponseEntity.ok(analyticsService.getDropoff(start, end));
+    }
+
+    @PostMapping("/states/rebuild")
+    @Operation(summary = "Recompute current per-state counts from the conversations table")
+    public ResponseEntity<Map<String, Object>> rebuildCurrentStates() {
+        int states = analyticsService.rebuildCurrentCounts();
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "states", states
+        ));
+    }
+}
@@ -2,6 +2,8 @@ package com.portability.bot_service.controller;
 
 import java.util.Map;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -9,13 +11,22 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.portability.bot_service.model.dto.BlindIndexLookupRequest;
+import com.portability.bot_service.model.dto.ClearConversationsRequest;
 import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.service.BlindIndexService;
+import com.portability.bot_service.service.ContextEnricher;
+import com.portability.bot_service.service.ConversationCache;
+import com.portability.bot_service.service.ConversationEventService;
+import com.portability.bot_service.service.ConversationStateMachine;
 import com.portability.bot_service.service.ConversationStateService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 
 /**
  * Controller for managing conversation states and context.
@@ -27,9 +38,25 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class ConversationController {
 
     private final ConversationStateService stateService;
+    private final ConversationCache conversationCache;
+    private final ConversationEventService eventService;
+    private final ConversationStateMachine stateMachine;
+    private final ContextEnricher contextEnricher;
+    private final BlindIndexService blindIndexService;
 
-    public ConversationController(ConversationStateService stateService) {
+    public ConversationController(
+            ConversationStateService stateService,
+            ConversationCache conversationCache,
+            ConversationEventService eventService,
+            ConversationStateMachine stateMachine,
+            ContextEnricher contextEnricher,
+            BlindIndexService blindIndexService) {
         this.stateService = stateService;
+        this.conversationCache = conversationCache;
+        this.eventService = eventService;
+        this.stateMachine = stateMachine;
+        this.contextEnricher = contextEnricher;
+        this.blindIndexService = blindIndexService;
     }
 
     @GetMapping("/{conversationId}/state")
@@ -88,6 +115,14 @@ public class ConversationController {
         ));
     }
 
+    @GetMapping("/{conversationId}/context/summary")
+    @Operation(summary = "Compare the verbose and compact context summaries (size and estimated tokens)")
+    public ResponseEntity<Map<String, Object>> compareContextSummaries(
+            @PathVariable String conversationId) {
+
+        return ResponseEntity.ok(contextEnricher.compareFormats(conversationId));
+    }
+
     @GetMapping("/{conversationId}/stats")
     @Operation(summary = "Get conversation statistics")
     public ResponseEntity<Map<String, Object>> getConversationStats(
@@ -97,6 +132,66 @@ public class ConversationController {
         return ResponseEntity.ok(stats);
     }
 
+    @GetMapping("/{conversationId}/events")
+    @Operation(summary = "Get the latest snapshot and the events recorded after it")
+    public ResponseEntity<Map<String, Object>> getConversationEvents(
+            @PathVariable String conversationId,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        return ResponseEntity.ok(eventService.getEventsSinceSnapshot(conversationId, limit));
+    }
+
+    @GetMapping("/state-machine")
+    @Operation(summary = "Get the compiled state transition table and per-edge attempt counters")
+    public ResponseEntity<Map<String, Object>> getStateMachine() {
+        return ResponseEntity.ok(stateMachine.export());
+    }
+
+    @GetMapping(value = "/state-machine/diagram", produces = MediaType.TEXT_PLAIN_VALUE)
+    @Operation(summary = "Get the allowed state transitions as a Graphviz (dot) or Mermaid diagram")
+    public ResponseEntity<String> getStateMachineDiagram(
+            @RequestParam(defaultValue = "dot") String format) {
+        return ResponseEntity.ok(stateMachine.toDiagram(format));
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(summary = "Get conversation cache statistics (hit rate, memory usage)")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(conversationCache.getStats());
+    }
+
+    @PostMapping("/lookup")
+    @Operation(summary = "Find conversations by IMEI, SIM ICC or portability phone (blind index lookup)")
+    public ResponseEntity<Map<String, Object>> lookupConversations(
+            @Valid @RequestBody BlindIndexLookupRequest request) {
+
+        if (!blindIndexService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "status", "error",
+                    "message", "Blind index lookup is not configured (security.encryption.blind-index-key)"
+            ));
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "field", request.field(),
+                "conversationIds", blindIndexService.findConversationIds(request.field(), request.value())
+        ));
+    }
+
+    @PostMapping("/clear")
+    @Operation(summary = "Clear several conversations in one batched call")
+    public ResponseEntity<Map<String, Object>> clearConversations(
+            @Valid @RequestBody ClearConversationsRequest request) {
+
+        int cleared = stateService.clearConversations(request.conversationIds());
+
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "requested", request.conversationIds().size(),
+                "cleared", cleared
+        ));
+    }
+
     @DeleteMapping("/{conversationId}")
     @Operation(summary = "Reset conversation to initial state")
     public ResponseEntity<Map<String, String>> resetConversation(
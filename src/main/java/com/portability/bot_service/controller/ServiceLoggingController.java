@@ -0,0 +1,45 @@
+package com.portability.bot_service.controller;
+
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.portability.bot_service.aspect.ServiceLogSampler;
+import com.portability.bot_service.model.dto.ServiceLogSamplingRequest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+
+/**
+ * Controller adjusting the service call log sampling at runtime.
+ */
+@RestController
+@RequestMapping("/api/logging")
+@Tag(name = "Logging", description = "Runtime control of the service call logs")
+public class ServiceLoggingController {
+
+    private final ServiceLogSampler sampler;
+
+    public ServiceLoggingController(ServiceLogSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    @GetMapping("/sampling")
+    @Operation(summary = "Get the service call log sampling rates")
+    public ResponseEntity<Map<String, Object>> getSampling() {
+        return ResponseEntity.ok(sampler.getRates());
+    }
+
+    @PutMapping("/sampling")
+    @Operation(summary = "Set the sampling rate of a package or class (or the default rate)")
+    public ResponseEntity<Map<String, Object>> setSampling(@Valid @RequestBody ServiceLogSamplingRequest request) {
+        sampler.setRate(request.target(), request.rate());
+        return ResponseEntity.ok(sampler.getRates());
+    }
+}
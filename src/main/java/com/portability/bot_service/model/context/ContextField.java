@@ -0,0 +1,30 @@
+package com.portability.bot_service.model.context;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a DTO field, record component or no-argument method to a flat
+ * conversation context key.
+ */
+@Target({ ElementType.FIELD, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ContextField {
+
+    /**
+     * Flat context key (see ConversationContext.FLAT_KEYS)
+     */
+    String value();
+
+    /**
+     * Personal data: the value is never logged
+     */
+    boolean sensitive() default false;
+
+    /**
+     * Stored encrypted with SensitiveDataEncryptor; null values are skipped
+     */
+    boolean encrypted() default false;
+}
@@ -0,0 +1,20 @@
+package com.portability.bot_service.model.context;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a tool response DTO whose @ContextField members are captured into
+ * the conversation context (see ContextExtractorRegistry).
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ContextSource {
+
+    /**
+     * Tools whose responses are captured. Empty captures the type from any tool.
+     */
+    String[] tools() default {};
+}
@@ -0,0 +1,471 @@
+package com.portability.bot_service.model.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Typed conversation context stored in chat_conversations.context_data.
+ *
+ * Serialized in a compact form: short property names, null sections and
+ * fields omitted, and a schema version ("v"). Rows written before the typed
+ * context (flat map with keys like customer_id) are migrated lazily when read,
+ * see ConversationContextDeserializer, and stored in the compact form on the
+ * next write.
+ *
+ * The revision ("r") is incremented on every write that changes the context
+ * (see ChatConversation.updateContext), so consumers can memoize anything
+ * derived from it per (conversation, revision).
+ *
+ * Instances are immutable; every change returns a new context. The flat key
+ * view (get, with, toFlatMap) keeps the historical key names for the REST API
+ * and tool response extraction.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonDeserialize(using = ConversationContextDeserializer.class)
+public record ConversationContext(
+        @JsonProperty("v") int version,
+        @JsonProperty("r") long revision,
+        @JsonProperty("c") Customer customer,
+        @JsonProperty("a") Address address,
+        @JsonProperty("o") Order order,
+        @JsonProperty("p") Portability portability,
+        @JsonProperty("k") Checkout checkout,
+        @JsonProperty("i") Imei imei,
+        @JsonProperty("e") Errors errors,
+        @JsonProperty("rt") Retention retention,
+        @JsonProperty("x") Map<String, Object> extra) {
+
+    public static final int CURRENT_VERSION = 1;
+
+    private static final ConversationContext EMPTY =
+            new ConversationContext(CURRENT_VERSION, 0, null, null, null, null, null, null, null, null, Map.of());
+
+    /**
+     * Flat keys in display order. customer_name and last_order_id are derived
+     * and never stored.
+     */
+    public static final List<String> FLAT_KEYS = List.of(
+            "customer_id", "customer_name", "customer_first_name", "customer_last_name",
+            "customer_email", "customer_phone",
+            "address_id", "address_street", "address_number", "address_district",
+            "address_postal_code", "address_reference", "address_full",
+            "order_id", "order_product_id", "order_status", "last_order_id",
+            "portability_id", "portability_order_id", "portability_phone", "portability_status",
+            "portability_imei", "portability_nip", "sim_card_icc",
+            "checkout_session_id", "checkout_session_url", "payment_completed",
+            "imei_checked", "imei_compatible", "imei_compatibility_message",
+            "last_error", "error_timestamp", "failed_tool", "error_count",
+            "_cleaned_at", "_retention_policy");
+
+    public ConversationContext {
+        // A section without any value is stored as absent, so removing its
+        // last field leaves no empty object behind ("c":{}) and isEmpty holds
+        if (customer != null && allNull(customer.id(), customer.firstName(), customer.lastName(),
+                customer.email(), customer.phone())) {
+            customer = null;
+        }
+        if (address != null && allNull(address.id(), address.street(), address.number(), address.district(),
+                address.postalCode(), address.reference(), address.full())) {
+            address = null;
+        }
+        if (order != null && allNull(order.id(), order.productId(), order.status())) {
+            order = null;
+        }
+        if (portability != null && allNull(portability.id(), portability.orderId(), portability.phone(),
+                portability.status(), portability.imei(), portability.nip(), portability.simIcc())) {
+            portability = null;
+        }
+        if (checkout != null && allNull(checkout.sessionId(), checkout.sessionUrl(), checkout.paymentCompleted())) {
+            checkout = null;
+        }
+        if (imei != null && allNull(imei.checked(), imei.compatible(), imei.message())) {
+            imei = null;
+        }
+        if (errors != null && allNull(errors.lastError(), errors.timestamp(), errors.failedTool(), errors.count())) {
+            errors = null;
+        }
+        if (retention != null && allNull(retention.cleanedAt(), retention.policy())) {
+            retention = null;
+        }
+        // Map.copyOf returns the same instance when extra is already immutable
+        extra = extra == null ? Map.of() : Map.copyOf(extra);
+    }
+
+    public static ConversationContext empty() {
+        return EMPTY;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Customer(
+            @JsonProperty("id") Long id,
+            @JsonProperty("fn") String firstName,
+            @JsonProperty("ln") String lastName,
+            @JsonProperty("em") String email,
+            @JsonProperty("ph") String phone) {
+
+        @JsonIgnore
+        public String fullName() {
+            if (firstName == null && lastName == null) {
+                return null;
+            }
+            return ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Address(
+            @JsonProperty("id") Long id,
+            @JsonProperty("st") String street,
+            @JsonProperty("no") String number,
+            @JsonProperty("di") String district,
+            @JsonProperty("pc") String postalCode,
+            @JsonProperty("rf") String reference,
+            @JsonProperty("fu") String full) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Order(
+            @JsonProperty("id") String id,
+            @JsonProperty("pid") Long productId,
+            @JsonProperty("s") String status) {
+    }
+
+    /**
+     * Portability data. imei, nip and simIcc hold ciphertexts.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Portability(
+            @JsonProperty("id") Long id,
+            @JsonProperty("oid") String orderId,
+            @JsonProperty("ph") String phone,
+            @JsonProperty("s") String status,
+            @JsonProperty("im") String imei,
+            @JsonProperty("nip") String nip,
+            @JsonProperty("icc") String simIcc) {
+    }
+
+    /**
+     * Checkout data. sessionUrl holds a ciphertext.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Checkout(
+            @JsonProperty("sid") String sessionId,
+            @JsonProperty("url") String sessionUrl,
+            @JsonProperty("pd") Boolean paymentCompleted) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Imei(
+            @JsonProperty("ck") String checked,
+            @JsonProperty("ok") Boolean compatible,
+            @JsonProperty("msg") String message) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Errors(
+            @JsonProperty("m") String lastError,
+            @JsonProperty("ts") Long timestamp,
+            @JsonProperty("t") String failedTool,
+            @JsonProperty("n") Integer count) {
+
+        /**
+         * Record a new error on top of the previous ones, incrementing the count
+         */
+        public static Errors next(Errors previous, String failedTool, String message, long timestamp) {
+            int count = previous != null && previous.count() != null ? previous.count() + 1 : 1;
+            return new Errors(message, timestamp, failedTool, count);
+        }
+    }
+
+    /**
+     * Marker set by the retention cleanup once sensitive data was removed
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Retention(
+            @JsonProperty("at") String cleanedAt,
+            @JsonProperty("pol") String policy) {
+    }
+
+    // Section updates
+
+    public ConversationContext withCustomer(Customer value) {
+        return new ConversationContext(CURRENT_VERSION, revision, value, address, order, portability, checkout, imei, errors, retention, extra);
+    }
+
+    public ConversationContext withAddress(Address value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, value, order, portability, checkout, imei, errors, retention, extra);
+    }
+
+    public ConversationContext withOrder(Order value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, value, portability, checkout, imei, errors, retention, extra);
+    }
+
+    public ConversationContext withPortability(Portability value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, value, checkout, imei, errors, retention, extra);
+    }
+
+    public ConversationContext withCheckout(Checkout value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, portability, value, imei, errors, retention, extra);
+    }
+
+    public ConversationContext withImei(Imei value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, portability, checkout, value, errors, retention, extra);
+    }
+
+    public ConversationContext withErrors(Errors value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, portability, checkout, imei, value, retention, extra);
+    }
+
+    public ConversationContext withRetention(Retention value) {
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, portability, checkout, imei, errors, value, extra);
+    }
+
+    public ConversationContext withRevision(long value) {
+        return new ConversationContext(CURRENT_VERSION, value, customer, address, order, portability, checkout, imei, errors, retention, extra);
+    }
+
+    private ConversationContext withExtra(String key, Object value) {
+        Map<String, Object> updated = new HashMap<>(extra);
+        if (value == null) {
+            updated.remove(key);
+        } else {
+            updated.put(key, value);
+        }
+        return new ConversationContext(CURRENT_VERSION, revision, customer, address, order, portability, checkout, imei, errors, retention, updated);
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return customer == null && address == null && order == null && portability == null
+                && checkout == null && imei == null && errors == null && retention == null && extra.isEmpty();
+    }
+
+    // Flat key view
+
+    /**
+     * Value stored under a flat (historical) key, or null
+     */
+    public Object get(String key) {
+        return switch (key) {
+            case "customer_id" -> customer != null ? customer.id() : null;
+            case "customer_name" -> customer != null ? customer.fullName() : null;
+            case "customer_first_name" -> customer != null ? customer.firstName() : null;
+            case "customer_last_name" -> customer != null ? customer.lastName() : null;
+            case "customer_email" -> customer != null ? customer.email() : null;
+            case "customer_phone" -> customer != null ? customer.phone() : null;
+            case "address_id" -> address != null ? address.id() : null;
+            case "address_street" -> address != null ? address.street() : null;
+            case "address_number" -> address != null ? address.number() : null;
+            case "address_district" -> address != null ? address.district() : null;
+            case "address_postal_code" -> address != null ? address.postalCode() : null;
+            case "address_reference" -> address != null ? address.reference() : null;
+            case "address_full" -> address != null ? address.full() : null;
+            case "order_id", "last_order_id" -> order != null ? order.id() : null;
+            case "order_product_id" -> order != null ? order.productId() : null;
+            case "order_status" -> order != null ? order.status() : null;
+            case "portability_id" -> portability != null ? portability.id() : null;
+            case "portability_order_id" -> portability != null ? portability.orderId() : null;
+            case "portability_phone" -> portability != null ? portability.phone() : null;
+            case "portability_status" -> portability != null ? portability.status() : null;
+            case "portability_imei" -> portability != null ? portability.imei() : null;
+            case "portability_nip" -> portability != null ? portability.nip() : null;
+            case "sim_card_icc" -> portability != null ? portability.simIcc() : null;
+            case "checkout_session_id" -> checkout != null ? checkout.sessionId() : null;
+            case "checkout_session_url" -> checkout != null ? checkout.sessionUrl() : null;
+            case "payment_completed" -> checkout != null ? checkout.paymentCompleted() : null;
+            case "imei_checked" -> imei != null ? imei.checked() : null;
+            case "imei_compatible" -> imei != null ? imei.compatible() : null;
+            case "imei_compatibility_message" -> imei != null ? imei.message() : null;
+            case "last_error" -> errors != null ? errors.lastError() : null;
+            case "error_timestamp" -> errors != null ? errors.timestamp() : null;
+            case "failed_tool" -> errors != null ? errors.failedTool() : null;
+            case "error_count" -> errors != null ? errors.count() : null;
+            case "_cleaned_at" -> retention != null ? retention.cleanedAt() : null;
+            case "_retention_policy" -> retention != null ? retention.policy() : null;
+            default -> extra.get(key);
+        };
+    }
+
+    /**
+     * Set a value under a flat (historical) key, converting it to the section
+     * field type. A null value removes the field. Unknown keys are kept in the
+     * extra map so nothing sent through the API is lost.
+     *
+     * Returns this instance when the value is unchanged, so callers can detect
+     * a no-op update by identity.
+     */
+    public ConversationContext with(String key, Object value) {
+        Customer cu = customer != null ? customer : new Customer(null, null, null, null, null);
+        Address ad = address != null ? address : new Address(null, null, null, null, null, null, null);
+        Order or = order != null ? order : new Order(null, null, null);
+        Portability po = portability != null ? portability : new Portability(null, null, null, null, null, null, null);
+        Checkout ch = checkout != null ? checkout : new Checkout(null, null, null);
+        Imei im = imei != null ? imei : new Imei(null, null, null);
+        Errors er = errors != null ? errors : new Errors(null, null, null, null);
+        Retention re = retention != null ? retention : new Retention(null, null);
+
+        ConversationContext updated = switch (key) {
+            case "customer_id" -> withCustomer(new Customer(asLong(value), cu.firstName(), cu.lastName(), cu.email(), cu.phone()));
+            case "customer_first_name" -> withCustomer(new Customer(cu.id(), asString(value), cu.lastName(), cu.email(), cu.phone()));
+            case "customer_last_name" -> withCustomer(new Customer(cu.id(), cu.firstName(), asString(value), cu.email(), cu.phone()));
+            case "customer_email" -> withCustomer(new Customer(cu.id(), cu.firstName(), cu.lastName(), asString(value), cu.phone()));
+            case "customer_phone" -> withCustomer(new Customer(cu.id(), cu.firstName(), cu.lastName(), cu.email(), asString(value)));
+            case "address_id" -> withAddress(new Address(asLong(value), ad.street(), ad.number(), ad.district(), ad.postalCode(), ad.reference(), ad.full()));
+            case "address_street" -> withAddress(new Address(ad.id(), asString(value), ad.number(), ad.district(), ad.postalCode(), ad.reference(), ad.full()));
+            case "address_number" -> withAddress(new Address(ad.id(), ad.street(), asString(value), ad.district(), ad.postalCode(), ad.reference(), ad.full()));
+            case "address_district" -> withAddress(new Address(ad.id(), ad.street(), ad.number(), asString(value), ad.postalCode(), ad.reference(), ad.full()));
+            case "address_postal_code" -> withAddress(new Address(ad.id(), ad.street(), ad.number(), ad.district(), asString(value), ad.reference(), ad.full()));
+            case "address_reference" -> withAddress(new Address(ad.id(), ad.street(), ad.number(), ad.district(), ad.postalCode(), asString(value), ad.full()));
+            case "address_full" -> withAddress(new Address(ad.id(), ad.street(), ad.number(), ad.district(), ad.postalCode(), ad.reference(), asString(value)));
+            case "order_id" -> withOrder(new Order(asString(value), or.productId(), or.status()));
+            case "order_product_id" -> withOrder(new Order(or.id(), asLong(value), or.status()));
+            case "order_status" -> withOrder(new Order(or.id(), or.productId(), asString(value)));
+            case "portability_id" -> withPortability(new Portability(asLong(value), po.orderId(), po.phone(), po.status(), po.imei(), po.nip(), po.simIcc()));
+            case "portability_order_id" -> withPortability(new Portability(po.id(), asString(value), po.phone(), po.status(), po.imei(), po.nip(), po.simIcc()));
+            case "portability_phone" -> withPortability(new Portability(po.id(), po.orderId(), asString(value), po.status(), po.imei(), po.nip(), po.simIcc()));
+            case "portability_status" -> withPortability(new Portability(po.id(), po.orderId(), po.phone(), asString(value), po.imei(), po.nip(), po.simIcc()));
+            case "portability_imei" -> withPortability(new Portability(po.id(), po.orderId(), po.phone(), po.status(), asString(value), po.nip(), po.simIcc()));
+            case "portability_nip" -> withPortability(new Portability(po.id(), po.orderId(), po.phone(), po.status(), po.imei(), asString(value), po.simIcc()));
+            case "sim_card_icc" -> withPortability(new Portability(po.id(), po.orderId(), po.phone(), po.status(), po.imei(), po.nip(), asString(value)));
+            case "checkout_session_id" -> withCheckout(new Checkout(asString(value), ch.sessionUrl(), ch.paymentCompleted()));
+            case "checkout_session_url" -> withCheckout(new Checkout(ch.sessionId(), asString(value), ch.paymentCompleted()));
+            case "payment_completed" -> withCheckout(new Checkout(ch.sessionId(), ch.sessionUrl(), asBoolean(value)));
+            case "imei_checked" -> withImei(new Imei(asString(value), im.compatible(), im.message()));
+            case "imei_compatible" -> withImei(new Imei(im.checked(), asBoolean(value), im.message()));
+            case "imei_compatibility_message" -> withImei(new Imei(im.checked(), im.compatible(), asString(value)));
+            case "last_error" -> withErrors(new Errors(asString(value), er.timestamp(), er.failedTool(), er.count()));
+            case "error_timestamp" -> withErrors(new Errors(er.lastError(), asLong(value), er.failedTool(), er.count()));
+            case "failed_tool" -> withErrors(new Errors(er.lastError(), er.timestamp(), asString(value), er.count()));
+            case "error_count" -> withErrors(new Errors(er.lastError(), er.timestamp(), er.failedTool(), asInteger(value)));
+            case "_cleaned_at" -> withRetention(new Retention(asString(value), re.policy()));
+            case "_retention_policy" -> withRetention(new Retention(re.cleanedAt(), asString(value)));
+            // Derived from customer and order, nothing to store
+            case "customer_name", "last_order_id" -> this;
+            default -> withExtra(key, value);
+        };
+        return updated.equals(this) ? this : updated;
+    }
+
+    /**
+     * Apply several flat key updates
+     */
+    public ConversationContext withAll(Map<String, ?> values) {
+        ConversationContext result = this;
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Flat keys whose value differs from the previous context, split into
+     * "set" (new or changed value) and "removed". Derived keys are skipped.
+     */
+    public Map<String, List<String>> changedKeys(ConversationContext previous) {
+        List<String> set = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String key : FLAT_KEYS) {
+            if (!"customer_name".equals(key) && !"last_order_id".equals(key)) {
+                compare(key, get(key), previous.get(key), set, removed);
+            }
+        }
+        Set<String> extraKeys = new HashSet<>(extra.keySet());
+        extraKeys.addAll(previous.extra().keySet());
+        for (String key : extraKeys) {
+            compare(key, extra.get(key), previous.extra().get(key), set, removed);
+        }
+        return Map.of("set", set, "removed", removed);
+    }
+
+    private static void compare(String key, Object current, Object previous, List<String> set, List<String> removed) {
+        if (Objects.equals(current, previous)) {
+            return;
+        }
+        if (current == null) {
+            removed.add(key);
+        } else {
+            set.add(key);
+        }
+    }
+
+    /**
+     * Context as a flat map with the historical keys (non-null values only)
+     */
+    public Map<String, Object> toFlatMap() {
+        Map<String, Object> flat = new LinkedHashMap<>();
+        for (String key : FLAT_KEYS) {
+            Object value = get(key);
+            if (value != null) {
+                flat.put(key, value);
+            }
+        }
+        flat.putAll(extra);
+        return flat;
+    }
+
+    /**
+     * Build a context from a legacy flat map (schema version 0)
+     */
+    public static ConversationContext fromFlatMap(Map<String, ?> values) {
+        return values == null ? EMPTY : EMPTY.withAll(values);
+    }
+
+    private static boolean allNull(Object... values) {
+        for (Object value : values) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String asString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static Long asLong(Object value) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String text && !text.isBlank()) {
+            try {
+                return Long.parseLong(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Integer asInteger(Object value) {
+        Long longValue = asLong(value);
+        return longValue != null ? longValue.intValue() : null;
+    }
+
+    private static Boolean asBoolean(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        return value != null ? Boolean.valueOf(value.toString()) : null;
+    }
+}
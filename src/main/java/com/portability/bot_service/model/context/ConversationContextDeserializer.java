@@ -0,0 +1,75 @@
+package com.portability.bot_service.model.context;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Reads both stored forms of the conversation context:
+ * - Versioned compact form (has "v"): sections mapped directly
+ * - Legacy flat map (no "v"): converted key by key with
+ *   ConversationContext.fromFlatMap, so old rows are migrated on read
+ */
+public class ConversationContextDeserializer extends StdDeserializer<ConversationContext> {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    public ConversationContextDeserializer() {
+        super(ConversationContext.class);
+    }
+
+    @Override
+    public ConversationContext deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
+        ObjectCodec codec = parser.getCodec();
+        JsonNode node = codec.readTree(parser);
+
+        if (node == null || !node.isObject()) {
+            return ConversationContext.empty();
+        }
+
+        if (!node.has("v")) {
+            Map<String, Object> legacy = codec.readValue(codec.treeAsTokens(node), MAP_TYPE);
+            return ConversationContext.fromFlatMap(legacy);
+        }
+
+        return new ConversationContext(
+                node.get("v").asInt(),
+                node.path("r").asLong(0),
+                section(codec, node, "c", ConversationContext.Customer.class),
+                section(codec, node, "a", ConversationContext.Address.class),
+                section(codec, node, "o", ConversationContext.Order.class),
+                section(codec, node, "p", ConversationContext.Portability.class),
+                section(codec, node, "k", ConversationContext.Checkout.class),
+                section(codec, node, "i", ConversationContext.Imei.class),
+                section(codec, node, "e", ConversationContext.Errors.class),
+                section(codec, node, "rt", ConversationContext.Retention.class),
+                extra(codec, node.get("x")));
+    }
+
+    @Override
+    public ConversationContext getNullValue(DeserializationContext ctxt) {
+        return ConversationContext.empty();
+    }
+
+    private static Map<String, Object> extra(ObjectCodec codec, JsonNode value) throws IOException {
+        if (value == null || !value.isObject()) {
+            return null;
+        }
+        Map<String, Object> extra = codec.readValue(codec.treeAsTokens(value), MAP_TYPE);
+        extra.values().removeIf(Objects::isNull);
+        return extra;
+    }
+
+    private static <T> T section(ObjectCodec codec, JsonNode node, String name, Class<T> type) throws IOException {
+        JsonNode value = node.get(name);
+        return value == null || value.isNull() ? null : codec.treeToValue(value, type);
+    }
+}
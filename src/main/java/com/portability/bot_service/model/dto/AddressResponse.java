@@ -1,5 +1,7 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
 import com.portability.bot_service.model.enm.AddressType;
 
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -13,9 +15,11 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@ContextSource(tools = "createAddress")
 public class AddressResponse {
 
     @Schema(description = "Unique identifier of the address", example = "1")
+    @ContextField("address_id")
     private Long id;
 
     @NotNull(message = "Customer ID cannot be null")
@@ -29,6 +33,7 @@ public class AddressResponse {
     private String number;
 
     @Size(max = 100, message = "District cannot exceed 100 characters")
+    @ContextField("address_district")
     private String district;
 
     @Schema(description = "City of the address", example = "New York")
@@ -39,6 +44,7 @@ public class AddressResponse {
 
     @NotBlank(message = "Postal code cannot be empty")
     @Size(max = 20, message = "Postal code cannot exceed 20 characters")
+    @ContextField("address_postal_code")
     private String postalCode;
 
     @Schema(description = "Country of the address", example = "USA")
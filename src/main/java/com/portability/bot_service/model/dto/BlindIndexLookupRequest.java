@@ -0,0 +1,17 @@
+package com.portability.bot_service.model.dto;
+
+import com.portability.bot_service.model.enm.BlindIndexField;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+@Schema(description = "Find conversations by a sensitive identifier (sent in the body so it never appears in URLs or access logs)")
+public record BlindIndexLookupRequest(
+    @Schema(description = "Identifier type", example = "IMEI", required = true)
+    @NotNull(message = "Field is required")
+    BlindIndexField field,
+    @Schema(description = "Identifier value in plain text", example = "356938035643809", required = true)
+    @NotBlank(message = "Value is required")
+    String value
+) {}
@@ -1,15 +1,27 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(description = "Response containing checkout session information")
+@ContextSource(tools = "Create_checkout_session")
 public record CheckoutSessionResponse(
         @Schema(description = "Response message", example = "Checkout session created successfully")
         String message,
         @Schema(description = "Stripe checkout session URL", example = "https://checkout.stripe.com/c/pay/cs_test_1234567890")
+        @ContextField(value = "checkout_session_url", sensitive = true, encrypted = true)
         String stripe_session_url,
         @Schema(description = "Checkout session ID", example = "1")
         String checkout_session_id
         ) {
 
+    /**
+     * A new checkout session starts unpaid
+     */
+    @ContextField("payment_completed")
+    public Boolean paymentCompleted() {
+        return false;
+    }
 }
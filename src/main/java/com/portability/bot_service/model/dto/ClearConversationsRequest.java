@@ -0,0 +1,15 @@
+package com.portability.bot_service.model.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+@Schema(description = "Request to clear several conversations in one batched call")
+public record ClearConversationsRequest(
+    @Schema(description = "Conversation IDs to clear", example = "[\"5215512345678\", \"5215587654321\"]", required = true)
+    @NotEmpty(message = "At least one conversation ID is required")
+    @Size(max = 10000, message = "Cannot clear more than 10000 conversations per call")
+    List<String> conversationIds
+) {}
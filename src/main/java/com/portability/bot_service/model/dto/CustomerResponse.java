@@ -1,16 +1,24 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(description = "Response with customer information")
+@ContextSource(tools = { "registerCustomer", "getCustomerById", "getCustomerByEmail", "getCustomerByPhoneNumber" })
 public record CustomerResponse (
     @Schema(description = "Unique customer ID", example = "1")
+    @ContextField("customer_id")
     Long id,
     @Schema(description = "Customer's first name", example = "John")
+    @ContextField(value = "customer_first_name", sensitive = true)
     String firstName,
     @Schema(description = "Customer's last name", example = "Doe")
+    @ContextField(value = "customer_last_name", sensitive = true)
     String lastName,
     @Schema(description = "Customer's email address", example = "john.doe@email.com")
+    @ContextField(value = "customer_email", sensitive = true)
     String email,
     @Schema(description = "Customer's phone number", example = "555-1234")
     String phoneNumber
@@ -1,18 +1,24 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+
 import java.time.LocalDateTime;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(description = "Response object for order details")
+@ContextSource(tools = { "createNewOrderForSimCardPurchase", "createOrderForSimCardPortabilityPurchase" })
 public record OrderResponse(
     @Schema(description = "Order ID", example = "P17379827490001")
+    @ContextField("order_id")
     String id,
     
     @Schema(description = "Customer ID", example = "1")
     Long customerId,
     
     @Schema(description = "Product ID", example = "1")
+    @ContextField("order_product_id")
     Long productId,
     
     @Schema(description = "SIM card ID", example = "1")
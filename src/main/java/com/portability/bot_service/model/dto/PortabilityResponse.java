@@ -1,5 +1,7 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
 import com.portability.bot_service.model.enm.PortabiliyStatus;
 
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -13,18 +15,24 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @Builder
 @Schema(description = "Portability response for the bot")
+@ContextSource(tools = { "getPortabilityByPhoneNumber", "updateImei", "updatePortabilityNip" })
 public class PortabilityResponse {
 
     @Schema(description = "Portability id.", example = "1")
+    @ContextField("portability_id")
     private Long id;
     @Schema(description = "Portability phone number.", example = "5555555555")
+    @ContextField(value = "portability_phone", sensitive = true, encrypted = true)
     private String phoneNumber;
     @Schema(description = "The customer imei.", example = "1234567891234567891F")
+    @ContextField(value = "portability_imei", sensitive = true, encrypted = true)
     private String imei;
     @Schema(description = "The customer potability nip.", example = "1234")
+    @ContextField(value = "portability_nip", sensitive = true, encrypted = true)
     private String portabilityNip;
     @Schema(description = "Portability status.", example = "STARTED")
     private PortabiliyStatus portabilityStatus;
     @Schema(description = "The order id.", example = "1")
+    @ContextField("portability_order_id")
     private String orderId;
 }
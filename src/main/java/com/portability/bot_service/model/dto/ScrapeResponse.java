@@ -1,7 +1,13 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+
+@ContextSource(tools = "scrapeImeiCompatibility")
 public record ScrapeResponse(
+    @ContextField("imei_compatible")
     Boolean compatibility,
+    @ContextField("imei_compatibility_message")
     String message
 ) {
     
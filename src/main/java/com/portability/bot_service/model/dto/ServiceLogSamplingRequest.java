@@ -0,0 +1,15 @@
+package com.portability.bot_service.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+
+@Schema(description = "Change the sampling rate of the service call logs")
+public record ServiceLogSamplingRequest(
+    @Schema(description = "Package or class name; empty for the default rate", example = "com.portability.bot_service.service.ChatOrchestratorService")
+    String target,
+    @Schema(description = "Fraction of calls logged with arguments and result; null removes the rate of the target", example = "0.05")
+    @DecimalMin(value = "0.0", message = "Rate must be between 0 and 1")
+    @DecimalMax(value = "1.0", message = "Rate must be between 0 and 1")
+    Double rate
+) {}
@@ -1,13 +1,18 @@
 package com.portability.bot_service.model.dto;
 
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+
 import io.swagger.v3.oas.annotations.media.Schema;
 
 @Schema(description = "Response of a SIM Card")
+@ContextSource(tools = "getSimIcc")
 public record SimCardResponse(
     @Schema(description = "Unique ID of the SIM Card", example = "1")
     Long id,
     
     @Schema(description = "ICC number of the SIM Card", example = "89570000000000000001")
+    @ContextField(value = "sim_card_icc", sensitive = true, encrypted = true)
     String icc,
     
     @Schema(description = "Availability of the SIM Card", example = "true")
@@ -0,0 +1,33 @@
+package com.portability.bot_service.model.enm;
+
+/**
+ * Sensitive identifiers with a blind index column on chat_conversations
+ */
+public enum BlindIndexField {
+    IMEI("imei_bidx"),                              // Device IMEI (stored encrypted)
+    SIM_ICC("sim_icc_bidx"),                        // SIM card ICC (stored encrypted)
+    PORTABILITY_PHONE("portability_phone_bidx");    // Number being ported (stored encrypted)
+
+    private final String column;
+
+    BlindIndexField(String column) {
+        this.column = column;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    /**
+     * Canonical form before hashing: separators and spaces removed, letters
+     * upper-cased, phone numbers reduced to their digits
+     */
+    public String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        return this == PORTABILITY_PHONE
+                ? value.replaceAll("\\D", "")
+                : value.replaceAll("[\\s-]", "").toUpperCase();
+    }
+}
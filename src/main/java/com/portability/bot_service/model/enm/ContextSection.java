@@ -0,0 +1,14 @@
+package com.portability.bot_service.model.enm;
+
+/**
+ * Sections of the context summary injected into the system prompt, in prompt order
+ */
+public enum ContextSection {
+    CUSTOMER,       // Registered customer
+    ADDRESS,        // Shipping address
+    ORDER,          // Created order
+    PORTABILITY,    // Portability request (IMEI / NIP only as present or missing)
+    CHECKOUT,       // Checkout session and payment status
+    IMEI,           // IMEI compatibility check
+    ERRORS          // Last tool error, always included when present
+}
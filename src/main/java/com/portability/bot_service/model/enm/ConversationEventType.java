@@ -0,0 +1,10 @@
+package com.portability.bot_service.model.enm;
+
+/**
+ * Types of events in the conversation event log
+ */
+public enum ConversationEventType {
+    STATE_TRANSITION,   // current_state changed (from_state -> to_state)
+    CONTEXT_PATCH,      // Context fields set or removed (names only, no values)
+    ERROR               // Tool or system error recorded for the conversation
+}
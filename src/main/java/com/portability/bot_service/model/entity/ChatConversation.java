@@ -2,13 +2,15 @@ package com.portability.bot_service.model.entity;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.UnaryOperator;
 
 import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.Mutability;
+import org.hibernate.type.descriptor.java.Immutability;
 import org.hibernate.type.SqlTypes;
 
+import com.portability.bot_service.model.context.ConversationContext;
 import com.portability.bot_service.model.enm.ConversationState;
 
 import jakarta.persistence.CascadeType;
@@ -55,9 +57,30 @@ public class ChatConversation {
     @Column(name = "current_state", length = 50)
     private ConversationState currentState = ConversationState.INITIAL;
 
+    // Immutable value: dirty checking compares references/equals instead of deep copies
     @JdbcTypeCode(SqlTypes.JSON)
+    @Mutability(Immutability.class)
     @Column(name = "context_data", columnDefinition = "jsonb")
-    private Map<String, Object> contextData = new HashMap<>();
+    private ConversationContext contextData = ConversationContext.empty();
+
+    // Blind indexes (keyed HMACs) of sensitive identifiers, see BlindIndexService
+    @Column(name = "imei_bidx", length = 32)
+    private String imeiIndex;
+
+    @Column(name = "sim_icc_bidx", length = 32)
+    private String simIccIndex;
+
+    @Column(name = "portability_phone_bidx", length = 32)
+    private String portabilityPhoneIndex;
+
+    // When the conversation entered current_state, used for dwell time analytics
+    @Column(name = "state_entered_at")
+    private LocalDateTime stateEnteredAt;
+
+    // State an idle conversation was swept to ABANDONED from, resumed when its user comes back
+    @Enumerated(EnumType.STRING)
+    @Column(name = "abandoned_from_state", length = 50)
+    private ConversationState abandonedFromState;
 
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -68,6 +91,30 @@ public class ChatConversation {
     @Column(name = "is_active")
     private Boolean isActive = true;
 
+    // Message counters maintained by the write path so stats never load the messages collection.
+    // Only changed by the counter statements (ChatConversationRepository), never by an entity save.
+    @Column(name = "message_count", nullable = false, updatable = false)
+    private Integer messageCount = 0;
+
+    @Column(name = "user_message_count", nullable = false, updatable = false)
+    private Integer userMessageCount = 0;
+
+    @Column(name = "assistant_message_count", nullable = false, updatable = false)
+    private Integer assistantMessageCount = 0;
+
+    @Column(name = "tool_message_count", nullable = false, updatable = false)
+    private Integer toolMessageCount = 0;
+
+    @Column(name = "total_characters", nullable = false, updatable = false)
+    private Long totalCharacters = 0L;
+
+    @Column(name = "last_message_at", updatable = false)
+    private LocalDateTime lastMessageAt;
+
+    // Next message_order to hand out; unlike message_count never decremented by the retention purge
+    @Column(name = "next_message_order", nullable = false, updatable = false)
+    private Integer nextMessageOrder = 0;
+
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     @OrderBy("messageOrder ASC")
     private List<ChatMessage> messages = new ArrayList<>();
@@ -77,25 +124,44 @@ public class ChatConversation {
         this.conversationId = conversationId;
         this.phoneNumber = phoneNumber;
         this.currentState = ConversationState.INITIAL;
-        this.contextData = new HashMap<>();
+        this.stateEnteredAt = LocalDateTime.now();
+        this.contextData = ConversationContext.empty();
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
         this.isActive = true;
+        this.messageCount = 0;
+        this.userMessageCount = 0;
+        this.assistantMessageCount = 0;
+        this.toolMessageCount = 0;
+        this.totalCharacters = 0L;
+        this.nextMessageOrder = 0;
     }
 
     // Helper methods for context management
-    public void addContextData(String key, Object value) {
-        if (this.contextData == null) {
-            this.contextData = new HashMap<>();
-        }
-        this.contextData.put(key, value);
+    public ConversationContext getContextData() {
+        return this.contextData != null ? this.contextData : ConversationContext.empty();
     }
 
-    public Object getContextData(String key) {
-        return this.contextData != null ? this.contextData.get(key) : null;
+    /**
+     * Apply a change to the context, bumping its revision if anything changed
+     */
+    public void updateContext(UnaryOperator<ConversationContext> change) {
+        ConversationContext previous = getContextData();
+        ConversationContext updated = change.apply(previous);
+        if (!updated.equals(previous)) {
+            this.contextData = updated.withRevision(previous.revision() + 1);
+        }
     }
 
     public void updateState(ConversationState newState) {
+        if (newState != this.currentState) {
+            this.stateEnteredAt = LocalDateTime.now();
+        }
+        // A conversation leaving ABANDONED (e.g. the user came back) is active again
+        this.isActive = newState != ConversationState.ABANDONED;
+        if (newState != ConversationState.ABANDONED) {
+            this.abandonedFromState = null;
+        }
         this.currentState = newState;
         this.updatedAt = LocalDateTime.now();
     }
@@ -43,6 +43,10 @@ public class ChatMessage {
     @Column(name = "conversation_id", nullable = false)
     private String conversationId;
 
+    // Numeric reference to chat_conversations.id (dual-written with conversation_id)
+    @Column(name = "conversation_ref")
+    private Long conversationRef;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "message_type", nullable = false, length = 20)
     private MessageType messageType;
@@ -61,13 +65,14 @@ public class ChatMessage {
     private LocalDateTime createdAt;
 
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "conversation_id", referencedColumnName = "conversation_id", insertable = false, updatable = false)
+    @JoinColumn(name = "conversation_ref", insertable = false, updatable = false)
     @JsonIgnore
     private ChatConversation conversation;
 
     // Constructor for new messages
-    public ChatMessage(String conversationId, MessageType messageType, String content, Integer messageOrder) {
+    public ChatMessage(String conversationId, Long conversationRef, MessageType messageType, String content, Integer messageOrder) {
         this.conversationId = conversationId;
+        this.conversationRef = conversationRef;
         this.messageType = messageType;
         this.content = content;
         this.messageOrder = messageOrder;
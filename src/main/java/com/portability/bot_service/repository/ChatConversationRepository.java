@@ -1,10 +1,13 @@
 package com.portability.bot_service.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.portability.bot_service.model.entity.ChatConversation;
@@ -19,11 +22,118 @@ public interface ChatConversationRepository extends JpaRepository<ChatConversati
 
     Optional<ChatConversation> findByPhoneNumber(String phoneNumber);
 
+    @Query("SELECT c.id FROM ChatConversation c WHERE c.conversationId = :conversationId")
+    Optional<Long> findIdByConversationId(@Param("conversationId") String conversationId);
+
     boolean existsByConversationId(String conversationId);
 
     /**
-     * Find conversations older than a specific date that are still active. Used
-     * by cleanup service to identify conversations eligible for data cleanup.
+     * Set the state, active flag and (optionally) empty the context of several
+     * conversations in one statement. Message counters are reset as well since
+     * callers delete the messages in the same transaction, and the context
+     * snapshot of the event log is dropped.
+     *
+     * Returns one row per updated conversation: [id, previous current_state,
+     * previous state_entered_at], so the caller can record the state
+     * transitions without reading first.
+     */
+    @Query(value = """
+            UPDATE chat_conversations c SET
+                current_state = :state,
+                is_active = :active,
+                context_data = CASE WHEN :clearContext
+                    THEN jsonb_build_object('v', 1, 'r', COALESCE((c.context_data ->> 'r')::bigint, 0) + 1)
+                    ELSE c.context_data END,
+                imei_bidx = CASE WHEN :clearContext THEN NULL ELSE c.imei_bidx END,
+                sim_icc_bidx = CASE WHEN :clearContext THEN NULL ELSE c.sim_icc_bidx END,
+                portability_phone_bidx = CASE WHEN :clearContext THEN NULL ELSE c.portability_phone_bidx END,
+                snapshot_context = NULL,
+                message_count = 0,
+                user_message_count = 0,
+                assistant_message_count = 0,
+                tool_message_count = 0,
+                total_characters = 0,
+                last_message_at = NULL,
+                next_message_order = 0,
+                abandoned_from_state = NULL,
+                state_entered_at = CASE WHEN c.current_state = :state THEN c.state_entered_at
+                                        ELSE CURRENT_TIMESTAMP END,
+                updated_at = CURRENT_TIMESTAMP
+            FROM (
+                SELECT id, current_state, state_entered_at
+                FROM chat_conversations
+                WHERE conversation_id IN (:conversationIds)
+                FOR UPDATE
+            ) previous
+            WHERE c.id = previous.id
+            RETURNING c.id, previous.current_state, previous.state_entered_at
+            """, nativeQuery = true)
+    List<Object[]> bulkResetConversations(
+            @Param("conversationIds") Collection<String> conversationIds,
+            @Param("state") String state,
+            @Param("active") boolean active,
+            @Param("clearContext") boolean clearContext);
+
+    /**
+     * Mark up to :limit active conversations in :state, not updated since
+     * :idleBefore, as ABANDONED and inactive, oldest first, remembering the
+     * state to resume in abandoned_from_state. Rows locked by a live write are
+     * skipped; updated_at is kept as the last activity.
+     *
+     * Returns one row per updated conversation: [id, previous current_state,
+     * previous state_entered_at, conversation_id].
+     */
+    @Query(value = """
+            UPDATE chat_conversations c SET
+                current_state = 'ABANDONED',
+                abandoned_from_state = previous.current_state,
+                is_active = false,
+                state_entered_at = CURRENT_TIMESTAMP
+            FROM (
+                SELECT id, current_state, state_entered_at
+                FROM chat_conversations
+                WHERE is_active AND updated_at < :idleBefore AND current_state = :state
+                ORDER BY updated_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            ) previous
+            WHERE c.id = previous.id
+            RETURNING c.id, previous.current_state, previous.state_entered_at, c.conversation_id
+            """, nativeQuery = true)
+    List<Object[]> markIdleAbandoned(
+            @Param("state") String state,
+            @Param("idleBefore") LocalDateTime idleBefore,
+            @Param("limit") int limit);
+
+    /**
+     * Atomically increment the message counters of a conversation. Used by the
+     * chat memory write path so statistics can be read without loading the
+     * messages collection.
+     *
+     * Returns the first message order of the added messages, taken from
+     * next_message_order (message_count shrinks when the retention purge
+     * deletes messages). The row lock of the update serializes concurrent
+     * writers, so each gets its own order range.
      */
-    List<ChatConversation> findByUpdatedAtBeforeAndIsActiveTrue(LocalDateTime date);
+    @Query(value = """
+            UPDATE chat_conversations SET
+                next_message_order = next_message_order + :total,
+                message_count = message_count + :total,
+                user_message_count = user_message_count + :userCount,
+                assistant_message_count = assistant_message_count + :assistantCount,
+                tool_message_count = tool_message_count + :toolCount,
+                total_characters = total_characters + :characters,
+                last_message_at = :timestamp,
+                updated_at = :timestamp
+            WHERE id = :id
+            RETURNING next_message_order - :total
+            """, nativeQuery = true)
+    int incrementMessageCounters(
+            @Param("id") Long id,
+            @Param("total") int total,
+            @Param("userCount") int userCount,
+            @Param("assistantCount") int assistantCount,
+            @Param("toolCount") int toolCount,
+            @Param("characters") long characters,
+            @Param("timestamp") LocalDateTime timestamp);
 }
@@ -1,8 +1,11 @@
 package com.portability.bot_service.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -17,16 +20,56 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
 
     List<ChatMessage> findByConversationIdOrderByMessageOrderAsc(String conversationId);
 
-    @Query("SELECT MAX(m.messageOrder) FROM ChatMessage m WHERE m.conversationId = :conversationId")
-    Integer findMaxMessageOrderByConversationId(@Param("conversationId") String conversationId);
 
-    @Query("SELECT m FROM ChatMessage m WHERE m.conversationId = :conversationId ORDER BY m.messageOrder DESC")
+    /**
+     * Most recent messages of a conversation looked up by its numeric id
+     * (chat_conversations.id). The created_at bound lets PostgreSQL prune the
+     * query to the hot partitions.
+     */
+    @Query("SELECT m FROM ChatMessage m WHERE m.conversationRef = :conversationRef AND m.createdAt >= :createdAfter ORDER BY m.messageOrder DESC")
+    List<ChatMessage> findRecentMessagesByConversationRef(
+            @Param("conversationRef") Long conversationRef,
+            @Param("createdAfter") LocalDateTime createdAfter,
+            org.springframework.data.domain.Pageable pageable
+    );
+
+    @Query("SELECT MAX(m.messageOrder) FROM ChatMessage m WHERE m.conversationRef = :conversationRef")
+    Integer findMaxMessageOrderByConversationRef(@Param("conversationRef") Long conversationRef);
+
+    /**
+     * Most recent messages of a conversation created after the given instant.
+     * The created_at bound lets PostgreSQL prune the query to the hot partitions.
+     */
+    @Query("SELECT m FROM ChatMessage m WHERE m.conversationId = :conversationId AND m.createdAt >= :createdAfter ORDER BY m.messageOrder DESC")
     List<ChatMessage> findRecentMessagesByConversationId(
             @Param("conversationId") String conversationId,
+            @Param("createdAfter") LocalDateTime createdAfter,
             org.springframework.data.domain.Pageable pageable
     );
 
     void deleteByConversationId(String conversationId);
 
+    /**
+     * Set-based delete of every message of the given conversations. Unlike the
+     * derived deleteBy method it does not load the entities first. Filters on
+     * conversation_id: only used until the conversation_ref backfill is done.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM ChatMessage m WHERE m.conversationId IN :conversationIds")
+    int bulkDeleteByConversationIds(@Param("conversationIds") Collection<String> conversationIds);
+
+    /**
+     * Same delete filtering on conversation_ref, resolved from the given
+     * conversation ids, once every message carries it
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            DELETE FROM chat_messages
+            WHERE conversation_ref IN (
+                SELECT id FROM chat_conversations WHERE conversation_id IN (:conversationIds)
+            )
+            """, nativeQuery = true)
+    int bulkDeleteByConversationRefs(@Param("conversationIds") Collection<String> conversationIds);
+
     long countByConversationId(String conversationId);
 }
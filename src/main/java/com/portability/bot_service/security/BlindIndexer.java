@@ -0,0 +1,78 @@
+package com.portability.bot_service.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.stereotype.Service;
+
+import com.portability.bot_service.config.EncryptionProperties;
+import com.portability.bot_service.model.enm.BlindIndexField;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Blind indexes of sensitive identifiers: HMAC-SHA256 of the normalized value
+ * under a dedicated key (security.encryption.blind-index-key), prefixed with
+ * the field name so equal values of different fields do not match, truncated
+ * to 128 bits and hex encoded.
+ *
+ * The index is deterministic, so it allows equality lookups without
+ * decrypting; the key must be kept as secret as the encryption keys, because
+ * identifiers such as IMEIs and phone numbers can be enumerated.
+ */
+@Service
+public class BlindIndexer {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int INDEX_BYTES = 16;
+
+    private final EncryptionProperties properties;
+    private Mac prototype;
+
+    public BlindIndexer(EncryptionProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void init() throws GeneralSecurityException {
+        String key = properties.getBlindIndexKey();
+        if (key != null && !key.isEmpty()) {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(Base64.getDecoder().decode(key), ALGORITHM));
+        }
+    }
+
+    public boolean isEnabled() {
+        return prototype != null;
+    }
+
+    /**
+     * Blind index of a plaintext value, or null for null / blank values
+     */
+    public String index(BlindIndexField field, String plaintext) {
+        if (!isEnabled()) {
+            throw new IllegalStateException(
+                    "Blind index key not configured. Set 'security.encryption.blind-index-key'.");
+        }
+        String normalized = field.normalize(plaintext);
+        if (normalized == null || normalized.isEmpty()) {
+            return null;
+        }
+        try {
+            // Initialized prototype cloned per call: Mac is not thread-safe
+            Mac mac = (Mac) prototype.clone();
+            mac.update(field.name().getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) ':');
+            byte[] digest = mac.doFinal(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(Arrays.copyOf(digest, INDEX_BYTES));
+        } catch (CloneNotSupportedException e) {
+            throw new SecurityException("Failed to compute blind index", e);
+        }
+    }
+}
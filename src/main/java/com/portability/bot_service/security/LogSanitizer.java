@@ -8,6 +8,268 @@ package com.portability.bot_service.security;
  */
 public class LogSanitizer {
 
+    // Digit counts of phone numbers (10-13), IMEIs (15) and SIM ICCs (19-20)
+    private static final int MIN_IDENTIFIER_DIGITS = 10;
+    private static final int MAX_IDENTIFIER_DIGITS = 20;
+    private static final int NIP_DIGITS = 4;
+    // Characters allowed between a "nip" label and its value, e.g. "nip": "
+    private static final int NIP_LABEL_GAP = 4;
+    private static final String STRIPE_DOMAIN = "stripe.com";
+
+    /**
+     * Mask the PII found anywhere in free text, typically a formatted log
+     * message. One forward pass, no regular expressions; every lookahead is
+     * bounded, so the cost is linear in the length of the text.
+     *
+     * - Emails: john.doe@example.com -> j***@example.com
+     * - 10 to 20 digit numbers (phones, IMEIs, ICCs): +52 55 1234 5678 -> ***5678
+     * - 4 digit numbers labelled as NIP: nip=1234 -> nip=****
+     * - Stripe URLs: https://checkout.stripe.com/c/pay/cs_test_abc -> https://checkout.stripe.com/***
+     *
+     * Returns the same instance when there is nothing to mask.
+     */
+    public static String sanitize(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int length = text.length();
+        StringBuilder out = null;
+        int copied = 0;     // text before this index is already in out
+        int wordStart = 0;  // start of the current run of email local-part characters
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isLocalPartChar(c) && (i == 0 || !isLocalPartChar(text.charAt(i - 1)))) {
+                wordStart = i;
+            }
+
+            int maskEnd = -1;
+            String mask = null;
+            if (c == '@') {
+                if (i > 0 && wordStart >= copied && isLocalPartChar(text.charAt(i - 1))) {
+                    int domainEnd = emailDomainEnd(text, i + 1);
+                    if (domainEnd > 0) {
+                        mask = text.charAt(wordStart) + "***" + text.substring(i, domainEnd);
+                        maskEnd = domainEnd;
+                    }
+                }
+                if (mask != null) {
+                    out = append(out, text, copied, wordStart, mask);
+                    copied = maskEnd;
+                    i = maskEnd;
+                    continue;
+                }
+            } else if (c == 'h' && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                int hostEnd = stripeHostEnd(text, i);
+                if (hostEnd > 0) {
+                    int urlEnd = hostEnd;
+                    while (urlEnd < length && !isUrlTerminator(text.charAt(urlEnd))) {
+                        urlEnd++;
+                    }
+                    out = append(out, text, copied, i, text.substring(i, hostEnd) + "/***");
+                    copied = urlEnd;
+                    i = urlEnd;
+                    continue;
+                }
+            } else if (isNumberStart(text, i)) {
+                int end = maskedNumberEnd(text, i);
+                if (end > 0) {
+                    out = append(out, text, copied, i, maskNumber(text, i, end));
+                    copied = end;
+                    i = end;
+                    continue;
+                }
+            }
+            i++;
+        }
+
+        if (out == null) {
+            return text;
+        }
+        return out.append(text, copied, length).toString();
+    }
+
+    private static StringBuilder append(StringBuilder out, CharSequence text, int from, int to, String mask) {
+        if (out == null) {
+            out = new StringBuilder(text.length() + 16);
+        }
+        return out.append(text, from, to).append(mask);
+    }
+
+    private static boolean isLocalPartChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isDomainChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '-';
+    }
+
+    private static boolean isUrlTerminator(char c) {
+        return Character.isWhitespace(c) || c == '"' || c == '\'' || c == '<' || c == '>'
+                || c == ')' || c == ']' || c == '}' || c == ',';
+    }
+
+    /**
+     * End of the email domain starting at from, or -1 if it is not a domain
+     * with at least one dot
+     */
+    private static int emailDomainEnd(String text, int from) {
+        int end = from;
+        while (end < text.length() && isDomainChar(text.charAt(end))) {
+            end++;
+        }
+        // A trailing dot ends the sentence, not the domain
+        while (end > from && (text.charAt(end - 1) == '.' || text.charAt(end - 1) == '-')) {
+            end--;
+        }
+        // Look for the dot within the domain only, not back through the text
+        int lastDot = end - 1;
+        while (lastDot > from && text.charAt(lastDot) != '.') {
+            lastDot--;
+        }
+        return lastDot > from && lastDot < end - 1 ? end : -1;
+    }
+
+    /**
+     * End of the host of an http(s) URL starting at from when the host is
+     * Stripe's, -1 otherwise
+     */
+    private static int stripeHostEnd(String text, int from) {
+        int hostStart;
+        if (text.startsWith("https://", from)) {
+            hostStart = from + 8;
+        } else if (text.startsWith("http://", from)) {
+            hostStart = from + 7;
+        } else {
+            return -1;
+        }
+        int hostEnd = hostStart;
+        while (hostEnd < text.length() && isDomainChar(text.charAt(hostEnd))) {
+            hostEnd++;
+        }
+        int domainStart = hostEnd - STRIPE_DOMAIN.length();
+        boolean stripe = domainStart >= hostStart
+                && text.regionMatches(true, domainStart, STRIPE_DOMAIN, 0, STRIPE_DOMAIN.length())
+                && (domainStart == hostStart || text.charAt(domainStart - 1) == '.');
+        return stripe ? hostEnd : -1;
+    }
+
+    // A digit (or '+' and a digit) not glued to a word, a hyphenated id (UUIDs) or a decimal point
+    private static boolean isNumberStart(String text, int i) {
+        char c = text.charAt(i);
+        boolean start = Character.isDigit(c)
+                || (c == '+' && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1)));
+        if (!start || i == 0) {
+            return start;
+        }
+        char previous = text.charAt(i - 1);
+        if (Character.isLetterOrDigit(previous) || previous == '_') {
+            return false;
+        }
+        if (i == 1) {
+            return true;
+        }
+        char beforePrevious = text.charAt(i - 2);
+        return !(previous == '.' && Character.isDigit(beforePrevious))
+                && !(previous == '-' && Character.isLetterOrDigit(beforePrevious));
+    }
+
+    /**
+     * End of the number starting at from when it has to be masked, -1 otherwise.
+     * Single '-' or ' ' between digit groups are part of the number, except
+     * after a date (timestamps like 2026-10-18 12:30:00 are not identifiers).
+     */
+    private static int maskedNumberEnd(String text, int from) {
+        int length = text.length();
+        int j = text.charAt(from) == '+' ? from + 1 : from;
+        if (j == from && isDate(text, from)) {
+            return -1;
+        }
+        int digits = 0;
+        boolean separated = false;
+        int end = j;
+        while (j < length) {
+            char c = text.charAt(j);
+            if (Character.isDigit(c)) {
+                if (++digits > MAX_IDENTIFIER_DIGITS) {
+                    return -1;
+                }
+                end = ++j;
+            } else if ((c == '-' || c == ' ') && j + 1 < length && Character.isDigit(text.charAt(j + 1))) {
+                separated = true;
+                j++;
+            } else {
+                break;
+            }
+        }
+
+        // Glued to a word or to an email local part: not a standalone number
+        if (end < length) {
+            char next = text.charAt(end);
+            if (Character.isLetter(next) || next == '_' || next == '@'
+                    || (next == '-' && end + 1 < length && Character.isLetter(text.charAt(end + 1)))) {
+                return -1;
+            }
+        }
+        if (digits >= MIN_IDENTIFIER_DIGITS) {
+            return end;
+        }
+        if (digits == NIP_DIGITS && !separated && text.charAt(from) != '+' && isLabelledNip(text, from)) {
+            return end;
+        }
+        return -1;
+    }
+
+    // yyyy-MM-dd at from, not followed by another digit
+    private static boolean isDate(String text, int from) {
+        if (from + 10 > text.length() || text.charAt(from + 4) != '-' || text.charAt(from + 7) != '-') {
+            return false;
+        }
+        for (int k = from; k < from + 10; k++) {
+            if (k != from + 4 && k != from + 7 && !Character.isDigit(text.charAt(k))) {
+                return false;
+            }
+        }
+        return from + 10 == text.length() || !Character.isDigit(text.charAt(from + 10));
+    }
+
+    // "nip" right before the value, e.g. nip=1234, NIP: 1234, "portability_nip":"1234"
+    private static boolean isLabelledNip(String text, int valueStart) {
+        int k = valueStart;
+        int gap = 0;
+        while (k > 0 && gap < NIP_LABEL_GAP) {
+            char c = text.charAt(k - 1);
+            if (c != '"' && c != '\'' && c != ':' && c != '=' && c != ' ') {
+                break;
+            }
+            k--;
+            gap++;
+        }
+        return k >= 3
+                && text.regionMatches(true, k - 3, "nip", 0, 3)
+                && (k == 3 || !Character.isLetter(text.charAt(k - 4)));
+    }
+
+    // NIPs entirely, longer identifiers keeping their last 4 digits
+    private static String maskNumber(String text, int from, int end) {
+        char[] lastDigits = new char[NIP_DIGITS];
+        int found = 0;
+        for (int k = end - 1; k >= from && found < NIP_DIGITS; k--) {
+            char c = text.charAt(k);
+            if (Character.isDigit(c)) {
+                lastDigits[NIP_DIGITS - 1 - found++] = c;
+            }
+        }
+        int digits = 0;
+        for (int k = from; k < end && digits <= NIP_DIGITS; k++) {
+            if (Character.isDigit(text.charAt(k))) {
+                digits++;
+            }
+        }
+        return digits == NIP_DIGITS ? "****" : "***" + new String(lastDigits);
+    }
+
     /**
      * Mask email address for logging
      * Example: john.doe@example.com -> j***@example.com
@@ -0,0 +1,17 @@
+package com.portability.bot_service.security;
+
+import ch.qos.logback.classic.pattern.MessageConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Logback converter bound to %m / %msg / %message in logback-spring.xml:
+ * every formatted log message goes through LogSanitizer.sanitize before it is
+ * written, so PII is masked even where the caller did not mask it.
+ */
+public class MaskingMessageConverter extends MessageConverter {
+
+    @Override
+    public String convert(ILoggingEvent event) {
+        return LogSanitizer.sanitize(event.getFormattedMessage());
+    }
+}
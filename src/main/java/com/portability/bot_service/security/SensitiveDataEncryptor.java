@@ -1,9 +1,18 @@
 package com.portability.bot_service.security;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -12,9 +21,12 @@ import javax.crypto.spec.SecretKeySpec;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.portability.bot_service.config.EncryptionProperties;
+
+import jakarta.annotation.PostConstruct;
+
 /**
  * Service for encrypting and decrypting sensitive data using AES-256-GCM.
  * 
@@ -28,6 +40,17 @@ import org.springframework.stereotype.Service;
  * - customer_email (PII)
  * - customer_phone (PII)
  * - address_full (PII)
+ * 
+ * Key versioning: ciphertexts are stored as "v{version}:" + Base64(IV +
+ * ciphertext) and decrypted with that version of the keyring (see
+ * EncryptionProperties). Unprefixed values are read with version 1.
+ * 
+ * Performance:
+ * - Keys are decoded once at startup
+ * - Cipher instances are pooled and re-initialized per operation (a fresh
+ *   IV each time), not thread-bound, so virtual threads do not each build one
+ * - IVs come from one shared DRBG SecureRandom instead of a new one per call
+ * - encryptAll / decryptAll process many fields with a single cipher
  */
 @Service
 public class SensitiveDataEncryptor {
@@ -38,14 +61,51 @@ public class SensitiveDataEncryptor {
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
     
-    @Value("${security.encryption.key:#{null}}")
-    private String encryptionKey;
+    private static final char VERSION_MARKER = 'v';
+    private static final char VERSION_SEPARATOR = ':';
+    private static final Pattern PLAINTEXT_PHONE = Pattern.compile("\\+?[\\d\\s().-]{1,30}");
+
+    private final EncryptionProperties properties;
+    private final Map<Integer, SecretKey> keyring = new HashMap<>();
+    private SecretKey currentKey;
+    private String currentPrefix;
+    private SecureRandom ivRandom;
+    private final Queue<Cipher> cipherPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCiphers = new AtomicInteger();
+
+    public SensitiveDataEncryptor(EncryptionProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void init() {
+        if (properties.getKey() != null && !properties.getKey().isEmpty()) {
+            keyring.put(EncryptionProperties.LEGACY_VERSION, getKeyFromString(properties.getKey()));
+        }
+        properties.getKeys().forEach((version, key) -> keyring.put(version, getKeyFromString(key)));
+
+        if (!keyring.isEmpty()) {
+            currentKey = keyring.get(properties.getCurrentVersion());
+            if (currentKey == null) {
+                throw new IllegalStateException("No key configured for current encryption version "
+                        + properties.getCurrentVersion() + " (security.encryption.keys)");
+            }
+            currentPrefix = prefix(properties.getCurrentVersion());
+            logger.info("Encryption keyring loaded: versions {}, current {}",
+                    keyring.keySet(), properties.getCurrentVersion());
+        }
+        try {
+            ivRandom = SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            ivRandom = new SecureRandom();
+        }
+    }
     
     /**
      * Encrypt plaintext using AES-256-GCM
      * 
      * @param plaintext The string to encrypt
-     * @return Base64-encoded encrypted string (IV + ciphertext)
+     * @return Key version prefix + Base64-encoded (IV + ciphertext)
      * @throws SecurityException if encryption fails
      */
     public String encrypt(String plaintext) {
@@ -55,37 +115,21 @@ public class SensitiveDataEncryptor {
         
         validateEncryptionKey();
         
+        Cipher cipher = borrowCipher();
         try {
-            SecretKey key = getKeyFromString(encryptionKey);
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            
-            // Generate random IV
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-            
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
-            
-            byte[] cipherText = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
-            
-            // Combine IV + ciphertext for storage
-            byte[] combined = new byte[iv.length + cipherText.length];
-            System.arraycopy(iv, 0, combined, 0, iv.length);
-            System.arraycopy(cipherText, 0, combined, iv.length, cipherText.length);
-            
-            return Base64.getEncoder().encodeToString(combined);
-            
+            return encrypt(cipher, plaintext);
         } catch (Exception e) {
             logger.error("Encryption failed", e);
             throw new SecurityException("Failed to encrypt sensitive data", e);
+        } finally {
+            releaseCipher(cipher);
         }
     }
     
     /**
      * Decrypt Base64-encoded encrypted string
      * 
-     * @param encrypted Base64-encoded string (IV + ciphertext)
+     * @param encrypted Optional key version prefix + Base64-encoded (IV + ciphertext)
      * @return Decrypted plaintext
      * @throws SecurityException if decryption fails
      */
@@ -96,24 +140,58 @@ public class SensitiveDataEncryptor {
         
         validateEncryptionKey();
         
+        Cipher cipher = borrowCipher();
         try {
-            byte[] decoded = Base64.getDecoder().decode(encrypted);
-            
-            // Extract IV and ciphertext
-            byte[] iv = Arrays.copyOfRange(decoded, 0, GCM_IV_LENGTH);
-            byte[] cipherText = Arrays.copyOfRange(decoded, GCM_IV_LENGTH, decoded.length);
-            
-            SecretKey key = getKeyFromString(encryptionKey);
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
-            
-            byte[] plainText = cipher.doFinal(cipherText);
-            return new String(plainText, StandardCharsets.UTF_8);
-            
+            return decrypt(cipher, encrypted);
         } catch (Exception e) {
             logger.error("Decryption failed", e);
             throw new SecurityException("Failed to decrypt sensitive data", e);
+        } finally {
+            releaseCipher(cipher);
+        }
+    }
+
+    /**
+     * Encrypt several values with one cipher. Null and empty values are
+     * returned as is, in the same positions.
+     */
+    public List<String> encryptAll(List<String> plaintexts) {
+        validateEncryptionKey();
+
+        List<String> encrypted = new ArrayList<>(plaintexts.size());
+        Cipher cipher = borrowCipher();
+        try {
+            for (String plaintext : plaintexts) {
+                encrypted.add(plaintext == null || plaintext.isEmpty() ? plaintext : encrypt(cipher, plaintext));
+            }
+            return encrypted;
+        } catch (Exception e) {
+            logger.error("Batch encryption failed", e);
+            throw new SecurityException("Failed to encrypt sensitive data", e);
+        } finally {
+            releaseCipher(cipher);
+        }
+    }
+
+    /**
+     * Decrypt several values with one cipher. Null and empty values are
+     * returned as is, in the same positions.
+     */
+    public List<String> decryptAll(List<String> ciphertexts) {
+        validateEncryptionKey();
+
+        List<String> decrypted = new ArrayList<>(ciphertexts.size());
+        Cipher cipher = borrowCipher();
+        try {
+            for (String encrypted : ciphertexts) {
+                decrypted.add(encrypted == null || encrypted.isEmpty() ? encrypted : decrypt(cipher, encrypted));
+            }
+            return decrypted;
+        } catch (Exception e) {
+            logger.error("Batch decryption failed", e);
+            throw new SecurityException("Failed to decrypt sensitive data", e);
+        } finally {
+            releaseCipher(cipher);
         }
     }
     
@@ -121,7 +199,116 @@ public class SensitiveDataEncryptor {
      * Check if encryption is enabled (key is configured)
      */
     public boolean isEncryptionEnabled() {
-        return encryptionKey != null && !encryptionKey.isEmpty();
+        return !keyring.isEmpty();
+    }
+
+    /**
+     * Version of the key that produced a ciphertext
+     */
+    public int keyVersion(String encrypted) {
+        int separator = versionSeparator(encrypted);
+        return separator < 0 ? EncryptionProperties.LEGACY_VERSION
+                : Integer.parseInt(encrypted, 1, separator, 10);
+    }
+
+    /**
+     * Whether a stored value is a phone number in plaintext, as written before
+     * portability_phone was encrypted. Ciphertexts (Base64, version prefix)
+     * never consist of digits and phone separators only.
+     */
+    public static boolean isPlaintextPhone(String value) {
+        return value != null && PLAINTEXT_PHONE.matcher(value).matches();
+    }
+
+    /**
+     * Whether a ciphertext was produced with the current key
+     */
+    public boolean isCurrent(String encrypted) {
+        return encrypted == null || encrypted.isEmpty() || currentPrefix == null || encrypted.startsWith(currentPrefix);
+    }
+
+    /**
+     * Prefix of the ciphertexts produced with the current key
+     */
+    public String getCurrentPrefix() {
+        validateEncryptionKey();
+        return currentPrefix;
+    }
+
+    /**
+     * Re-encrypt a ciphertext with the current key; current ones are returned as is
+     */
+    public String reencrypt(String encrypted) {
+        return isCurrent(encrypted) ? encrypted : encrypt(decrypt(encrypted));
+    }
+
+    private String encrypt(Cipher cipher, String plaintext) throws GeneralSecurityException {
+        byte[] input = plaintext.getBytes(StandardCharsets.UTF_8);
+
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        ivRandom.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, currentKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+
+        // IV + ciphertext (with tag) written into one buffer
+        byte[] combined = new byte[GCM_IV_LENGTH + cipher.getOutputSize(input.length)];
+        System.arraycopy(iv, 0, combined, 0, GCM_IV_LENGTH);
+        cipher.doFinal(input, 0, input.length, combined, GCM_IV_LENGTH);
+
+        return currentPrefix + Base64.getEncoder().encodeToString(combined);
+    }
+
+    private String decrypt(Cipher cipher, String encrypted) throws GeneralSecurityException {
+        int separator = versionSeparator(encrypted);
+        int version = keyVersion(encrypted);
+        SecretKey key = keyring.get(version);
+        if (key == null) {
+            throw new GeneralSecurityException("No key for encryption version " + version);
+        }
+
+        byte[] decoded = Base64.getDecoder().decode(encrypted.substring(separator + 1));
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, decoded, 0, GCM_IV_LENGTH));
+        byte[] plainText = cipher.doFinal(decoded, GCM_IV_LENGTH, decoded.length - GCM_IV_LENGTH);
+        return new String(plainText, StandardCharsets.UTF_8);
+    }
+
+    private static String prefix(int version) {
+        return VERSION_MARKER + Integer.toString(version) + VERSION_SEPARATOR;
+    }
+
+    /**
+     * Index of the ':' ending a "v{digits}" prefix, or -1 for unversioned
+     * values (':' is not part of the Base64 alphabet)
+     */
+    private static int versionSeparator(String encrypted) {
+        if (encrypted.length() < 3 || encrypted.charAt(0) != VERSION_MARKER) {
+            return -1;
+        }
+        int i = 1;
+        while (i < encrypted.length() && Character.isDigit(encrypted.charAt(i))) {
+            i++;
+        }
+        return i > 1 && i < encrypted.length() && encrypted.charAt(i) == VERSION_SEPARATOR ? i : -1;
+    }
+
+    private Cipher borrowCipher() {
+        Cipher cipher = cipherPool.poll();
+        if (cipher != null) {
+            pooledCiphers.decrementAndGet();
+            return cipher;
+        }
+        try {
+            return Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new SecurityException("Cipher " + ALGORITHM + " not available", e);
+        }
+    }
+
+    private void releaseCipher(Cipher cipher) {
+        if (pooledCiphers.incrementAndGet() <= properties.getCipherPoolSize()) {
+            cipherPool.offer(cipher);
+        } else {
+            pooledCiphers.decrementAndGet();
+        }
     }
     
     private void validateEncryptionKey() {
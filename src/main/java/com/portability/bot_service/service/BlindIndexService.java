@@ -0,0 +1,185 @@
+package com.portability.bot_service.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.context.ConversationContext.Portability;
+import com.portability.bot_service.model.enm.BlindIndexField;
+import com.portability.bot_service.model.entity.ChatConversation;
+import com.portability.bot_service.security.BlindIndexer;
+import com.portability.bot_service.security.SensitiveDataEncryptor;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Blind indexes of the sensitive identifiers of a conversation (IMEI, SIM
+ * ICC, portability phone), kept in indexed columns of chat_conversations so a
+ * conversation can be found by value with a single index probe instead of
+ * decrypting every row.
+ *
+ * - Recomputed on every context write that changes the portability section
+ *   (PostgresChatMemory, retention cleanup); cleared by reset
+ * - Conversations stored before the indexes existed are backfilled once in
+ *   the background at startup
+ * - Disabled (no indexing, lookups rejected) without a blind index key
+ */
+@Service
+public class BlindIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlindIndexService.class);
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final BlindIndexer indexer;
+    private final SensitiveDataEncryptor encryptor;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public BlindIndexService(BlindIndexer indexer, SensitiveDataEncryptor encryptor, JdbcTemplate jdbcTemplate) {
+        this.indexer = indexer;
+        this.encryptor = encryptor;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private record Indexes(String imei, String simIcc, String portabilityPhone) {
+    }
+
+    /**
+     * Refresh the indexes of a conversation whose context changed from
+     * previous. Only decrypts when the portability section changed.
+     */
+    public void refresh(ChatConversation conversation, ConversationContext previous) {
+        if (!indexer.isEnabled()
+                || Objects.equals(previous.portability(), conversation.getContextData().portability())) {
+            return;
+        }
+        Indexes indexes = compute(conversation.getContextData().portability());
+        conversation.setImeiIndex(indexes.imei());
+        conversation.setSimIccIndex(indexes.simIcc());
+        conversation.setPortabilityPhoneIndex(indexes.portabilityPhone());
+    }
+
+    /**
+     * Whether lookups are possible (a blind index key is configured)
+     */
+    public boolean isEnabled() {
+        return indexer.isEnabled();
+    }
+
+    /**
+     * Conversation ids holding the given identifier
+     */
+    public List<String> findConversationIds(BlindIndexField field, String value) {
+        String index = indexer.index(field, value);
+        if (index == null) {
+            return List.of();
+        }
+        // Column name comes from the enum, never from the request
+        return jdbcTemplate.queryForList(
+                "SELECT conversation_id FROM chat_conversations WHERE " + field.column() + " = ? ORDER BY id DESC",
+                String.class, index);
+    }
+
+    private Indexes compute(Portability portability) {
+        if (portability == null) {
+            return new Indexes(null, null, null);
+        }
+        return new Indexes(
+                indexEncrypted(BlindIndexField.IMEI, portability.imei()),
+                indexEncrypted(BlindIndexField.SIM_ICC, portability.simIcc()),
+                indexEncrypted(BlindIndexField.PORTABILITY_PHONE, portability.phone()));
+    }
+
+    private String indexEncrypted(BlindIndexField field, String encrypted) {
+        if (encrypted == null) {
+            return null;
+        }
+        if (field == BlindIndexField.PORTABILITY_PHONE && SensitiveDataEncryptor.isPlaintextPhone(encrypted)) {
+            // Stored before the portability phone was encrypted
+            return indexer.index(field, encrypted);
+        }
+        try {
+            return indexer.index(field, encryptor.decrypt(encrypted));
+        } catch (Exception e) {
+            logger.warn("Cannot index {}: stored value not decryptable", field);
+            return null;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (indexer.isEnabled() && encryptor.isEncryptionEnabled()) {
+            executor.submit(this::backfill);
+        }
+    }
+
+    /**
+     * Index conversations with portability data and no index yet, in id order
+     * (keyset chunks). Rows written meanwhile are indexed by the write path.
+     */
+    private void backfill() {
+        long lastId = 0;
+        long indexed = 0;
+        try {
+            while (true) {
+                List<Object[]> chunk = jdbcTemplate.query("""
+                        SELECT id, context_data::text FROM chat_conversations
+                        WHERE id > ?
+                          AND imei_bidx IS NULL AND sim_icc_bidx IS NULL AND portability_phone_bidx IS NULL
+                          AND (context_data -> 'p' IS NOT NULL OR context_data -> 'portability_id' IS NOT NULL)
+                        ORDER BY id
+                        LIMIT ?
+                        """, (rs, rowNum) -> new Object[] { rs.getLong(1), rs.getString(2) },
+                        lastId, BACKFILL_BATCH_SIZE);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                List<Object[]> updates = new ArrayList<>(chunk.size());
+                for (Object[] row : chunk) {
+                    ConversationContext context = objectMapper.readValue((String) row[1], ConversationContext.class);
+                    Indexes indexes = compute(context.portability());
+                    if (indexes.imei() != null || indexes.simIcc() != null || indexes.portabilityPhone() != null) {
+                        updates.add(new Object[] { indexes.imei(), indexes.simIcc(), indexes.portabilityPhone(), row[0] });
+                    }
+                }
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate("""
+                            UPDATE chat_conversations
+                            SET imei_bidx = ?, sim_icc_bidx = ?, portability_phone_bidx = ?
+                            WHERE id = ? AND imei_bidx IS NULL AND sim_icc_bidx IS NULL AND portability_phone_bidx IS NULL
+                            """, updates);
+                    indexed += updates.size();
+                }
+
+                lastId = (Long) chunk.get(chunk.size() - 1)[0];
+                if (chunk.size() < BACKFILL_BATCH_SIZE) {
+                    break;
+                }
+            }
+            if (indexed > 0) {
+                logger.info("Blind index backfill completed: {} conversations indexed", indexed);
+            }
+        } catch (Exception e) {
+            logger.error("Blind index backfill failed after {} conversations, it resumes on next startup", indexed, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,458 @@
+package com.portability.bot_service.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Maintains the monthly range partitions of chat_messages.
+ *
+ * - On startup, converts a legacy unpartitioned chat_messages table into a
+ *   table partitioned by created_at month (one-off, copies existing rows, one
+ *   replica at a time; tables above migration-max-rows are left to an offline
+ *   migration)
+ * - Creates the partitions for the current month and the configured months ahead
+ * - Keeps a DEFAULT partition catching rows outside every monthly range (a
+ *   missed maintenance run, a clock far off) so inserts never fail; rows
+ *   found there are logged as errors, exposed as the
+ *   chat.messages.partitions.default.rows gauge, and moved into their monthly
+ *   partition when it gets created
+ * - Defines the hot window (most recent months) the chat memory reads from
+ * - Archives partitions older than the retention period to gzip'd JSON lines
+ *   files on local disk (or simply drops them) and detaches them from the
+ *   table, taking their messages out of the conversation counters
+ */
+@Service
+public class ChatMessagePartitionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessagePartitionService.class);
+
+    private static final String PARENT_TABLE = "chat_messages";
+    private static final String LEGACY_TABLE = "chat_messages_legacy";
+    private static final String DEFAULT_PARTITION = "chat_messages_default";
+    private static final String PARTITION_PREFIX = "chat_messages_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final int ARCHIVE_FETCH_SIZE = 1000;
+    private static final String MIGRATION_LOCK = "chat-messages-partitioning";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final JobCoordinator jobCoordinator;
+    private final AtomicLong defaultPartitionRows = new AtomicLong();
+
+    @Value("${chat.messages.partitions.months-ahead:2}")
+    private int monthsAhead;
+
+    @Value("${chat.messages.partitions.hot-months:3}")
+    private int hotMonths;
+
+    @Value("${chat.messages.partitions.migration-max-rows:1000000}")
+    private long migrationMaxRows;
+
+    @Value("${chat.messages.archive.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${chat.messages.archive.mode:archive}")
+    private String archiveMode;
+
+    @Value("${chat.messages.archive.directory:./archive/chat_messages}")
+    private String archiveDirectory;
+
+    public ChatMessagePartitionService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            JobCoordinator jobCoordinator, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(ARCHIVE_FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = new ObjectMapper();
+        this.jobCoordinator = jobCoordinator;
+        Gauge.builder("chat.messages.partitions.default.rows", defaultPartitionRows, AtomicLong::get)
+                .description("Chat messages stored in the DEFAULT partition (outside every monthly partition)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Make sure the table is partitioned and the upcoming partitions exist
+     * before the application starts accepting messages.
+     */
+    @PostConstruct
+    public void initializePartitions() {
+        if (migrateLegacyTableIfNeeded()) {
+            ensurePartitions();
+        }
+    }
+
+    /**
+     * Scheduled task creating the upcoming partitions. Runs daily at 1:00 AM,
+     * on one node of the cluster
+     */
+    @Scheduled(cron = "${chat.messages.partitions.cron:0 0 1 * * *}")
+    public void scheduledEnsurePartitions() {
+        jobCoordinator.runExclusive("chat-message-partitions", (shard, shardCount) -> {
+            ensurePartitions();
+            return Map.of();
+        });
+    }
+
+    /**
+     * Create the DEFAULT partition and the partitions for the current month
+     * and the configured number of months ahead, then check the DEFAULT
+     * partition is empty
+     */
+    public void ensurePartitions() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DEFAULT_PARTITION
+                + " PARTITION OF " + PARENT_TABLE + " DEFAULT");
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            createPartitionIfMissing(current.plusMonths(i));
+        }
+        checkDefaultPartition();
+    }
+
+    /**
+     * Count the rows of the DEFAULT partition. Any row there means a monthly
+     * partition was missing when it was written: it stays readable, but is
+     * out of reach of the partition archive until its month is created.
+     *
+     * @return number of rows in the DEFAULT partition
+     */
+    public long checkDefaultPartition() {
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DEFAULT_PARTITION, Long.class);
+        long count = rows != null ? rows : 0;
+        defaultPartitionRows.set(count);
+        if (count > 0) {
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(created_at) FROM " + DEFAULT_PARTITION, Timestamp.class);
+            logger.error("{} holds {} messages outside every monthly partition (oldest: {});"
+                    + " create the missing partitions to move them out", DEFAULT_PARTITION, count, oldest);
+        }
+        return count;
+    }
+
+    /**
+     * Scheduled task moving partitions past retention out of the hot table.
+     * Runs daily at 3:30 AM, on one node of the cluster
+     */
+    @Scheduled(cron = "${chat.messages.archive.cron:0 30 3 * * *}")
+    public void archiveExpiredPartitions() {
+        jobCoordinator.runExclusive("chat-message-archive", (shard, shardCount) -> Map.of(
+                "removed_messages", removePartitionsBefore(YearMonth.now().minusMonths(retentionMonths))));
+    }
+
+    /**
+     * Archive (or drop, depending on the archive mode) and detach the
+     * partitions of the months before oldestRetained
+     *
+     * @return number of messages in the removed partitions
+     */
+    public long removePartitionsBefore(YearMonth oldestRetained) {
+        boolean dropOnly = "drop".equalsIgnoreCase(archiveMode);
+        long removedMessages = 0;
+
+        for (YearMonth month : listPartitionMonths()) {
+            if (!month.isBefore(oldestRetained)) {
+                continue;
+            }
+
+            String partition = partitionName(month);
+            try {
+                if (!dropOnly) {
+                    Path archive = archivePartition(partition);
+                    logger.info("Archived partition {} to {}", partition, archive);
+                }
+                Long messages = transactionTemplate.execute(status -> {
+                    Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partition, Long.class);
+                    decrementMessageCounters(partition);
+                    jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + partition);
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                    return count;
+                });
+                removedMessages += messages != null ? messages : 0;
+                logger.info("Removed expired partition {} (mode: {})", partition, dropOnly ? "drop" : "archive");
+            } catch (Exception e) {
+                logger.error("Failed to archive partition {}", partition, e);
+            }
+        }
+        return removedMessages;
+    }
+
+    // Take the messages of a partition out of the conversation counters
+    private void decrementMessageCounters(String partition) {
+        jdbcTemplate.update("""
+                UPDATE chat_conversations c SET
+                    message_count = GREATEST(c.message_count - removed.total, 0),
+                    user_message_count = GREATEST(c.user_message_count - removed.user_count, 0),
+                    assistant_message_count = GREATEST(c.assistant_message_count - removed.assistant_count, 0),
+                    tool_message_count = GREATEST(c.tool_message_count - removed.tool_count, 0),
+                    total_characters = GREATEST(c.total_characters - removed.characters, 0)
+                FROM (
+                    SELECT conversation_ref,
+                           COUNT(*) AS total,
+                           COUNT(*) FILTER (WHERE message_type = 'USER') AS user_count,
+                           COUNT(*) FILTER (WHERE message_type = 'ASSISTANT') AS assistant_count,
+                           COUNT(*) FILTER (WHERE message_type = 'TOOL') AS tool_count,
+                           COALESCE(SUM(LENGTH(content)), 0) AS characters
+                    FROM %s
+                    WHERE conversation_ref IS NOT NULL
+                    GROUP BY conversation_ref
+                ) removed
+                WHERE c.id = removed.conversation_ref
+                """.formatted(partition));
+    }
+
+    /**
+     * Start of the hot window. Conversation reads restricted to
+     * created_at >= this instant are pruned to the most recent partitions.
+     */
+    public LocalDateTime getHotWindowStart() {
+        return YearMonth.now().minusMonths(hotMonths).atDay(1).atStartOfDay();
+    }
+
+    /**
+     * List the months that currently have a partition attached to chat_messages
+     */
+    public List<YearMonth> listPartitionMonths() {
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT child.relname
+                FROM pg_inherits i
+                JOIN pg_class parent ON parent.oid = i.inhparent
+                JOIN pg_class child ON child.oid = i.inhrelid
+                WHERE parent.relname = ?
+                ORDER BY child.relname
+                """, String.class, PARENT_TABLE);
+
+        List<YearMonth> months = new ArrayList<>();
+        for (String partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            try {
+                months.add(YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+            } catch (DateTimeParseException e) {
+                logger.warn("Ignoring partition with unexpected name: {}", partition);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Create the partition of a month. Postgres refuses to add a partition
+     * while the DEFAULT partition holds rows of its range, so those rows are
+     * moved into a standalone table first, which is then attached (all in one
+     * transaction, the DEFAULT partition locked against concurrent inserts).
+     */
+    private void createPartitionIfMissing(YearMonth month) {
+        String partition = partitionName(month);
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        String bounds = "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (tableExists(partition)) {
+                return;
+            }
+            if (!tableExists(DEFAULT_PARTITION)) {
+                jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + PARENT_TABLE + " " + bounds);
+                return;
+            }
+
+            jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN SHARE ROW EXCLUSIVE MODE");
+            String inRange = " WHERE created_at >= '" + from + "' AND created_at < '" + to + "'";
+            Boolean misplaced = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + inRange + ")", Boolean.class);
+            if (!Boolean.TRUE.equals(misplaced)) {
+                jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + PARENT_TABLE + " " + bounds);
+                return;
+            }
+
+            jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE " + PARENT_TABLE + " INCLUDING DEFAULTS)");
+            int moved = jdbcTemplate.update("INSERT INTO " + partition
+                    + " SELECT * FROM " + DEFAULT_PARTITION + inRange);
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + inRange);
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ATTACH PARTITION " + partition + " " + bounds);
+            logger.warn("Moved {} messages from {} into new partition {}", moved, DEFAULT_PARTITION, partition);
+        });
+    }
+
+    private boolean tableExists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+
+    /**
+     * Converts a plain chat_messages table created before partitioning was
+     * introduced. Runs in a single transaction: the old table is renamed, the
+     * partitioned table is created with the same columns, rows are copied and
+     * the old table is dropped. The id sequence is kept so ids stay unique.
+     *
+     * The rename holds an ACCESS EXCLUSIVE lock on chat_messages until the copy
+     * commits, so chat writes wait for the whole copy. The conversion is
+     * therefore only done automatically up to migration-max-rows (planner
+     * estimate); larger tables are left unpartitioned with an error log, to be
+     * converted in a maintenance window. Replicas starting together serialize
+     * on a transaction advisory lock and re-check the table once they hold it,
+     * so only the first one converts.
+     *
+     * @return true if chat_messages is partitioned
+     */
+    private boolean migrateLegacyTableIfNeeded() {
+        if (!"r".equals(parentRelkind())) {
+            return true;
+        }
+
+        Long estimatedRows = jdbcTemplate.queryForObject(
+                "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = to_regclass(?)",
+                Long.class, PARENT_TABLE);
+        if (estimatedRows != null && estimatedRows > migrationMaxRows) {
+            logger.error("{} is not partitioned and holds about {} rows (above migration-max-rows {}):"
+                    + " convert it offline, partition maintenance is disabled until then",
+                    PARENT_TABLE, estimatedRows, migrationMaxRows);
+            return false;
+        }
+
+        Boolean partitioned = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('" + MIGRATION_LOCK + "'))");
+            if (!"r".equals(parentRelkind())) {
+                // Converted by another replica while we waited for the lock
+                return true;
+            }
+
+            logger.info("Converting {} into a partitioned table", PARENT_TABLE);
+
+            String sequence = jdbcTemplate.queryForObject(
+                    "SELECT pg_get_serial_sequence(?, 'id')", String.class, PARENT_TABLE);
+
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " RENAME TO " + LEGACY_TABLE);
+            jdbcTemplate.execute("ALTER INDEX IF EXISTS chat_messages_pkey RENAME TO chat_messages_legacy_pkey");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_chat_messages_conversation");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_chat_messages_created");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_chat_messages_conversation_ref");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_chat_messages_type_created");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_chat_messages_created_id");
+            if (sequence != null) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY NONE");
+            }
+
+            jdbcTemplate.execute("UPDATE " + LEGACY_TABLE + " SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL");
+            jdbcTemplate.execute("CREATE TABLE " + PARENT_TABLE + " (LIKE " + LEGACY_TABLE + " INCLUDING DEFAULTS)"
+                    + " PARTITION BY RANGE (created_at)");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD PRIMARY KEY (id, created_at)");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD CONSTRAINT fk_conversation"
+                    + " FOREIGN KEY (conversation_id) REFERENCES chat_conversations(conversation_id) ON DELETE CASCADE");
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " ADD CONSTRAINT fk_conversation_ref"
+                    + " FOREIGN KEY (conversation_ref) REFERENCES chat_conversations(id) ON DELETE CASCADE");
+            jdbcTemplate.execute("CREATE INDEX idx_chat_messages_conversation ON "
+                    + PARENT_TABLE + "(conversation_id, message_order)");
+            jdbcTemplate.execute("CREATE INDEX idx_chat_messages_conversation_ref ON "
+                    + PARENT_TABLE + "(conversation_ref, message_order)");
+            jdbcTemplate.execute("CREATE INDEX idx_chat_messages_type_created ON "
+                    + PARENT_TABLE + "(message_type, created_at)");
+            jdbcTemplate.execute("CREATE INDEX idx_chat_messages_created_id ON "
+                    + PARENT_TABLE + "(created_at, id)");
+
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(created_at) FROM " + LEGACY_TABLE, Timestamp.class);
+            YearMonth month = oldest != null
+                    ? YearMonth.from(oldest.toLocalDateTime())
+                    : YearMonth.now();
+            YearMonth last = YearMonth.now().plusMonths(monthsAhead);
+            while (!month.isAfter(last)) {
+                createPartitionIfMissing(month);
+                month = month.plusMonths(1);
+            }
+
+            int copied = jdbcTemplate.update("INSERT INTO " + PARENT_TABLE + " SELECT * FROM " + LEGACY_TABLE);
+            if (sequence != null) {
+                jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY " + PARENT_TABLE + ".id");
+            }
+            jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+
+            logger.info("Copied {} messages into partitioned {}", copied, PARENT_TABLE);
+            return true;
+        });
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private String parentRelkind() {
+        return jdbcTemplate.query("""
+                SELECT c.relkind::text
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE c.relname = ? AND n.nspname = current_schema()
+                """, rs -> rs.next() ? rs.getString(1) : null, PARENT_TABLE);
+    }
+
+    /**
+     * Stream a partition to a gzip'd JSON lines file. The file is written to a
+     * temporary name first and moved into place once complete, so a crash
+     * never leaves a truncated archive behind a dropped partition.
+     */
+    private Path archivePartition(String partition) throws IOException {
+        Path directory = Paths.get(archiveDirectory);
+        Files.createDirectories(directory);
+        Path target = directory.resolve(partition + ".jsonl.gz");
+        Path temp = directory.resolve(partition + ".jsonl.gz.tmp");
+
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp));
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+                    "SELECT * FROM " + partition + " ORDER BY id",
+                    rs -> {
+                        ResultSetMetaData meta = rs.getMetaData();
+                        Map<String, String> row = new LinkedHashMap<>();
+                        for (int i = 1; i <= meta.getColumnCount(); i++) {
+                            row.put(meta.getColumnName(i), rs.getString(i));
+                        }
+                        try {
+                            writer.write(objectMapper.writeValueAsString(row));
+                            writer.write('\n');
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Failed to write archive for " + partition, e);
+                        }
+                    }));
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    private String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+}
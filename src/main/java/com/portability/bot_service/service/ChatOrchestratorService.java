@@ -48,6 +48,8 @@ public class ChatOrchestratorService {
     private final ResourceLoader resourceLoader;
     private final VectorStore vectorStore;
     private final ContextEnricher contextEnricher;
+    private final ConversationEventService eventService;
+    private final ContextDataManager contextDataManager;
     
     // Tools
     private final CustomerTools customerTools;
@@ -63,6 +65,8 @@ public class ChatOrchestratorService {
             ResourceLoader resourceLoader,
             VectorStore vectorStore,
             ContextEnricher contextEnricher,
+            ConversationEventService eventService,
+            ContextDataManager contextDataManager,
             CustomerTools customerTools,
             OrderTools orderTools,
             PaymentTools paymentTools,
@@ -74,6 +78,8 @@ public class ChatOrchestratorService {
         this.resourceLoader = resourceLoader;
         this.vectorStore = vectorStore;
         this.contextEnricher = contextEnricher;
+        this.eventService = eventService;
+        this.contextDataManager = contextDataManager;
         this.customerTools = customerTools;
         this.orderTools = orderTools;
         this.paymentTools = paymentTools;
@@ -88,9 +94,18 @@ public class ChatOrchestratorService {
         try {
             // Set conversation context for the current thread
             ConversationContextHolder.setConversationId(phoneNumber);
+            // Buffer conversation events until the end of the turn
+            eventService.beginTurn();
+            // Queue context captured from tool responses, written once per tool round
+            stateService.beginContextCapture();
+            // Decrypted sensitive fields are cached for this turn only
+            contextDataManager.beginTurn();
             
-            // Get current conversation state
+            // Get current conversation state, resuming a conversation swept as idle
             ConversationState currentState = stateService.getCurrentState(phoneNumber);
+            if (currentState == ConversationState.ABANDONED && stateService.resumeAbandoned(phoneNumber)) {
+                currentState = stateService.getCurrentState(phoneNumber);
+            }
             logger.info("Processing message for user {} in state: {}", phoneNumber, currentState);
 
             // Check if this is a retry attempt after an error
@@ -139,6 +154,12 @@ public class ChatOrchestratorService {
             return "Lo siento, ocurrió un error inesperado. Por favor, intenta nuevamente o reformula tu pregunta.";
             
         } finally {
+            // Drop the plaintexts decrypted during this turn
+            contextDataManager.endTurn();
+            // Write context still queued from the last tool round
+            stateService.endContextCapture();
+            // Write the events of this turn in one batch
+            eventService.flushTurn();
             // Always clear the conversation context from ThreadLocal
             ConversationContextHolder.clear();
         }
@@ -161,6 +182,7 @@ public class ChatOrchestratorService {
                 .tools(customerTools, orderTools, paymentTools, scraperTools, addressesTools)
                 .call()
                 .chatResponse();
+        stateService.flushContextCapture();
 
         // Process tool calls in a loop
         while (hasToolCalls(response) && iteration < MAX_TOOL_ITERATIONS) {
@@ -181,6 +203,7 @@ public class ChatOrchestratorService {
                         .tools(customerTools, orderTools, paymentTools, scraperTools, addressesTools)
                         .call()
                         .chatResponse();
+                stateService.flushContextCapture();
 
             } catch (Exception e) {
                 logger.error("Error in tool execution iteration {}: {}", iteration, e.getMessage(), e);
@@ -211,7 +234,7 @@ public class ChatOrchestratorService {
         String context = fetchSemanticContext(userQuery);
         
         // Generate context summary from stored conversation data
-        String contextSummary = contextEnricher.generateContextSummary(phoneNumber);
+        String contextSummary = contextEnricher.generateContextSummary(phoneNumber, currentState);
 
         Map<String, Object> variables = new HashMap<>();
         variables.put("context", context);
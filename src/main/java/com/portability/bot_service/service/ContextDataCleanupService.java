@@ -1,173 +1,332 @@
 package com.portability.bot_service.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.portability.bot_service.model.entity.ChatConversation;
-import com.portability.bot_service.repository.ChatConversationRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.portability.bot_service.model.context.ConversationContext;
 
 /**
  * Service for automatically cleaning up sensitive data from old conversations.
- * 
+ *
  * GDPR/LGPD Compliance: Personal data should not be kept longer than necessary.
- * This service removes sensitive PII after a retention period (default: 30 days).
- * 
+ * This service removes sensitive PII after a retention period (default: 30 days)
+ * without activity, from active and inactive (e.g. abandoned) conversations.
+ *
  * Sensitive data removed:
- * - customer_email, customer_phone
- * - address details (street, district, reference)
- * - portability_nip, portability_imei
+ * - customer name, email and phone
+ * - address details (street, number, district, postal code, reference)
+ * - portability phone, NIP, IMEI and SIM ICC (and their blind indexes)
  * - checkout_session_url
- * 
+ * - IMEI compatibility message
+ *
  * Data kept for analytics/reference:
  * - IDs (customer_id, order_id, etc.)
  * - conversation state
  * - timestamps
+ *
+ * The cleanup runs in keyset chunks of CHUNK_SIZE conversations: one
+ * UPDATE per chunk strips the keys server-side and marks the context as
+ * cleaned, and each chunk commits on its own. Cleaned conversations no longer
+ * match the chunk query, so a run interrupted by a crash resumes where it
+ * stopped on the next run.
  */
 @Service
 public class ContextDataCleanupService {
 
     private static final Logger logger = LoggerFactory.getLogger(ContextDataCleanupService.class);
-    
+
     private static final int RETENTION_DAYS = 30;
-    
-    private final ChatConversationRepository conversationRepository;
-    
-    public ContextDataCleanupService(ChatConversationRepository conversationRepository) {
-        this.conversationRepository = conversationRepository;
+    private static final int CHUNK_SIZE = 500;
+
+    // Sensitive values of versioned contexts (section, field)
+    private static final List<String> SENSITIVE_PATHS = List.of(
+            "{c,fn}", "{c,ln}", "{c,em}", "{c,ph}",
+            "{a,st}", "{a,no}", "{a,di}", "{a,pc}", "{a,rf}", "{a,fu}",
+            "{p,ph}", "{p,im}", "{p,nip}", "{p,icc}",
+            "{k,url}",
+            "{i,msg}");
+
+    // Same values in legacy flat contexts
+    private static final List<String> SENSITIVE_FLAT_KEYS = List.of(
+            "customer_first_name", "customer_last_name", "customer_email", "customer_phone",
+            "address_street", "address_number", "address_district", "address_postal_code",
+            "address_reference", "address_full",
+            "portability_phone", "portability_imei", "portability_nip", "sim_card_icc",
+            "checkout_session_url",
+            "imei_compatibility_message");
+
+    // Lower bounds (days since last update) of the pending backlog histogram
+    private static final int[] PENDING_AGE_BUCKETS_DAYS = { RETENTION_DAYS, 60, 90, 180, 365 };
+
+    // No retention marker, in versioned or legacy form
+    private static final String PENDING = "context_data -> 'rt' IS NULL AND context_data -> '_cleaned_at' IS NULL";
+
+    private static final String JOB_NAME = "sensitive-data-cleanup";
+    private static final int RECENT_RUNS = 10;
+
+    private static final String STALE_SCOPE = "updated_at < ? AND mod(id, ?) = ?";
+    private static final String CONVERSATION_SCOPE = "conversation_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationCache conversationCache;
+    private final ConversationEventService eventService;
+    private final JobCoordinator jobCoordinator;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ContextDataCleanupService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ConversationCache conversationCache,
+            ConversationEventService eventService,
+            JobCoordinator jobCoordinator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.conversationCache = conversationCache;
+        this.eventService = eventService;
+        this.jobCoordinator = jobCoordinator;
     }
-    
+
+    private record CleanedConversation(long id, String conversationId, String previous, String cleaned) {
+    }
+
     /**
      * Scheduled task to clean up sensitive data from old conversations.
-     * Runs daily at 2:00 AM
+     * Runs daily at 2:00 AM on every replica; JobCoordinator hands each shard
+     * of the conversations (id mod jobs.shards.sensitive-data-cleanup) to one
+     * node.
      */
     @Scheduled(cron = "0 0 2 * * *")
-    @Transactional
     public void cleanupSensitiveData() {
-        logger.info("Starting scheduled sensitive data cleanup task...");
-        
+        jobCoordinator.runSharded(JOB_NAME, this::cleanupShard);
+    }
+
+    private Map<String, Object> cleanupShard(int shard, int shardCount) {
+        logger.info("Starting sensitive data cleanup of shard {}/{}...", shard, shardCount);
+
+        long started = System.currentTimeMillis();
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(RETENTION_DAYS);
-        
-        // Find conversations older than retention period
-        List<ChatConversation> oldConversations = conversationRepository
-            .findByUpdatedAtBeforeAndIsActiveTrue(cutoffDate);
-        
+        String statement = cleanupStatement(STALE_SCOPE);
+        Object[] scope = { cutoffDate, shardCount, shard };
+
+        long lastId = 0;
         int cleanedCount = 0;
-        for (ChatConversation conversation : oldConversations) {
-            try {
-                if (removeSensitiveFields(conversation)) {
-                    cleanedCount++;
-                }
-            } catch (Exception e) {
-                logger.error("Failed to clean conversation {}", conversation.getConversationId(), e);
+        int chunks = 0;
+        while (true) {
+            long from = lastId;
+            List<CleanedConversation> chunk = transactionTemplate.execute(status -> cleanChunk(
+                    statement, from, scope, CHUNK_SIZE));
+            if (chunk == null || chunk.isEmpty()) {
+                break;
+            }
+            chunks++;
+            cleanedCount += chunk.size();
+            // RETURNING does not preserve the chunk order
+            lastId = chunk.stream().mapToLong(CleanedConversation::id).max().getAsLong();
+            if (chunk.size() < CHUNK_SIZE) {
+                break;
             }
         }
-        
-        logger.info("Sensitive data cleanup completed. Cleaned {} out of {} old conversations", 
-                   cleanedCount, oldConversations.size());
-    }
-    
-    /**
-     * Remove sensitive fields from a conversation's context data
-     * 
-     * @return true if data was cleaned, false if already cleaned
-     */
-    private boolean removeSensitiveFields(ChatConversation conversation) {
-        Map<String, Object> context = conversation.getContextData();
-        
-        if (context == null || context.isEmpty()) {
-            return false;
-        }
-        
-        // Check if already cleaned
-        if (context.containsKey("_cleaned_at")) {
-            return false;
-        }
-        
-        boolean hasChanges = false;
-        
-        // Remove PII - personal contact information
-        hasChanges |= context.remove("customer_email") != null;
-        hasChanges |= context.remove("customer_phone") != null;
-        hasChanges |= context.remove("customer_name") != null;
-        hasChanges |= context.remove("customer_first_name") != null;
-        hasChanges |= context.remove("customer_last_name") != null;
-        
-        // Remove address details
-        hasChanges |= context.remove("address_full") != null;
-        hasChanges |= context.remove("address_street") != null;
-        hasChanges |= context.remove("address_district") != null;
-        hasChanges |= context.remove("address_number") != null;
-        hasChanges |= context.remove("address_postal_code") != null;
-        hasChanges |= context.remove("address_reference") != null;
-        
-        // Remove highly sensitive portability data
-        hasChanges |= context.remove("portability_nip") != null;
-        hasChanges |= context.remove("portability_imei") != null;
-        hasChanges |= context.remove("portability_phone") != null;
-        
-        // Remove payment URLs (contain sensitive tokens)
-        hasChanges |= context.remove("checkout_session_url") != null;
-        
-        // Remove IMEI compatibility data
-        hasChanges |= context.remove("imei_compatibility_message") != null;
-        
-        if (hasChanges) {
-            // Mark as cleaned with timestamp
-            context.put("_cleaned_at", LocalDateTime.now().toString());
-            context.put("_retention_policy", RETENTION_DAYS + "_days");
-            
-            conversation.setContextData(context);
-            conversationRepository.save(conversation);
-            
-            logger.info("Cleaned sensitive data from conversation: {}", conversation.getConversationId());
-            return true;
-        }
-        
-        return false;
+
+        long durationMs = System.currentTimeMillis() - started;
+        logger.info("Sensitive data cleanup of shard {}/{} completed. Cleaned {} old conversations in {} chunks ({} ms)",
+                   shard, shardCount, cleanedCount, chunks, durationMs);
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("cutoff_date", cutoffDate.toString());
+        run.put("cleaned", cleanedCount);
+        run.put("chunks", chunks);
+        run.put("duration_ms", durationMs);
+        return run;
     }
-    
+
     /**
-     * Manually trigger cleanup for a specific conversation
+     * Manually trigger cleanup for a specific conversation, whatever its age.
      * Useful for GDPR "right to be forgotten" requests
+     *
+     * @return true if data was cleaned, false if already cleaned or nothing to clean
      */
-    @Transactional
     public boolean cleanupConversation(String conversationId) {
         logger.info("Manual cleanup requested for conversation: {}", conversationId);
-        
-        return conversationRepository.findByConversationId(conversationId)
-            .map(this::removeSensitiveFields)
-            .orElse(false);
+
+        String statement = cleanupStatement(CONVERSATION_SCOPE);
+        List<CleanedConversation> cleaned = transactionTemplate.execute(status -> cleanChunk(
+                statement, 0L, new Object[] { conversationId }, 1));
+        return cleaned != null && !cleaned.isEmpty();
     }
-    
+
     /**
-     * Get statistics about conversations pending cleanup
+     * Get statistics about conversations pending cleanup, with the pending
+     * backlog split by age (days since last update). One aggregate query over
+     * the updated_at index.
      */
-    @Transactional(readOnly = true)
     public Map<String, Object> getCleanupStats() {
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(RETENTION_DAYS);
-        
-        List<ChatConversation> oldConversations = conversationRepository
-            .findByUpdatedAtBeforeAndIsActiveTrue(cutoffDate);
-        
-        long pendingCleanup = oldConversations.stream()
-            .filter(conv -> conv.getContextData() != null && !conv.getContextData().containsKey("_cleaned_at"))
-            .count();
-        
-        long alreadyCleaned = oldConversations.size() - pendingCleanup;
-        
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoffDate = now.minusDays(RETENTION_DAYS);
+
+        StringBuilder query = new StringBuilder("SELECT COUNT(*) AS total, COUNT(*) FILTER (WHERE ")
+                .append(PENDING).append(") AS pending");
+        for (int i = 0; i < PENDING_AGE_BUCKETS_DAYS.length; i++) {
+            query.append(", COUNT(*) FILTER (WHERE ").append(PENDING)
+                    .append(" AND updated_at < ?");
+            if (i + 1 < PENDING_AGE_BUCKETS_DAYS.length) {
+                query.append(" AND updated_at >= ?");
+            }
+            query.append(") AS bucket_").append(i);
+        }
+        query.append(" FROM chat_conversations WHERE updated_at < ?");
+
+        List<Object> params = new ArrayList<>();
+        for (int i = 0; i < PENDING_AGE_BUCKETS_DAYS.length; i++) {
+            params.add(now.minusDays(PENDING_AGE_BUCKETS_DAYS[i]));
+            if (i + 1 < PENDING_AGE_BUCKETS_DAYS.length) {
+                params.add(now.minusDays(PENDING_AGE_BUCKETS_DAYS[i + 1]));
+            }
+        }
+        params.add(cutoffDate);
+
+        Map<String, Object> counts = jdbcTemplate.queryForMap(query.toString(), params.toArray());
+        long total = ((Number) counts.get("total")).longValue();
+        long pendingCleanup = ((Number) counts.get("pending")).longValue();
+
+        Map<String, Long> pendingByAge = new LinkedHashMap<>();
+        for (int i = 0; i < PENDING_AGE_BUCKETS_DAYS.length; i++) {
+            String bucket = i + 1 < PENDING_AGE_BUCKETS_DAYS.length
+                    ? PENDING_AGE_BUCKETS_DAYS[i] + "-" + PENDING_AGE_BUCKETS_DAYS[i + 1] + "_days"
+                    : PENDING_AGE_BUCKETS_DAYS[i] + "+_days";
+            pendingByAge.put(bucket, ((Number) counts.get("bucket_" + i)).longValue());
+        }
+
         return Map.of(
-            "total_old_conversations", oldConversations.size(),
+            "total_old_conversations", total,
             "pending_cleanup", pendingCleanup,
-            "already_cleaned", alreadyCleaned,
+            "already_cleaned", total - pendingCleanup,
+            "pending_by_age", pendingByAge,
             "retention_days", RETENTION_DAYS,
-            "cutoff_date", cutoffDate
+            "cutoff_date", cutoffDate,
+            "recent_runs", jobCoordinator.getRecentRuns(JOB_NAME, RECENT_RUNS)
         );
     }
+
+    /**
+     * Clean the next chunk of conversations in scope after lastId and record
+     * a context patch per cleaned conversation. Must run in a transaction.
+     */
+    private List<CleanedConversation> cleanChunk(String statement, long lastId, Object[] scope, int limit) {
+        String cleanedAt = LocalDateTime.now().toString();
+        String policy = RETENTION_DAYS + "_days";
+
+        List<CleanedConversation> chunk = jdbcTemplate.query(statement,
+                (rs, rowNum) -> new CleanedConversation(rs.getLong("id"), rs.getString("conversation_id"),
+                        rs.getString("previous"), rs.getString("cleaned")),
+                chunkParams(lastId, scope, limit, cleanedAt, policy));
+        if (chunk.isEmpty()) {
+            return chunk;
+        }
+
+        Map<Long, Map<String, List<String>>> patches = new HashMap<>();
+        for (CleanedConversation conversation : chunk) {
+            try {
+                ConversationContext previous = objectMapper.readValue(conversation.previous(), ConversationContext.class);
+                ConversationContext cleaned = objectMapper.readValue(conversation.cleaned(), ConversationContext.class);
+                patches.put(conversation.id(), cleaned.changedKeys(previous));
+            } catch (JsonProcessingException e) {
+                logger.warn("Cannot diff cleaned context of conversation {}", conversation.conversationId(), e);
+            }
+            logger.info("Cleaned sensitive data from conversation: {}", conversation.conversationId());
+        }
+
+        List<String> conversationIds = chunk.stream()
+                .map(CleanedConversation::conversationId)
+                .toList();
+        conversationCache.invalidate(conversationIds);
+        eventService.recordContextPatches(patches, "retention");
+        return chunk;
+    }
+
+    private static Object[] chunkParams(long lastId, Object[] scope, int limit, String cleanedAt, String policy) {
+        List<Object> params = new ArrayList<>();
+        params.add(lastId);
+        params.addAll(List.of(scope));
+        params.add(limit);
+        params.addAll(List.of(cleanedAt, policy, cleanedAt, policy));
+        return params.toArray();
+    }
+
+    /**
+     * Single statement cleaning up to ? conversations of the given scope with
+     * id > ?, in id order: selects and locks the chunk (skipping rows locked
+     * by live writes, which are not stale anyway), strips the sensitive keys,
+     * marks the context as cleaned, bumps its revision, strips the event log
+     * snapshot of the context as well and clears the blind indexes. Returns the previous and cleaned context of each row.
+     *
+     * Parameters: lastId, scope values, limit, then cleanedAt and policy for
+     * versioned and for legacy contexts.
+     */
+    private static String cleanupStatement(String scope) {
+        String stripVersioned = stripVersioned("c.context_data");
+        String stripLegacy = stripLegacy("c.context_data");
+        String hasSensitiveData = SENSITIVE_PATHS.stream()
+                .map(path -> "context_data #> '" + path + "' IS NOT NULL")
+                .collect(Collectors.joining(" OR ")) + " OR "
+                + SENSITIVE_FLAT_KEYS.stream()
+                        .map(key -> "context_data -> '" + key + "' IS NOT NULL")
+                        .collect(Collectors.joining(" OR "));
+
+        return "WITH chunk AS ("
+                + " SELECT id, context_data FROM chat_conversations"
+                + " WHERE id > ? AND " + scope
+                + " AND " + PENDING
+                + " AND (" + hasSensitiveData + ")"
+                + " ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)"
+                + " UPDATE chat_conversations c SET"
+                + " context_data = CASE WHEN c.context_data -> 'v' IS NOT NULL"
+                + " THEN (" + stripVersioned + ") || jsonb_build_object("
+                + "'r', COALESCE((c.context_data ->> 'r')::bigint, 0) + 1,"
+                + " 'rt', jsonb_build_object('at', CAST(? AS text), 'pol', CAST(? AS text)))"
+                + " ELSE (" + stripLegacy + ") || jsonb_build_object("
+                + "'_cleaned_at', CAST(? AS text), '_retention_policy', CAST(? AS text)) END,"
+                + " snapshot_context = " + stripSensitiveData("c.snapshot_context") + ","
+                + " imei_bidx = NULL, sim_icc_bidx = NULL, portability_phone_bidx = NULL"
+                + " FROM chunk WHERE c.id = chunk.id"
+                + " RETURNING c.id, c.conversation_id, chunk.context_data::text AS previous,"
+                + " c.context_data::text AS cleaned";
+    }
+
+    /**
+     * SQL expression of a context jsonb column without the sensitive values,
+     * for versioned and legacy contexts. Also used for the context snapshots
+     * of the event log (ConversationEventService).
+     */
+    static String stripSensitiveData(String column) {
+        return "CASE WHEN " + column + " -> 'v' IS NOT NULL THEN " + stripVersioned(column)
+                + " ELSE " + stripLegacy(column) + " END";
+    }
+
+    private static String stripVersioned(String column) {
+        return column + SENSITIVE_PATHS.stream()
+                .map(path -> " #- '" + path + "'")
+                .collect(Collectors.joining());
+    }
+
+    private static String stripLegacy(String column) {
+        return SENSITIVE_FLAT_KEYS.stream()
+                .map(key -> "'" + key + "'")
+                .collect(Collectors.joining(", ", column + " - ARRAY[", "]"));
+    }
 }
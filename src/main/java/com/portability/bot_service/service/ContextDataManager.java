@@ -2,58 +2,111 @@ package com.portability.bot_service.service;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.portability.bot_service.model.context.ConversationContext;
 import com.portability.bot_service.model.dto.AddressResponse;
-import com.portability.bot_service.model.dto.CheckoutSessionResponse;
-import com.portability.bot_service.model.dto.CustomerResponse;
-import com.portability.bot_service.model.dto.OrderResponse;
-import com.portability.bot_service.model.dto.PortabilityResponse;
-import com.portability.bot_service.model.dto.ScrapeResponse;
-import com.portability.bot_service.model.dto.SimCardResponse;
-import com.portability.bot_service.security.LogSanitizer;
 import com.portability.bot_service.security.SensitiveDataEncryptor;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * Service responsible for extracting and storing relevant information from tool
  * responses into the conversation context_data. This enables the bot to
  * maintain state across multiple interactions and reuse previously collected
- * information.
+ * information. What is extracted is declared on the response DTOs
+ * (@ContextField) and compiled by ContextExtractorRegistry.
  *
  * SECURITY NOTE: This service handles PII (Personally Identifiable
  * Information). - Logs are sanitized to prevent exposure of sensitive data -
- * Sensitive fields (NIP, IMEI, checkout URLs) are encrypted using AES-256-GCM -
+ * Sensitive fields (NIP, IMEI, ICC, portability phone, checkout URLs) are
+ * encrypted using AES-256-GCM -
  * Data is automatically cleaned up after retention period (see
- * ContextDataCleanupService)
+ * ContextDataCleanupService) - Decrypted values are only cached for the
+ * current chat turn (beginTurn / endTurn) and dropped when it ends
  */
 @Service
 public class ContextDataManager {
 
     private static final Logger logger = LoggerFactory.getLogger(ContextDataManager.class);
 
+    // Plaintexts decrypted during the current thread's chat turn
+    private static final ThreadLocal<TurnPlaintext> turnPlaintext = new ThreadLocal<>();
+
+    /**
+     * Encrypted context fields readable through getDecrypted
+     */
+    public enum SensitiveField {
+        PORTABILITY_NIP(context -> context.portability() != null ? context.portability().nip() : null),
+        PORTABILITY_IMEI(context -> context.portability() != null ? context.portability().imei() : null),
+        SIM_CARD_ICC(context -> context.portability() != null ? context.portability().simIcc() : null),
+        PORTABILITY_PHONE(context -> context.portability() != null ? context.portability().phone() : null),
+        CHECKOUT_URL(context -> context.checkout() != null ? context.checkout().sessionUrl() : null);
+
+        private final Function<ConversationContext, String> ciphertext;
+
+        SensitiveField(Function<ConversationContext, String> ciphertext) {
+            this.ciphertext = ciphertext;
+        }
+
+        String ciphertext(ConversationContext context) {
+            return ciphertext.apply(context);
+        }
+    }
+
+    private static final class TurnPlaintext {
+        final Map<String, String> plaintexts = new HashMap<>();
+        int decrypts;
+        int hits;
+    }
+
     private final ConversationStateService stateService;
     private final SensitiveDataEncryptor encryptor;
-
-    public ContextDataManager(ConversationStateService stateService, SensitiveDataEncryptor encryptor) {
+    private final ContextExtractorRegistry extractorRegistry;
+    private final Counter decrypts;
+    private final Counter cacheHits;
+    private final DistributionSummary decryptsPerTurn;
+
+    public ContextDataManager(
+            ConversationStateService stateService,
+            SensitiveDataEncryptor encryptor,
+            ContextExtractorRegistry extractorRegistry,
+            MeterRegistry meterRegistry) {
         this.stateService = stateService;
         this.encryptor = encryptor;
+        this.extractorRegistry = extractorRegistry;
+        this.decrypts = Counter.builder("context.sensitive.reads")
+                .description("Sensitive context field reads")
+                .tag("outcome", "decrypted")
+                .register(meterRegistry);
+        this.cacheHits = Counter.builder("context.sensitive.reads")
+                .description("Sensitive context field reads")
+                .tag("outcome", "turn_cache")
+                .register(meterRegistry);
+        this.decryptsPerTurn = DistributionSummary.builder("context.sensitive.decrypts.per.turn")
+                .description("Sensitive context field decryptions per chat turn")
+                .register(meterRegistry);
     }
 
     /**
-     * Process tool response and extract relevant data to store in context
+     * Process tool response and queue the relevant data for the context
      */
     public void processToolResponse(String conversationId, String toolName, Object toolResponse) {
         try {
             logger.info("Processing tool response for tool: {} in conversation: {}", toolName, conversationId);
 
-            Map<String, Object> extractedData = extractRelevantData(toolName, toolResponse);
+            Map<String, Object> extractedData = extractorRegistry.extract(toolName, toolResponse);
 
             if (!extractedData.isEmpty()) {
-                stateService.storeContextData(conversationId, extractedData);
-                logger.info("Stored {} context data entries from tool: {}", extractedData.size(), toolName);
+                // Written at the end of the tool round (see ConversationStateService.captureContextData)
+                stateService.captureContextData(conversationId, extractedData);
+                logger.info("Captured {} context data entries from tool: {}", extractedData.size(), toolName);
             }
 
         } catch (Exception e) {
@@ -61,121 +114,6 @@ public class ContextDataManager {
         }
     }
 
-    /**
-     * Extract relevant data based on tool type and response
-     */
-    private Map<String, Object> extractRelevantData(String toolName, Object toolResponse) {
-        Map<String, Object> data = new HashMap<>();
-
-        if (toolResponse == null) {
-            return data;
-        }
-
-        switch (toolName) {
-            case "registerCustomer":
-            case "getCustomerById":
-            case "getCustomerByEmail":
-            case "getCustomerByPhoneNumber":
-                if (toolResponse instanceof CustomerResponse customer) {
-                    data.put("customer_id", customer.id());
-                    data.put("customer_name", customer.firstName() + " " + customer.lastName());
-                    data.put("customer_first_name", customer.firstName());
-                    data.put("customer_last_name", customer.lastName());
-                    data.put("customer_email", customer.email());
-                    // SECURITY: Sanitize PII in logs
-                    logger.debug("Extracted customer data: ID={}, email={}",
-                            customer.id(),
-                            LogSanitizer.maskEmail(customer.email()));
-                }
-                break;
-
-            case "createAddress":
-                if (toolResponse instanceof AddressResponse address) {
-                    data.put("address_id", address.getId());
-                    data.put("address_district", address.getDistrict());
-                    data.put("address_postal_code", address.getPostalCode());
-                    // SECURITY: Sanitize address in logs
-                    logger.debug("Extracted address data: ID={}, district={}",
-                            address.getId(),
-                            address.getDistrict());
-                }
-                break;
-
-            case "createNewOrderForSimCardPurchase":
-            case "createOrderForSimCardPortabilityPurchase":
-                if (toolResponse instanceof OrderResponse order) {
-                    data.put("order_id", order.id());
-                    data.put("order_product_id", order.productId());
-                    data.put("last_order_id", order.id()); // For easy reference
-                    logger.debug("Extracted order data: ID={}", order.id());
-                }
-                break;
-
-            case "getPortabilityByPhoneNumber":
-            case "updateImei":
-            case "updatePortabilityNip":
-                if (toolResponse instanceof PortabilityResponse portability) {
-                    data.put("portability_id", portability.getId());
-
-                    // SECURITY: Encrypt sensitive data before storing
-                    if (portability.getImei() != null) {
-                        String encryptedImei = encryptor.encrypt(portability.getImei());
-                        data.put("portability_imei", encryptedImei);
-                    }
-                    if (portability.getPortabilityNip() != null) {
-                        String encryptedNip = encryptor.encrypt(portability.getPortabilityNip());
-                        data.put("portability_nip", encryptedNip);
-                    }
-
-                    data.put("portability_order_id", portability.getOrderId());
-                    // SECURITY: NEVER log NIP or IMEI in plain text
-                    logger.debug("Extracted portability data: ID={}, phone={}, has_imei={}, has_nip={}",
-                            portability.getId(),
-                            LogSanitizer.maskPhone(portability.getPhoneNumber()),
-                            portability.getImei() != null,
-                            portability.getPortabilityNip() != null);
-                }
-                break;
-
-            case "getSimIcc":
-                if (toolResponse instanceof SimCardResponse simCardResponse) {
-                    String encryptedIcc = encryptor.encrypt(simCardResponse.icc());
-                    data.put("sim_card_icc", encryptedIcc);
-                    // SECURITY: Mask ICC in logs (contains sensitive information)
-                    logger.debug("Extracted SIM card data");
-                }
-                break;
-
-            case "Create_checkout_session":
-                if (toolResponse instanceof CheckoutSessionResponse checkout) {
-                    // SECURITY: Encrypt checkout URL (contains payment token)
-                    String encryptedUrl = encryptor.encrypt(checkout.stripe_session_url());
-                    data.put("checkout_session_url", encryptedUrl);
-
-                    data.put("payment_completed", false); // Initial state
-                    // SECURITY: Mask URL in logs (contains payment token)
-                    logger.debug("Extracted checkout data: session_id={}, url={}",
-                            checkout.checkout_session_id(),
-                            LogSanitizer.maskUrl(checkout.stripe_session_url()));
-                }
-                break;
-
-            case "scrapeImeiCompatibility":
-                if (toolResponse instanceof ScrapeResponse scrape) {
-                    data.put("imei_compatible", scrape.compatibility());
-                    data.put("imei_compatibility_message", scrape.message());
-                    logger.debug("Extracted IMEI compatibility: compatible={}", scrape.compatibility());
-                }
-                break;
-
-            default:
-                logger.debug("No specific extraction logic for tool: {}", toolName);
-                break;
-        }
-
-        return data;
-    }
-
     /**
      * Format address into a readable string
      */
@@ -201,60 +139,117 @@ public class ContextDataManager {
      * Check if required data for order creation is available
      */
     public boolean hasRequiredOrderData(String conversationId) {
-        Object customerId = stateService.getContextData(conversationId, "customer_id");
-        Object addressId = stateService.getContextData(conversationId, "address_id");
-
-        return customerId != null && addressId != null;
+        ConversationContext context = stateService.getContext(conversationId);
+        return customerId(context) != null && addressId(context) != null;
     }
 
     /**
      * Check if customer is registered
      */
     public boolean hasCustomerData(String conversationId) {
-        Object customerId = stateService.getContextData(conversationId, "customer_id");
-        return customerId != null;
+        return getCustomerId(conversationId) != null;
     }
 
     /**
      * Check if address is registered
      */
     public boolean hasAddressData(String conversationId) {
-        Object addressId = stateService.getContextData(conversationId, "address_id");
-        return addressId != null;
+        return getAddressId(conversationId) != null;
     }
 
     /**
      * Check if order has been created
      */
     public boolean hasOrderData(String conversationId) {
-        Object orderId = stateService.getContextData(conversationId, "order_id");
-        return orderId != null;
+        ConversationContext.Order order = stateService.getContext(conversationId).order();
+        return order != null && order.id() != null;
     }
 
     /**
      * Get customer ID from context
      */
     public Long getCustomerId(String conversationId) {
-        Object customerId = stateService.getContextData(conversationId, "customer_id");
-        if (customerId instanceof Long) {
-            return (Long) customerId;
-        } else if (customerId instanceof Integer) {
-            return ((Integer) customerId).longValue();
-        }
-        return null;
+        return customerId(stateService.getContext(conversationId));
     }
 
     /**
      * Get address ID from context
      */
     public Long getAddressId(String conversationId) {
-        Object addressId = stateService.getContextData(conversationId, "address_id");
-        if (addressId instanceof Long) {
-            return (Long) addressId;
-        } else if (addressId instanceof Integer) {
-            return ((Integer) addressId).longValue();
+        return addressId(stateService.getContext(conversationId));
+    }
+
+    private Long customerId(ConversationContext context) {
+        return context.customer() != null ? context.customer().id() : null;
+    }
+
+    private Long addressId(ConversationContext context) {
+        return context.address() != null ? context.address().id() : null;
+    }
+
+    /**
+     * Start caching decrypted sensitive fields on the current thread until endTurn
+     */
+    public void beginTurn() {
+        turnPlaintext.set(new TurnPlaintext());
+    }
+
+    /**
+     * Drop the plaintexts decrypted during the turn and record its decrypt count
+     */
+    public void endTurn() {
+        TurnPlaintext turn = turnPlaintext.get();
+        turnPlaintext.remove();
+        if (turn != null) {
+            turn.plaintexts.clear();
+            decryptsPerTurn.record(turn.decrypts);
+            if (turn.decrypts > 0 || turn.hits > 0) {
+                logger.debug("Sensitive fields this turn: {} decrypted, {} served from the turn cache",
+                        turn.decrypts, turn.hits);
+            }
+        }
+    }
+
+    /**
+     * Decrypted value of a sensitive context field, or null if absent or not
+     * decryptable. Within a turn each stored value is decrypted at most once.
+     */
+    public String getDecrypted(String conversationId, SensitiveField field) {
+        String encrypted = field.ciphertext(stateService.getContext(conversationId));
+        if (encrypted == null) {
+            return null;
+        }
+        if (field == SensitiveField.PORTABILITY_PHONE && SensitiveDataEncryptor.isPlaintextPhone(encrypted)) {
+            // Stored before the portability phone was encrypted
+            return encrypted;
+        }
+
+        TurnPlaintext turn = turnPlaintext.get();
+        // Keyed by conversation and ciphertext: a changed value is a new entry
+        String cacheKey = conversationId + '|' + encrypted;
+        if (turn != null) {
+            String cached = turn.plaintexts.get(cacheKey);
+            if (cached != null) {
+                turn.hits++;
+                cacheHits.increment();
+                return cached;
+            }
+        }
+
+        try {
+            String plaintext = encryptor.decrypt(encrypted);
+            decrypts.increment();
+            if (turn != null) {
+                turn.decrypts++;
+                if (plaintext != null) {
+                    turn.plaintexts.put(cacheKey, plaintext);
+                }
+            }
+            return plaintext;
+        } catch (Exception e) {
+            logger.error("Failed to decrypt {} for conversation: {}", field, conversationId, e);
+            return null;
         }
-        return null;
     }
 
     /**
@@ -262,16 +257,7 @@ public class ContextDataManager {
      * decrypts the stored encrypted NIP
      */
     public String getDecryptedPortabilityNip(String conversationId) {
-        Object encryptedNip = stateService.getContextData(conversationId, "portability_nip");
-        if (encryptedNip instanceof String) {
-            try {
-                return encryptor.decrypt((String) encryptedNip);
-            } catch (Exception e) {
-                logger.error("Failed to decrypt portability NIP for conversation: {}", conversationId, e);
-                return null;
-            }
-        }
-        return null;
+        return getDecrypted(conversationId, SensitiveField.PORTABILITY_NIP);
     }
 
     /**
@@ -279,16 +265,15 @@ public class ContextDataManager {
      * decrypts the stored encrypted IMEI
      */
     public String getDecryptedPortabilityImei(String conversationId) {
-        Object encryptedImei = stateService.getContextData(conversationId, "portability_imei");
-        if (encryptedImei instanceof String) {
-            try {
-                return encryptor.decrypt((String) encryptedImei);
-            } catch (Exception e) {
-                logger.error("Failed to decrypt portability IMEI for conversation: {}", conversationId, e);
-                return null;
-            }
-        }
-        return null;
+        return getDecrypted(conversationId, SensitiveField.PORTABILITY_IMEI);
+    }
+
+    /**
+     * Get decrypted portability phone from context SECURITY: Automatically
+     * decrypts the stored encrypted phone
+     */
+    public String getDecryptedPortabilityPhone(String conversationId) {
+        return getDecrypted(conversationId, SensitiveField.PORTABILITY_PHONE);
     }
 
     /**
@@ -296,15 +281,6 @@ public class ContextDataManager {
      * decrypts the stored encrypted checkout URL
      */
     public String getDecryptedCheckoutUrl(String conversationId) {
-        Object encryptedUrl = stateService.getContextData(conversationId, "checkout_session_url");
-        if (encryptedUrl instanceof String) {
-            try {
-                return encryptor.decrypt((String) encryptedUrl);
-            } catch (Exception e) {
-                logger.error("Failed to decrypt checkout URL for conversation: {}", conversationId, e);
-                return null;
-            }
-        }
-        return null;
+        return getDecrypted(conversationId, SensitiveField.CHECKOUT_URL);
     }
 }
@@ -1,87 +1,358 @@
 package com.portability.bot_service.service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.portability.bot_service.config.ContextSummaryProperties;
+import com.portability.bot_service.config.ContextSummaryProperties.Format;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.context.ConversationContext.Address;
+import com.portability.bot_service.model.context.ConversationContext.Checkout;
+import com.portability.bot_service.model.context.ConversationContext.Customer;
+import com.portability.bot_service.model.context.ConversationContext.Errors;
+import com.portability.bot_service.model.context.ConversationContext.Imei;
+import com.portability.bot_service.model.context.ConversationContext.Order;
+import com.portability.bot_service.model.context.ConversationContext.Portability;
+import com.portability.bot_service.model.enm.ContextSection;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
 /**
  * Service responsible for enriching the system prompt with available context data.
- * Generates a human-readable summary of stored information that the AI agent can use
- * to make informed decisions without asking for information that's already available.
+ * Generates a summary of stored information that the AI agent can use to make
+ * informed decisions without asking for information that's already available.
+ *
+ * Two formats (see ContextSummaryProperties): the verbose, human-readable one and
+ * a compact key=value block limited to the sections relevant to the current
+ * state, without encrypted values.
+ *
+ * Summaries are memoized per conversation together with the context revision
+ * they were rendered from. An unchanged revision returns the cached text; a
+ * newer one re-renders only the sections whose data changed.
  */
 @Service
 public class ContextEnricher {
 
     private static final Logger logger = LoggerFactory.getLogger(ContextEnricher.class);
 
+    private static final String EMPTY_SUMMARY =
+            "No hay información previa disponible. Deberás recopilar todos los datos necesarios del usuario.";
+    private static final String HEADER = "=== INFORMACIÓN DISPONIBLE EN EL CONTEXTO ===\n\n"
+            + "IMPORTANTE: Usa estos datos cuando estén disponibles. NO vuelvas a preguntar información que ya tienes.\n\n";
+    private static final String FOOTER = "=== FIN DE INFORMACIÓN DISPONIBLE ===\n";
+    private static final String COMPACT_HEADER = "CONTEXTO (usa estos datos, no los vuelvas a pedir; ids para las tools):\n";
+
+    private static final ContextSection[] SECTIONS = ContextSection.values();
+
+    // Rough average for Spanish text with ids; only used to compare formats
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private record RenderedSummary(
+            long revision,
+            ConversationContext context,
+            Format format,
+            ConversationState state,
+            String[] sections,
+            String summary) {
+    }
+
     private final ConversationStateService stateService;
+    private final ContextSummaryProperties properties;
+    private final Cache<String, RenderedSummary> summaries;
 
-    public ContextEnricher(ConversationStateService stateService) {
+    public ContextEnricher(
+            ConversationStateService stateService,
+            ContextSummaryProperties properties,
+            MeterRegistry meterRegistry) {
         this.stateService = stateService;
+        this.properties = properties;
+        this.summaries = Caffeine.newBuilder()
+                .maximumSize(properties.getCache().getMaximumSize())
+                .expireAfterAccess(properties.getCache().getExpireAfterAccessMinutes(), TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, summaries, "context_summaries");
+    }
+
+    /**
+     * Generate the context summary for the system prompt, in the configured
+     * format, for a conversation in the given state
+     */
+    public String generateContextSummary(String conversationId, ConversationState state) {
+        ConversationContext context = stateService.getContext(conversationId);
+
+        if (context == null || context.isEmpty()) {
+            summaries.invalidate(conversationId);
+            return EMPTY_SUMMARY;
+        }
+
+        Format format = properties.getFormat();
+        RenderedSummary cached = summaries.getIfPresent(conversationId);
+        if (cached != null && cached.format() != format) {
+            cached = null;
+        }
+        if (cached != null && cached.revision() == context.revision() && cached.state() == state) {
+            return cached.summary();
+        }
+
+        RenderedSummary rendered = render(context, format, state, cached);
+        summaries.put(conversationId, rendered);
+
+        logger.debug("Generated {} context summary for conversation {} at revision {}: {} characters",
+                format, conversationId, context.revision(), rendered.summary().length());
+
+        return rendered.summary();
+    }
+
+    /**
+     * Render the current context of a conversation in both formats, with their
+     * size and estimated token count. Not memoized.
+     */
+    public Map<String, Object> compareFormats(String conversationId) {
+        ConversationState state = stateService.getCurrentState(conversationId);
+        ConversationContext context = stateService.getContext(conversationId);
+        if (context == null) {
+            context = ConversationContext.empty();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("conversationId", conversationId);
+        result.put("state", state);
+        result.put("revision", context.revision());
+        result.put("configuredFormat", properties.getFormat());
+
+        long verboseTokens = 0;
+        long compactTokens = 0;
+        for (Format format : Format.values()) {
+            String summary = context.isEmpty() ? EMPTY_SUMMARY : render(context, format, state, null).summary();
+            long tokens = estimateTokens(summary);
+            if (format == Format.VERBOSE) {
+                verboseTokens = tokens;
+            } else {
+                compactTokens = tokens;
+            }
+            Map<String, Object> rendering = new LinkedHashMap<>();
+            rendering.put("characters", summary.length());
+            rendering.put("estimatedTokens", tokens);
+            rendering.put("summary", summary);
+            result.put(format.name().toLowerCase(), rendering);
+        }
+        result.put("tokenSavingsPercent", verboseTokens > 0
+                ? Math.round((verboseTokens - compactTokens) * 1000.0 / verboseTokens) / 10.0 : 0.0);
+        return result;
+    }
+
+    static long estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
     }
 
     /**
-     * Generate a formatted summary of available context data for inclusion in system prompt
+     * Render a summary, reusing the sections of a previous rendering (same
+     * format) whose context record did not change
      */
-    public String generateContextSummary(String conversationId) {
-        Map<String, Object> contextData = stateService.getAllContextData(conversationId);
+    private RenderedSummary render(ConversationContext context, Format format, ConversationState state,
+            RenderedSummary previous) {
+        String[] sections = new String[SECTIONS.length];
+        for (ContextSection section : SECTIONS) {
+            int index = section.ordinal();
+            if (previous != null && Objects.equals(source(section, previous.context()), source(section, context))) {
+                sections[index] = previous.sections()[index];
+            } else {
+                sections[index] = format == Format.COMPACT
+                        ? renderCompact(section, context)
+                        : renderVerbose(section, context);
+            }
+        }
 
-        if (contextData == null || contextData.isEmpty()) {
-            return "No hay información previa disponible. Deberás recopilar todos los datos necesarios del usuario.";
+        StringBuilder summary = new StringBuilder(format == Format.COMPACT ? COMPACT_HEADER : HEADER);
+        List<ContextSection> included = properties.sectionsFor(state);
+        for (ContextSection section : SECTIONS) {
+            if (format == Format.VERBOSE || section == ContextSection.ERRORS || included.contains(section)) {
+                summary.append(sections[section.ordinal()]);
+            }
         }
+        if (format == Format.VERBOSE) {
+            summary.append(FOOTER);
+        }
+
+        return new RenderedSummary(context.revision(), context, format, state, sections, summary.toString());
+    }
 
+    private static Object source(ContextSection section, ConversationContext context) {
+        return switch (section) {
+            case CUSTOMER -> context.customer();
+            case ADDRESS -> context.address();
+            case ORDER -> context.order();
+            case PORTABILITY -> context.portability();
+            case CHECKOUT -> context.checkout();
+            case IMEI -> context.imei();
+            case ERRORS -> context.errors();
+        };
+    }
+
+    // Compact format: "section: key=value ..." with only non-null fields
+
+    private String renderCompact(ContextSection section, ConversationContext context) {
+        StringBuilder line = new StringBuilder();
+        switch (section) {
+            case CUSTOMER -> {
+                Customer customer = context.customer();
+                if (customer != null && customer.id() != null) {
+                    line.append("cliente:");
+                    appendPair(line, "customer_id", customer.id());
+                    appendPair(line, "nombre", customer.fullName());
+                    appendPair(line, "email", customer.email());
+                    appendPair(line, "tel", customer.phone());
+                }
+            }
+            case ADDRESS -> {
+                Address address = context.address();
+                if (address != null && address.id() != null) {
+                    line.append("direccion:");
+                    appendPair(line, "address_id", address.id());
+                    appendPair(line, "calle", address.street());
+                    appendPair(line, "num", address.number());
+                    appendPair(line, "distrito", address.district());
+                    appendPair(line, "cp", address.postalCode());
+                    appendPair(line, "ref", address.reference());
+                    if (address.street() == null) {
+                        appendPair(line, "completa", address.full());
+                    }
+                }
+            }
+            case ORDER -> {
+                Order order = context.order();
+                if (order != null && order.id() != null) {
+                    line.append("orden:");
+                    appendPair(line, "order_id", order.id());
+                    appendPair(line, "product_id", order.productId());
+                    appendPair(line, "estado", order.status());
+                }
+            }
+            case PORTABILITY -> {
+                Portability portability = context.portability();
+                if (portability != null && portability.id() != null) {
+                    line.append("portabilidad:");
+                    appendPair(line, "portability_id", portability.id());
+                    appendPair(line, "tel", portability.phone() != null ? "registrado" : null);
+                    appendPair(line, "estado", portability.status());
+                    appendPair(line, "imei", portability.imei() != null ? "registrado" : "FALTA");
+                    appendPair(line, "nip", portability.nip() != null ? "registrado" : "FALTA");
+                }
+            }
+            case CHECKOUT -> {
+                Checkout checkout = context.checkout();
+                if (checkout != null && checkout.sessionId() != null) {
+                    line.append("pago:");
+                    appendPair(line, "session_id", checkout.sessionId());
+                    appendPair(line, "url", checkout.sessionUrl() != null ? "disponible" : null);
+                    appendPair(line, "pagado", Boolean.TRUE.equals(checkout.paymentCompleted()) ? "si" : "no");
+                }
+            }
+            case IMEI -> {
+                Imei imei = context.imei();
+                if (imei != null && imei.compatible() != null) {
+                    line.append("imei:");
+                    appendPair(line, "verificado", imei.checked());
+                    appendPair(line, "compatible", Boolean.TRUE.equals(imei.compatible()) ? "si" : "no");
+                }
+            }
+            case ERRORS -> {
+                Errors errors = context.errors();
+                if (errors != null && errors.lastError() != null) {
+                    line.append("error:");
+                    appendPair(line, "tool", errors.failedTool());
+                    appendPair(line, "n", errors.count());
+                    appendPair(line, "msg", errors.lastError());
+                }
+            }
+        }
+        return line.isEmpty() ? "" : line.append('\n').toString();
+    }
+
+    private void appendPair(StringBuilder line, String key, Object value) {
+        if (value != null) {
+            line.append(' ').append(key).append('=').append(value);
+        }
+    }
+
+    // Verbose format
+
+    private String renderVerbose(ContextSection section, ConversationContext context) {
         StringBuilder summary = new StringBuilder();
-        summary.append("=== INFORMACIÓN DISPONIBLE EN EL CONTEXTO ===\n\n");
-        summary.append("IMPORTANTE: Usa estos datos cuando estén disponibles. NO vuelvas a preguntar información que ya tienes.\n\n");
+        switch (section) {
+            case CUSTOMER -> renderCustomer(summary, context.customer());
+            case ADDRESS -> renderAddress(summary, context.address());
+            case ORDER -> renderOrder(summary, context.order());
+            case PORTABILITY -> renderPortability(summary, context.portability());
+            case CHECKOUT -> renderCheckout(summary, context.checkout());
+            case IMEI -> renderImei(summary, context.imei());
+            case ERRORS -> renderErrors(summary, context.errors());
+        }
+        return summary.toString();
+    }
 
-        // Customer information
-        if (hasCustomerData(contextData)) {
+    private void renderCustomer(StringBuilder summary, Customer customer) {
+        if (customer != null && customer.id() != null) {
             summary.append("DATOS DEL CLIENTE:\n");
-            appendIfPresent(summary, "  - ID del cliente", contextData.get("customer_id"));
-            appendIfPresent(summary, "  - Nombre completo", contextData.get("customer_name"));
-            appendIfPresent(summary, "  - Nombre", contextData.get("customer_first_name"));
-            appendIfPresent(summary, "  - Apellido", contextData.get("customer_last_name"));
-            appendIfPresent(summary, "  - Email", contextData.get("customer_email"));
-            appendIfPresent(summary, "  - Teléfono", contextData.get("customer_phone"));
-            summary.append("Cliente REGISTRADO - Utiliza customer_id: ").append(contextData.get("customer_id")).append(" en las tools\n\n");
+            appendIfPresent(summary, "  - ID del cliente", customer.id());
+            appendIfPresent(summary, "  - Nombre completo", customer.fullName());
+            appendIfPresent(summary, "  - Nombre", customer.firstName());
+            appendIfPresent(summary, "  - Apellido", customer.lastName());
+            appendIfPresent(summary, "  - Email", customer.email());
+            appendIfPresent(summary, "  - Teléfono", customer.phone());
+            summary.append("Cliente REGISTRADO - Utiliza customer_id: ").append(customer.id()).append(" en las tools\n\n");
         }
+    }
 
-        // Address information
-        if (hasAddressData(contextData)) {
+    private void renderAddress(StringBuilder summary, Address address) {
+        if (address != null && address.id() != null) {
             summary.append("DATOS DE DIRECCIÓN:\n");
-            appendIfPresent(summary, "  - ID de dirección", contextData.get("address_id"));
-            appendIfPresent(summary, "  - Calle", contextData.get("address_street"));
-            appendIfPresent(summary, "  - Número", contextData.get("address_number"));
-            appendIfPresent(summary, "  - Distrito", contextData.get("address_district"));
-            appendIfPresent(summary, "  - Código Postal", contextData.get("address_postal_code"));
-            appendIfPresent(summary, "  - Referencia", contextData.get("address_reference"));
-            appendIfPresent(summary, "  - Dirección completa", contextData.get("address_full"));
-            summary.append("Dirección REGISTRADA - Utiliza address_id: ").append(contextData.get("address_id")).append(" en las tools\n\n");
-        }
-
-        // Order information
-        if (hasOrderData(contextData)) {
+            appendIfPresent(summary, "  - ID de dirección", address.id());
+            appendIfPresent(summary, "  - Calle", address.street());
+            appendIfPresent(summary, "  - Número", address.number());
+            appendIfPresent(summary, "  - Distrito", address.district());
+            appendIfPresent(summary, "  - Código Postal", address.postalCode());
+            appendIfPresent(summary, "  - Referencia", address.reference());
+            appendIfPresent(summary, "  - Dirección completa", address.full());
+            summary.append("Dirección REGISTRADA - Utiliza address_id: ").append(address.id()).append(" en las tools\n\n");
+        }
+    }
+
+    private void renderOrder(StringBuilder summary, Order order) {
+        if (order != null && order.id() != null) {
             summary.append("DATOS DE ORDEN:\n");
-            appendIfPresent(summary, "  - ID de orden", contextData.get("order_id"));
-            appendIfPresent(summary, "  - ID de producto", contextData.get("order_product_id"));
-            appendIfPresent(summary, "  - Estado", contextData.get("order_status"));
-            summary.append("Orden CREADA - Utiliza order_id: ").append(contextData.get("order_id")).append(" para crear el checkout\n\n");
+            appendIfPresent(summary, "  - ID de orden", order.id());
+            appendIfPresent(summary, "  - ID de producto", order.productId());
+            appendIfPresent(summary, "  - Estado", order.status());
+            summary.append("Orden CREADA - Utiliza order_id: ").append(order.id()).append(" para crear el checkout\n\n");
         }
+    }
 
-        // Portability information
-        if (hasPortabilityData(contextData)) {
+    private void renderPortability(StringBuilder summary, Portability portability) {
+        if (portability != null && portability.id() != null) {
             summary.append("DATOS DE PORTABILIDAD:\n");
-            appendIfPresent(summary, "  - ID de portabilidad", contextData.get("portability_id"));
-            appendIfPresent(summary, "  - Teléfono a portar", contextData.get("portability_phone"));
-            appendIfPresent(summary, "  - Estado", contextData.get("portability_status"));
-            appendIfPresent(summary, "  - IMEI", contextData.get("portability_imei"));
-            appendIfPresent(summary, "  - NIP", contextData.get("portability_nip"));
-            
-            boolean hasImei = contextData.get("portability_imei") != null;
-            boolean hasNip = contextData.get("portability_nip") != null;
-            
+            appendIfPresent(summary, "  - ID de portabilidad", portability.id());
+            appendIfPresent(summary, "  - Teléfono a portar", portability.phone() != null ? "registrado" : null);
+            appendIfPresent(summary, "  - Estado", portability.status());
+            appendIfPresent(summary, "  - IMEI", portability.imei());
+            appendIfPresent(summary, "  - NIP", portability.nip());
+
+            boolean hasImei = portability.imei() != null;
+            boolean hasNip = portability.nip() != null;
+
             if (!hasImei || !hasNip) {
                 summary.append("FALTA INFORMACIÓN:\n");
                 if (!hasImei) summary.append("    - Solicita el IMEI del dispositivo\n");
@@ -91,50 +362,44 @@ public class ContextEnricher {
             }
             summary.append("\n");
         }
+    }
 
-        // Checkout/Payment information
-        if (hasCheckoutData(contextData)) {
+    private void renderCheckout(StringBuilder summary, Checkout checkout) {
+        if (checkout != null && checkout.sessionId() != null) {
             summary.append("DATOS DE PAGO:\n");
-            appendIfPresent(summary, "  - ID de sesión de checkout", contextData.get("checkout_session_id"));
-            appendIfPresent(summary, "  - URL de pago", contextData.get("checkout_session_url"));
-            
-            Boolean paymentCompleted = (Boolean) contextData.get("payment_completed");
-            if (Boolean.TRUE.equals(paymentCompleted)) {
+            appendIfPresent(summary, "  - ID de sesión de checkout", checkout.sessionId());
+            appendIfPresent(summary, "  - URL de pago", checkout.sessionUrl());
+
+            if (Boolean.TRUE.equals(checkout.paymentCompleted())) {
                 summary.append("Pago COMPLETADO\n");
             } else {
                 summary.append("Pago PENDIENTE - Proporciona la URL al usuario\n");
             }
             summary.append("\n");
         }
+    }
 
-        // IMEI compatibility
-        if (hasImeiCompatibilityData(contextData)) {
+    private void renderImei(StringBuilder summary, Imei imei) {
+        if (imei != null && imei.compatible() != null) {
             summary.append("VERIFICACIÓN DE IMEI:\n");
-            appendIfPresent(summary, "  - IMEI verificado", contextData.get("imei_checked"));
-            Boolean compatible = (Boolean) contextData.get("imei_compatible");
-            if (Boolean.TRUE.equals(compatible)) {
+            appendIfPresent(summary, "  - IMEI verificado", imei.checked());
+            if (Boolean.TRUE.equals(imei.compatible())) {
                 summary.append("IMEI COMPATIBLE con la red\n");
             } else {
                 summary.append("IMEI NO COMPATIBLE con la red\n");
             }
             summary.append("\n");
         }
+    }
 
-        // Error tracking
-        if (hasErrorData(contextData)) {
+    private void renderErrors(StringBuilder summary, Errors errors) {
+        if (errors != null && errors.lastError() != null) {
             summary.append("INFORMACIÓN DE ERRORES:\n");
-            appendIfPresent(summary, "  - Último error", contextData.get("last_error"));
-            appendIfPresent(summary, "  - Herramienta fallida", contextData.get("failed_tool"));
-            appendIfPresent(summary, "  - Contador de errores", contextData.get("error_count"));
+            appendIfPresent(summary, "  - Último error", errors.lastError());
+            appendIfPresent(summary, "  - Herramienta fallida", errors.failedTool());
+            appendIfPresent(summary, "  - Contador de errores", errors.count());
             summary.append("  El usuario puede estar reintentando una operación fallida\n\n");
         }
-
-        summary.append("=== FIN DE INFORMACIÓN DISPONIBLE ===\n");
-        
-        logger.debug("Generated context summary for conversation {}: {} characters", 
-                    conversationId, summary.length());
-        
-        return summary.toString();
     }
 
     /**
@@ -145,33 +410,4 @@ public class ContextEnricher {
             sb.append(label).append(": ").append(value).append("\n");
         }
     }
-
-    // Helper methods to check data availability
-    private boolean hasCustomerData(Map<String, Object> context) {
-        return context.containsKey("customer_id") && context.get("customer_id") != null;
-    }
-
-    private boolean hasAddressData(Map<String, Object> context) {
-        return context.containsKey("address_id") && context.get("address_id") != null;
-    }
-
-    private boolean hasOrderData(Map<String, Object> context) {
-        return context.containsKey("order_id") && context.get("order_id") != null;
-    }
-
-    private boolean hasPortabilityData(Map<String, Object> context) {
-        return context.containsKey("portability_id") && context.get("portability_id") != null;
-    }
-
-    private boolean hasCheckoutData(Map<String, Object> context) {
-        return context.containsKey("checkout_session_id") && context.get("checkout_session_id") != null;
-    }
-
-    private boolean hasImeiCompatibilityData(Map<String, Object> context) {
-        return context.containsKey("imei_compatible");
-    }
-
-    private boolean hasErrorData(Map<String, Object> context) {
-        return context.containsKey("last_error") && context.get("last_error") != null;
-    }
 }
@@ -0,0 +1,201 @@
+package com.portability.bot_service.service;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import com.portability.bot_service.model.context.ContextField;
+import com.portability.bot_service.model.context.ContextSource;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.security.SensitiveDataEncryptor;
+
+/**
+ * Extractors of conversation context values from tool responses, compiled at
+ * startup from the @ContextSource / @ContextField annotations on the DTOs.
+ *
+ * Each annotated member becomes a MethodHandle adapted to (Object)Object, so
+ * extraction is one map lookup by response class plus one handle invocation
+ * per field; no tool-name dispatch or reflection per call. Encrypted fields
+ * are encrypted here and sensitive values never reach the logs.
+ */
+@Service
+public class ContextExtractorRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextExtractorRegistry.class);
+
+    private static final String DTO_PACKAGE = "com.portability.bot_service.model.dto";
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private record FieldExtractor(String key, MethodHandle getter, boolean sensitive, boolean encrypted) {
+    }
+
+    private record ResponseExtractor(Class<?> type, Set<String> tools, List<FieldExtractor> fields) {
+
+        boolean appliesTo(String toolName) {
+            return tools.isEmpty() || tools.contains(toolName);
+        }
+    }
+
+    private final Map<Class<?>, ResponseExtractor> extractors;
+    private final SensitiveDataEncryptor encryptor;
+
+    public ContextExtractorRegistry(SensitiveDataEncryptor encryptor) {
+        this.encryptor = encryptor;
+
+        Map<Class<?>, ResponseExtractor> compiled = new HashMap<>();
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(ContextSource.class));
+        for (BeanDefinition candidate : scanner.findCandidateComponents(DTO_PACKAGE)) {
+            Class<?> type = ClassUtils.resolveClassName(candidate.getBeanClassName(), getClass().getClassLoader());
+            compiled.put(type, compile(type));
+        }
+        this.extractors = Map.copyOf(compiled);
+
+        logger.info("Compiled context extractors for {} response types", extractors.size());
+    }
+
+    /**
+     * Context values carried by a tool response, keyed by flat context key.
+     * Empty when the response type is not annotated or not captured for the tool.
+     */
+    public Map<String, Object> extract(String toolName, Object toolResponse) {
+        Map<String, Object> data = new HashMap<>();
+        if (toolResponse == null) {
+            return data;
+        }
+
+        ResponseExtractor extractor = extractors.get(toolResponse.getClass());
+        if (extractor == null || !extractor.appliesTo(toolName)) {
+            logger.debug("No context extraction for tool: {}", toolName);
+            return data;
+        }
+
+        List<String> encryptedKeys = new ArrayList<>();
+        List<String> plaintexts = new ArrayList<>();
+        for (FieldExtractor field : extractor.fields()) {
+            Object value = read(field, toolResponse);
+            if (field.encrypted()) {
+                if (value != null) {
+                    encryptedKeys.add(field.key());
+                    plaintexts.add(value.toString());
+                }
+                continue;
+            }
+            data.put(field.key(), value);
+        }
+        if (!plaintexts.isEmpty()) {
+            // One cipher for all the encrypted fields of the response
+            List<String> ciphertexts = encryptor.encryptAll(plaintexts);
+            for (int i = 0; i < encryptedKeys.size(); i++) {
+                data.put(encryptedKeys.get(i), ciphertexts.get(i));
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Extracted {} context fields from tool {}: {}", data.size(), toolName, describe(extractor, data));
+        }
+        return data;
+    }
+
+    private Object read(FieldExtractor field, Object response) {
+        try {
+            return (Object) field.getter().invokeExact(response);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to read context field " + field.key(), e);
+        }
+    }
+
+    // Non-sensitive values as is, sensitive ones only as present / absent
+    private Map<String, Object> describe(ResponseExtractor extractor, Map<String, Object> data) {
+        Map<String, Object> described = new LinkedHashMap<>();
+        for (FieldExtractor field : extractor.fields()) {
+            if (data.containsKey(field.key())) {
+                Object value = data.get(field.key());
+                described.put(field.key(), field.sensitive() ? (value != null ? "***" : null) : value);
+            }
+        }
+        return described;
+    }
+
+    private ResponseExtractor compile(Class<?> type) {
+        ContextSource source = type.getAnnotation(ContextSource.class);
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        List<FieldExtractor> fields = new ArrayList<>();
+        Set<String> accessors = new HashSet<>();
+
+        try {
+            // Fields and record components, read through their public accessor
+            for (Field field : type.getDeclaredFields()) {
+                ContextField mapping = field.getAnnotation(ContextField.class);
+                if (mapping == null || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Method accessor = accessorFor(type, field);
+                accessors.add(accessor.getName());
+                fields.add(extractor(mapping, lookup.unreflect(accessor)));
+            }
+
+            // Derived values exposed as no-argument methods
+            for (Method method : type.getDeclaredMethods()) {
+                ContextField mapping = method.getAnnotation(ContextField.class);
+                if (mapping == null || accessors.contains(method.getName())) {
+                    continue;
+                }
+                if (method.getParameterCount() != 0 || !Modifier.isPublic(method.getModifiers())) {
+                    throw new IllegalStateException("@ContextField method " + type.getSimpleName() + "."
+                            + method.getName() + " must be public and take no arguments");
+                }
+                fields.add(extractor(mapping, lookup.unreflect(method)));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access context fields of " + type.getName(), e);
+        }
+
+        logger.debug("Compiled context extractor for {}: {} fields", type.getSimpleName(), fields.size());
+        return new ResponseExtractor(type, Set.of(source.tools()), List.copyOf(fields));
+    }
+
+    private FieldExtractor extractor(ContextField mapping, MethodHandle accessor) {
+        if (!ConversationContext.FLAT_KEYS.contains(mapping.value())) {
+            throw new IllegalStateException("Unknown context key in @ContextField: " + mapping.value());
+        }
+        return new FieldExtractor(mapping.value(), accessor.asType(GETTER_TYPE), mapping.sensitive(), mapping.encrypted());
+    }
+
+    private Method accessorFor(Class<?> type, Field field) {
+        if (type.isRecord()) {
+            for (RecordComponent component : type.getRecordComponents()) {
+                if (component.getName().equals(field.getName())) {
+                    return component.getAccessor();
+                }
+            }
+        }
+        PropertyDescriptor property = BeanUtils.getPropertyDescriptor(type, field.getName());
+        if (property == null || property.getReadMethod() == null) {
+            throw new IllegalStateException("@ContextField " + type.getSimpleName() + "." + field.getName()
+                    + " has no public getter");
+        }
+        return property.getReadMethod();
+    }
+}
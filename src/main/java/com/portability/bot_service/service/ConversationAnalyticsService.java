@@ -0,0 +1,302 @@
+package com.portability.bot_service.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.portability.bot_service.model.enm.ConversationEventType;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.service.ConversationEventService.ConversationEvent;
+
+/**
+ * Funnel analytics over conversation states, served from incremental rollups
+ * so dashboards never scan chat_conversations:
+ *
+ * - conversation_state_hourly: per hour and state, conversations that entered
+ *   and left the state and the dwell time of those that left
+ * - conversation_transition_hourly: per hour, count of each (from, to) edge
+ * - conversation_state_counts: conversations currently in each state
+ *
+ * Rollups are updated from the state transition events, in the transaction
+ * that writes them (see ConversationEventService). Current counts are seeded
+ * once from chat_conversations and rebuilt nightly (one node of the cluster)
+ * and on demand, since events lost to a failed write make them drift.
+ */
+@Service
+public class ConversationAnalyticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationAnalyticsService.class);
+
+    private static final String REBUILD_JOB_NAME = "conversation-state-counts-rebuild";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationStateMachine stateMachine;
+    private final JobCoordinator jobCoordinator;
+
+    public ConversationAnalyticsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            ConversationStateMachine stateMachine, JobCoordinator jobCoordinator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stateMachine = stateMachine;
+        this.jobCoordinator = jobCoordinator;
+    }
+
+    private record StateBucket(LocalDateTime bucket, String state) {
+    }
+
+    private record EdgeBucket(LocalDateTime bucket, String fromState, String toState) {
+    }
+
+    private static final class StateTotals {
+        long entered;
+        long exited;
+        long dwellTotal;
+        long dwellMax;
+    }
+
+    /**
+     * Fold a batch of events into the rollups. Only state transitions count.
+     * Rows are upserted in key order so concurrent batches cannot deadlock.
+     */
+    public void applyEvents(List<ConversationEvent> events) {
+        Map<StateBucket, StateTotals> states = new TreeMap<>(
+                Comparator.comparing(StateBucket::bucket).thenComparing(StateBucket::state));
+        Map<EdgeBucket, Long> edges = new TreeMap<>(Comparator.comparing(EdgeBucket::bucket)
+                .thenComparing(EdgeBucket::fromState).thenComparing(EdgeBucket::toState));
+        Map<String, Long> currentDeltas = new TreeMap<>();
+
+        for (ConversationEvent event : events) {
+            if (event.type() != ConversationEventType.STATE_TRANSITION || event.toState() == null) {
+                continue;
+            }
+            LocalDateTime bucket = event.createdAt().truncatedTo(ChronoUnit.HOURS);
+            String to = event.toState().name();
+
+            states.computeIfAbsent(new StateBucket(bucket, to), key -> new StateTotals()).entered++;
+            currentDeltas.merge(to, 1L, Long::sum);
+
+            if (event.fromState() != null) {
+                String from = event.fromState().name();
+                StateTotals exited = states.computeIfAbsent(new StateBucket(bucket, from), key -> new StateTotals());
+                exited.exited++;
+                Object dwell = event.payload() != null ? event.payload().get(ConversationEventService.DWELL_SECONDS) : null;
+                if (dwell instanceof Number seconds) {
+                    exited.dwellTotal += seconds.longValue();
+                    exited.dwellMax = Math.max(exited.dwellMax, seconds.longValue());
+                }
+                edges.merge(new EdgeBucket(bucket, from, to), 1L, Long::sum);
+                currentDeltas.merge(from, -1L, Long::sum);
+            }
+        }
+
+        if (states.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> stateRows = new ArrayList<>(states.size());
+        states.forEach((key, totals) -> stateRows.add(new Object[] {
+                Timestamp.valueOf(key.bucket()), key.state(),
+                totals.entered, totals.exited, totals.dwellTotal, totals.dwellMax }));
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO conversation_state_hourly
+                    (bucket_start, state, entered, exited, dwell_seconds_total, dwell_seconds_max)
+                VALUES (?, ?, ?, ?, ?, ?)
+                ON CONFLICT (bucket_start, state) DO UPDATE SET
+                    entered = conversation_state_hourly.entered + EXCLUDED.entered,
+                    exited = conversation_state_hourly.exited + EXCLUDED.exited,
+                    dwell_seconds_total = conversation_state_hourly.dwell_seconds_total + EXCLUDED.dwell_seconds_total,
+                    dwell_seconds_max = GREATEST(conversation_state_hourly.dwell_seconds_max, EXCLUDED.dwell_seconds_max)
+                """, stateRows);
+
+        if (!edges.isEmpty()) {
+            List<Object[]> edgeRows = new ArrayList<>(edges.size());
+            edges.forEach((key, count) -> edgeRows.add(new Object[] {
+                    Timestamp.valueOf(key.bucket()), key.fromState(), key.toState(), count }));
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO conversation_transition_hourly (bucket_start, from_state, to_state, transitions)
+                    VALUES (?, ?, ?, ?)
+                    ON CONFLICT (bucket_start, from_state, to_state) DO UPDATE SET
+                        transitions = conversation_transition_hourly.transitions + EXCLUDED.transitions
+                    """, edgeRows);
+        }
+
+        List<Object[]> countRows = new ArrayList<>(currentDeltas.size());
+        currentDeltas.forEach((state, delta) -> {
+            if (delta != 0) {
+                countRows.add(new Object[] { state, delta });
+            }
+        });
+        if (!countRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO conversation_state_counts (state, conversations, updated_at)
+                    VALUES (?, ?, CURRENT_TIMESTAMP)
+                    ON CONFLICT (state) DO UPDATE SET
+                        conversations = conversation_state_counts.conversations + EXCLUDED.conversations,
+                        updated_at = CURRENT_TIMESTAMP
+                    """, countRows);
+        }
+    }
+
+    /**
+     * Seed the current per-state counts the first time the application runs
+     * with the rollups. ON CONFLICT keeps concurrent nodes from double counting.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedCurrentCounts() {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM conversation_state_counts", Integer.class);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        int seeded = jdbcTemplate.update("""
+                INSERT INTO conversation_state_counts (state, conversations, updated_at)
+                SELECT current_state, COUNT(*), CURRENT_TIMESTAMP
+                FROM chat_conversations
+                WHERE current_state IS NOT NULL
+                GROUP BY current_state
+                ON CONFLICT (state) DO NOTHING
+                """);
+        logger.info("Seeded current conversation counts for {} states", seeded);
+    }
+
+    /**
+     * Scheduled rebuild of the current per-state counts, on one node of the
+     * cluster. Runs daily at 4:45 AM by default
+     */
+    @Scheduled(cron = "${conversation.analytics.rebuild-cron:0 45 4 * * *}")
+    public void scheduledRebuildCurrentCounts() {
+        jobCoordinator.runExclusive(REBUILD_JOB_NAME, (shard, shardCount) -> Map.of("states", rebuildCurrentCounts()));
+    }
+
+    /**
+     * Recompute the current per-state counts from chat_conversations (one
+     * scan). Concurrent rollup updates wait on the table lock meanwhile.
+     */
+    public int rebuildCurrentCounts() {
+        Integer states = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE conversation_state_counts IN EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM conversation_state_counts");
+            return jdbcTemplate.update("""
+                    INSERT INTO conversation_state_counts (state, conversations, updated_at)
+                    SELECT current_state, COUNT(*), CURRENT_TIMESTAMP
+                    FROM chat_conversations
+                    WHERE current_state IS NOT NULL
+                    GROUP BY current_state
+                    """);
+        });
+        logger.info("Rebuilt current conversation counts for {} states", states);
+        return states != null ? states : 0;
+    }
+
+    /**
+     * Conversations currently in each state, in funnel order
+     */
+    public List<Map<String, Object>> getCurrentStateCounts() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT state, conversations, updated_at FROM conversation_state_counts");
+        rows.sort(Comparator.comparingInt(row -> rank(row.get("state"))));
+        return rows;
+    }
+
+    /**
+     * Hourly entered / exited counts, optionally for a single state
+     */
+    public List<Map<String, Object>> getHourly(LocalDateTime from, LocalDateTime to, ConversationState state) {
+        if (state != null) {
+            return jdbcTemplate.queryForList("""
+                    SELECT bucket_start, state, entered, exited, dwell_seconds_total, dwell_seconds_max
+                    FROM conversation_state_hourly
+                    WHERE bucket_start >= ? AND bucket_start < ? AND state = ?
+                    ORDER BY bucket_start
+                    """, Timestamp.valueOf(from), Timestamp.valueOf(to), state.name());
+        }
+        return jdbcTemplate.queryForList("""
+                SELECT bucket_start, state, entered, exited, dwell_seconds_total, dwell_seconds_max
+                FROM conversation_state_hourly
+                WHERE bucket_start >= ? AND bucket_start < ?
+                ORDER BY bucket_start, state
+                """, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Average and maximum time spent in each state by the conversations that
+     * left it during the period
+     */
+    public List<Map<String, Object>> getDwellTimes(LocalDateTime from, LocalDateTime to) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+                SELECT state,
+                       SUM(exited) AS exited,
+                       CASE WHEN SUM(exited) > 0 THEN SUM(dwell_seconds_total) / SUM(exited) END AS avg_dwell_seconds,
+                       MAX(dwell_seconds_max) AS max_dwell_seconds
+                FROM conversation_state_hourly
+                WHERE bucket_start >= ? AND bucket_start < ?
+                GROUP BY state
+                """, Timestamp.valueOf(from), Timestamp.valueOf(to));
+        rows.sort(Comparator.comparingInt(row -> rank(row.get("state"))));
+        return rows;
+    }
+
+    /**
+     * Per state in funnel order: conversations that entered it and how many
+     * left it towards ABANDONED, ERROR_STATE or BLOCKED, with the rates
+     */
+    public List<Map<String, Object>> getDropoff(LocalDateTime from, LocalDateTime to) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("""
+                SELECT s.state,
+                       s.entered,
+                       COALESCE(t.abandoned, 0) AS abandoned,
+                       COALESCE(t.failed, 0) AS failed,
+                       COALESCE(t.exits, 0) AS exits
+                FROM (
+                    SELECT state, SUM(entered) AS entered
+                    FROM conversation_state_hourly
+                    WHERE bucket_start >= ? AND bucket_start < ?
+                    GROUP BY state
+                ) s
+                LEFT JOIN (
+                    SELECT from_state,
+                           SUM(transitions) AS exits,
+                           SUM(transitions) FILTER (WHERE to_state = 'ABANDONED') AS abandoned,
+                           SUM(transitions) FILTER (WHERE to_state IN ('ERROR_STATE', 'BLOCKED')) AS failed
+                    FROM conversation_transition_hourly
+                    WHERE bucket_start >= ? AND bucket_start < ?
+                    GROUP BY from_state
+                ) t ON t.from_state = s.state
+                """, Timestamp.valueOf(from), Timestamp.valueOf(to), Timestamp.valueOf(from), Timestamp.valueOf(to));
+
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            long entered = ((Number) row.get("entered")).longValue();
+            Map<String, Object> funnelStep = new LinkedHashMap<>(row);
+            funnelStep.put("abandonRate", entered > 0 ? ((Number) row.get("abandoned")).doubleValue() / entered : 0.0);
+            funnelStep.put("failureRate", entered > 0 ? ((Number) row.get("failed")).doubleValue() / entered : 0.0);
+            result.add(funnelStep);
+        }
+        result.sort(Comparator.comparingInt(row -> rank(row.get("state"))));
+        return result;
+    }
+
+    private int rank(Object state) {
+        try {
+            return stateMachine.getRank(ConversationState.valueOf(String.valueOf(state)));
+        } catch (IllegalArgumentException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
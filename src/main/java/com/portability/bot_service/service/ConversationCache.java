@@ -0,0 +1,258 @@
+package com.portability.bot_service.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.model.enm.MessageType;
+import com.portability.bot_service.model.entity.ChatConversation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-process read-through cache of hot conversations: state, context map and
+ * the recent message window served by PostgresChatMemory.get.
+ *
+ * - Size-bounded by an estimate of the bytes each entry holds
+ * - Written through by PostgresChatMemory and ConversationStateService once
+ *   their transaction commits, so a rollback never leaves uncommitted data here
+ * - Explicitly invalidated on reset and clear
+ * - Every committed change is published to the other replicas, which evict
+ *   their copy (see ConversationInvalidationListener). Entries also expire a
+ *   fixed time after being written, bounding staleness if a notification is lost
+ * - Hit rate and weighted size are exposed as Micrometer meters and via
+ *   getStats()
+ */
+@Service
+public class ConversationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationCache.class);
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int MESSAGE_OVERHEAD_BYTES = 48;
+    private static final int CONTEXT_FIELD_OVERHEAD_BYTES = 24;
+
+    private final Cache<String, CachedConversation> cache;
+    private final long maximumWeightBytes;
+    private final ConversationInvalidationPublisher invalidationPublisher;
+
+    public ConversationCache(
+            MeterRegistry meterRegistry,
+            ConversationInvalidationPublisher invalidationPublisher,
+            @Value("${conversation.cache.maximum-weight-bytes:67108864}") long maximumWeightBytes,
+            @Value("${conversation.cache.expire-after-access-minutes:30}") long expireAfterAccessMinutes,
+            @Value("${conversation.cache.expire-after-write-minutes:10}") long expireAfterWriteMinutes) {
+        this.maximumWeightBytes = maximumWeightBytes;
+        this.invalidationPublisher = invalidationPublisher;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeightBytes)
+                .weigher((String key, CachedConversation value) -> value.weight())
+                .expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "conversations");
+        Gauge.builder("conversation.cache.weighted.bytes", this, ConversationCache::getWeightedSizeBytes)
+                .description("Estimated bytes held by the conversation cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cached view of a conversation. recentMessages is null until the message
+     * window has been loaded by the chat memory.
+     */
+    public record CachedConversation(
+            Long id,
+            ConversationState state,
+            ConversationContext contextData,
+            List<CachedMessage> recentMessages,
+            int weight) {
+
+        public static CachedConversation of(ChatConversation conversation, List<CachedMessage> recentMessages) {
+            // The context is immutable, so it is shared with the entity instead of copied
+            return of(conversation.getId(), conversation.getCurrentState(), conversation.getContextData(), recentMessages);
+        }
+
+        private static CachedConversation of(Long id, ConversationState state,
+                ConversationContext contextData, List<CachedMessage> recentMessages) {
+            return new CachedConversation(id, state, contextData, recentMessages,
+                    estimateWeight(contextData, recentMessages));
+        }
+
+        public CachedConversation withState(ConversationState newState) {
+            return of(id, newState, contextData, recentMessages);
+        }
+
+        public CachedConversation withRecentMessages(List<CachedMessage> messages) {
+            return of(id, state, contextData, messages == null ? null : List.copyOf(messages));
+        }
+
+        /**
+         * Append messages to an already loaded window, keeping at most maxSize.
+         * Messages already in the window (same order) are skipped, in case the
+         * window was reloaded after the commit that produced them.
+         */
+        public CachedConversation withAppendedMessages(List<CachedMessage> appended, int maxSize) {
+            if (recentMessages == null) {
+                return this;
+            }
+            int lastOrder = recentMessages.isEmpty() ? -1 : recentMessages.get(recentMessages.size() - 1).order();
+            List<CachedMessage> window = new ArrayList<>(recentMessages);
+            for (CachedMessage message : appended) {
+                if (message.order() > lastOrder) {
+                    window.add(message);
+                }
+            }
+            if (window.size() > maxSize) {
+                window = window.subList(window.size() - maxSize, window.size());
+            }
+            return withRecentMessages(window);
+        }
+    }
+
+    public record CachedMessage(int order, MessageType type, String content) {
+    }
+
+    /**
+     * Read-through lookup. The loader returns null when the conversation does
+     * not exist, in which case nothing is cached.
+     */
+    public CachedConversation get(String conversationId, Function<String, CachedConversation> loader) {
+        return cache.get(conversationId, loader);
+    }
+
+    /**
+     * Replace (or add) the cached view of a conversation after the current
+     * transaction commits, keeping an already loaded message window.
+     */
+    public void writeThrough(ChatConversation conversation) {
+        String conversationId = conversation.getConversationId();
+        CachedConversation fresh = CachedConversation.of(conversation, null);
+        afterCommit(() -> {
+            cache.asMap().merge(conversationId, fresh,
+                    (existing, updated) -> updated.withRecentMessages(existing.recentMessages()));
+            invalidationPublisher.publish(List.of(conversationId));
+        });
+    }
+
+    /**
+     * Apply a change to a cached conversation after the current transaction
+     * commits. Conversations that are not cached are left alone.
+     */
+    public void update(String conversationId, UnaryOperator<CachedConversation> change) {
+        afterCommit(() -> {
+            cache.asMap().computeIfPresent(conversationId, (key, existing) -> change.apply(existing));
+            invalidationPublisher.publish(List.of(conversationId));
+        });
+    }
+
+    /**
+     * Drop conversations from the cache. Evicts immediately and again after
+     * commit, so a concurrent read cannot re-cache the pre-commit rows.
+     */
+    public void invalidate(Collection<String> conversationIds) {
+        cache.invalidateAll(conversationIds);
+        afterCommit(() -> {
+            cache.invalidateAll(conversationIds);
+            invalidationPublisher.publish(conversationIds);
+        });
+        logger.debug("Invalidated {} cached conversations", conversationIds.size());
+    }
+
+    public void invalidate(String conversationId) {
+        invalidate(List.of(conversationId));
+    }
+
+    /**
+     * Evict conversations changed by another node. Not published again.
+     */
+    public void evictLocal(Collection<String> conversationIds) {
+        cache.invalidateAll(conversationIds);
+    }
+
+    /**
+     * Drop every cached conversation, used when invalidations may have been
+     * missed (listener reconnect). Not published again.
+     */
+    public void evictAllLocal() {
+        cache.invalidateAll();
+    }
+
+    public long getWeightedSizeBytes() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Cache statistics: hit rate, counts and memory usage estimate
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("weightedSizeBytes", getWeightedSizeBytes());
+        result.put("maximumWeightBytes", maximumWeightBytes);
+        result.put("hitRate", stats.hitRate());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("averageLoadPenaltyMs", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static int estimateWeight(ConversationContext contextData, List<CachedMessage> messages) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        if (contextData != null) {
+            for (String key : ConversationContext.FLAT_KEYS) {
+                Object value = contextData.get(key);
+                if (value != null) {
+                    bytes += CONTEXT_FIELD_OVERHEAD_BYTES + (value instanceof String text ? 2L * text.length() : 16);
+                }
+            }
+            for (Object value : contextData.extra().values()) {
+                bytes += CONTEXT_FIELD_OVERHEAD_BYTES + (value instanceof String text ? 2L * text.length() : 16);
+            }
+        }
+        if (messages != null) {
+            for (CachedMessage message : messages) {
+                bytes += MESSAGE_OVERHEAD_BYTES
+                        + (message.content() != null ? 2L * message.content().length() : 0);
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,332 @@
+package com.portability.bot_service.service;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.portability.bot_service.model.enm.ConversationEventType;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.security.LogSanitizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Append-only log of conversation events (state transitions, context patches,
+ * errors) in conversation_events, with periodic snapshots of state and context
+ * on chat_conversations.
+ *
+ * - Events are only kept once the transaction that produced them commits
+ * - During a chat turn (beginTurn / flushTurn) events are buffered and written
+ *   as one JDBC batch at the end of the turn; outside a turn they are written
+ *   right after commit
+ * - A failed write is logged and counted (conversation.events.write.failures)
+ *   but does not fail the chat turn; the lost transitions are absorbed by the
+ *   nightly rebuild of the current state counts
+ * - After each write, conversations with at least snapshot-interval events
+ *   since their last snapshot get a new one (current_state, context_data
+ *   without its sensitive values and the last event id), so replay only needs
+ *   the events after the snapshot
+ * - Context patches record field names, not values, and snapshots hold no
+ *   sensitive values, so personal data stays in context_data where the
+ *   retention cleanup and reset apply. Error messages are masked with
+ *   LogSanitizer
+ * - State transitions carry the dwell time in the previous state and feed the
+ *   funnel rollups (ConversationAnalyticsService) in the same transaction
+ */
+@Service
+public class ConversationEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationEventService.class);
+
+    private static final ThreadLocal<List<ConversationEvent>> turnBuffer = new ThreadLocal<>();
+    private static final int INSERT_BATCH_SIZE = 500;
+    static final String DWELL_SECONDS = "dwell_s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ConversationAnalyticsService analyticsService;
+    private final Counter writeFailures;
+
+    @Value("${conversation.events.snapshot-interval:20}")
+    private int snapshotInterval;
+
+    public ConversationEventService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ConversationAnalyticsService analyticsService,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.analyticsService = analyticsService;
+        this.writeFailures = Counter.builder("conversation.events.write.failures")
+                .description("Conversation events lost to a failed write")
+                .register(meterRegistry);
+        // Writes run after the producing transaction committed, so they need their own
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.objectMapper = new ObjectMapper();
+    }
+
+    public record ConversationEvent(
+            Long conversationRef,
+            ConversationEventType type,
+            ConversationState fromState,
+            ConversationState toState,
+            Map<String, Object> payload,
+            LocalDateTime createdAt) {
+    }
+
+    /**
+     * Start buffering the events of the current thread until flushTurn
+     */
+    public void beginTurn() {
+        turnBuffer.set(new ArrayList<>());
+    }
+
+    /**
+     * Write the events buffered since beginTurn in one batch
+     */
+    public void flushTurn() {
+        List<ConversationEvent> buffered = turnBuffer.get();
+        turnBuffer.remove();
+        if (buffered != null && !buffered.isEmpty()) {
+            write(buffered);
+        }
+    }
+
+    /**
+     * Record a state transition. previousEnteredAt (when the conversation
+     * entered fromState) gives the dwell time used by the funnel analytics.
+     */
+    public void recordTransition(Long conversationRef, ConversationState fromState,
+            ConversationState toState, String source, LocalDateTime previousEnteredAt) {
+        LocalDateTime now = LocalDateTime.now();
+        record(List.of(transition(conversationRef, fromState, toState, source, previousEnteredAt, now)));
+    }
+
+    /**
+     * Record the creation of a conversation (entering INITIAL)
+     */
+    public void recordCreated(Long conversationRef) {
+        recordTransition(conversationRef, null, ConversationState.INITIAL, "created", null);
+    }
+
+    /**
+     * Record the transitions of a bulk update, given [id, previous state,
+     * previous state_entered_at] rows. Rows already in toState are skipped.
+     */
+    public void recordTransitions(List<Object[]> previousStates, ConversationState toState, String source) {
+        LocalDateTime now = LocalDateTime.now();
+        List<ConversationEvent> events = new ArrayList<>(previousStates.size());
+        for (Object[] row : previousStates) {
+            ConversationState fromState = row[1] != null ? ConversationState.valueOf(row[1].toString()) : null;
+            if (fromState == toState) {
+                continue;
+            }
+            LocalDateTime enteredAt = row[2] instanceof Timestamp timestamp ? timestamp.toLocalDateTime()
+                    : row[2] instanceof LocalDateTime dateTime ? dateTime : null;
+            events.add(transition(((Number) row[0]).longValue(), fromState, toState, source, enteredAt, now));
+        }
+        record(events);
+    }
+
+    private ConversationEvent transition(Long conversationRef, ConversationState fromState,
+            ConversationState toState, String source, LocalDateTime previousEnteredAt, LocalDateTime now) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("source", source);
+        if (previousEnteredAt != null) {
+            payload.put(DWELL_SECONDS, Math.max(0, Duration.between(previousEnteredAt, now).toSeconds()));
+        }
+        return new ConversationEvent(conversationRef, ConversationEventType.STATE_TRANSITION,
+                fromState, toState, payload, now);
+    }
+
+    public void recordContextPatch(Long conversationRef, Map<String, List<String>> changedKeys, String source) {
+        recordContextPatches(Map.of(conversationRef, changedKeys), source);
+    }
+
+    /**
+     * Record the context patches of several conversations as one batch
+     */
+    public void recordContextPatches(Map<Long, Map<String, List<String>>> changedKeysByRef, String source) {
+        LocalDateTime now = LocalDateTime.now();
+        List<ConversationEvent> events = new ArrayList<>(changedKeysByRef.size());
+        changedKeysByRef.forEach((conversationRef, changedKeys) -> {
+            if (changedKeys.values().stream().allMatch(List::isEmpty)) {
+                return;
+            }
+            Map<String, Object> payload = new HashMap<>(changedKeys);
+            payload.put("source", source);
+            events.add(new ConversationEvent(conversationRef, ConversationEventType.CONTEXT_PATCH,
+                    null, null, payload, now));
+        });
+        record(events);
+    }
+
+    /**
+     * Record a tool error. The message may echo user input, so it is stored
+     * masked like in the logs.
+     */
+    public void recordError(Long conversationRef, String toolName, String errorMessage, Integer errorCount) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("tool", toolName);
+        payload.put("message", LogSanitizer.sanitize(errorMessage));
+        payload.put("count", errorCount);
+        record(List.of(new ConversationEvent(conversationRef, ConversationEventType.ERROR,
+                null, null, payload, LocalDateTime.now())));
+    }
+
+    /**
+     * Events of a conversation after its latest snapshot (or all of them if
+     * there is none), together with the snapshot itself, newest event last
+     */
+    public Map<String, Object> getEventsSinceSnapshot(String conversationId, int limit) {
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> snapshot = jdbcTemplate.queryForList("""
+                SELECT id, snapshot_state, snapshot_event_id, snapshot_at, current_state
+                FROM chat_conversations WHERE conversation_id = ?
+                """, conversationId);
+        if (snapshot.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Object> conversation = snapshot.get(0);
+        result.put("conversationId", conversationId);
+        result.put("currentState", conversation.get("current_state"));
+        result.put("snapshotState", conversation.get("snapshot_state"));
+        result.put("snapshotEventId", conversation.get("snapshot_event_id"));
+        result.put("snapshotAt", conversation.get("snapshot_at"));
+        result.put("events", jdbcTemplate.queryForList("""
+                SELECT id, event_type, from_state, to_state, payload::text AS payload, created_at
+                FROM (
+                    SELECT * FROM conversation_events
+                    WHERE conversation_ref = ? AND id > COALESCE(CAST(? AS BIGINT), 0)
+                    ORDER BY id DESC
+                    LIMIT ?
+                ) recent
+                ORDER BY id
+                """, conversation.get("id"), conversation.get("snapshot_event_id"), limit));
+        return result;
+    }
+
+    private void record(List<ConversationEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            List<ConversationEvent> buffered = turnBuffer.get();
+            if (buffered != null) {
+                buffered.addAll(events);
+            } else {
+                write(events);
+            }
+        });
+    }
+
+    private void write(List<ConversationEvent> events) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertAndSnapshot(events));
+            logger.debug("Wrote {} conversation events", events.size());
+        } catch (Exception e) {
+            writeFailures.increment(events.size());
+            logger.error("Failed to write {} conversation events", events.size(), e);
+        }
+    }
+
+    private void insertAndSnapshot(List<ConversationEvent> events) {
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO conversation_events
+                    (conversation_ref, event_type, from_state, to_state, payload, created_at)
+                VALUES (?, ?, ?, ?, CAST(? AS jsonb), ?)
+                """, events, INSERT_BATCH_SIZE, (ps, event) -> {
+                    ps.setLong(1, event.conversationRef());
+                    ps.setString(2, event.type().name());
+                    ps.setString(3, event.fromState() != null ? event.fromState().name() : null);
+                    ps.setString(4, event.toState() != null ? event.toState().name() : null);
+                    if (event.payload() != null) {
+                        ps.setString(5, toJson(event.payload()));
+                    } else {
+                        ps.setNull(5, Types.VARCHAR);
+                    }
+                    ps.setTimestamp(6, Timestamp.valueOf(event.createdAt()));
+                });
+
+        Set<Long> conversationRefs = new LinkedHashSet<>();
+        events.forEach(event -> conversationRefs.add(event.conversationRef()));
+        takeSnapshots(conversationRefs);
+
+        // Funnel rollups are updated in the same transaction as the events
+        analyticsService.applyEvents(events);
+    }
+
+    /**
+     * Snapshot the conversations that accumulated snapshotInterval events since
+     * their last snapshot. Counting uses idx_conversation_events_conversation.
+     * The snapshot context is stripped of sensitive values like the retention
+     * cleanup does.
+     */
+    private void takeSnapshots(Set<Long> conversationRefs) {
+        int snapshots = jdbcTemplate.update("""
+                UPDATE chat_conversations c SET
+                    snapshot_state = c.current_state,
+                    snapshot_context = %s,
+                    snapshot_event_id = pending.last_event_id,
+                    snapshot_at = CURRENT_TIMESTAMP
+                FROM (
+                    SELECT e.conversation_ref, MAX(e.id) AS last_event_id, COUNT(*) AS pending_events
+                    FROM conversation_events e
+                    JOIN chat_conversations s ON s.id = e.conversation_ref
+                    WHERE e.conversation_ref = ANY (?)
+                      AND e.id > COALESCE(s.snapshot_event_id, 0)
+                    GROUP BY e.conversation_ref
+                ) pending
+                WHERE c.id = pending.conversation_ref
+                  AND pending.pending_events >= ?
+                """.formatted(ContextDataCleanupService.stripSensitiveData("c.context_data")), conversationRefs.toArray(new Long[0]), snapshotInterval);
+        if (snapshots > 0) {
+            logger.debug("Took {} conversation snapshots", snapshots);
+        }
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize event payload", e);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.portability.bot_service.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.portability.bot_service.config.InactivityProperties;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.repository.ChatConversationRepository;
+
+/**
+ * Marks idle conversations ABANDONED and inactive, so is_active scans and the
+ * hot conversation working set only hold conversations still in progress.
+ *
+ * - Per state, active conversations not updated for longer than the state's
+ *   idle timeout are updated in batches: one set-based statement per batch
+ *   over the (is_active, updated_at) index, each batch committed on its own
+ * - The state a conversation was in is kept, so
+ *   ConversationStateService.resumeAbandoned restores it when the user comes
+ *   back
+ * - Each batch records the state transitions (analytics rollups) and
+ *   invalidates the cached conversations on every node
+ * - Runs on one node of the cluster at a time (JobCoordinator)
+ */
+@Service
+public class ConversationInactivitySweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationInactivitySweeper.class);
+
+    private static final String JOB_NAME = "conversation-inactivity-sweep";
+    private static final String TRANSITION_SOURCE = "inactivity";
+
+    private final ChatConversationRepository conversationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationEventService eventService;
+    private final ConversationCache conversationCache;
+    private final JobCoordinator jobCoordinator;
+    private final InactivityProperties properties;
+
+    public ConversationInactivitySweeper(
+            ChatConversationRepository conversationRepository,
+            PlatformTransactionManager transactionManager,
+            ConversationEventService eventService,
+            ConversationCache conversationCache,
+            JobCoordinator jobCoordinator,
+            InactivityProperties properties) {
+        this.conversationRepository = conversationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventService = eventService;
+        this.conversationCache = conversationCache;
+        this.jobCoordinator = jobCoordinator;
+        this.properties = properties;
+    }
+
+    /**
+     * Scheduled sweep, every 15 minutes by default. No minimum interval: a
+     * replica repeating a sweep that just ran finds nothing to update.
+     */
+    @Scheduled(cron = "${conversation.inactivity.cron:0 */15 * * * *}")
+    public void scheduledSweep() {
+        if (properties.isEnabled()) {
+            jobCoordinator.runExclusive(JOB_NAME, Duration.ZERO, (shard, shardCount) -> {
+                Map<String, Object> details = new LinkedHashMap<>();
+                sweep().forEach((state, count) -> details.put(state.name(), count));
+                return details;
+            });
+        }
+    }
+
+    /**
+     * Mark the idle conversations of every state as ABANDONED
+     *
+     * @return abandoned conversations per previous state
+     */
+    public Map<ConversationState, Integer> sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<ConversationState, Integer> abandoned = new EnumMap<>(ConversationState.class);
+
+        try {
+            for (ConversationState state : ConversationState.values()) {
+                Duration idleTimeout = properties.idleTimeoutFor(state);
+                if (state == ConversationState.ABANDONED || idleTimeout == null || idleTimeout.isZero()) {
+                    continue;
+                }
+                int count = sweepState(state, now.minus(idleTimeout));
+                if (count > 0) {
+                    abandoned.put(state, count);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Inactivity sweep interrupted, abandoned so far: {}", abandoned);
+        }
+
+        if (!abandoned.isEmpty()) {
+            logger.info("Inactivity sweep marked conversations as ABANDONED: {}", abandoned);
+        }
+        return abandoned;
+    }
+
+    private int sweepState(ConversationState state, LocalDateTime idleBefore) throws InterruptedException {
+        int total = 0;
+        while (true) {
+            List<Object[]> previousStates = transactionTemplate.execute(status -> {
+                List<Object[]> rows = conversationRepository.markIdleAbandoned(
+                        state.name(), idleBefore, properties.getBatchSize());
+                if (!rows.isEmpty()) {
+                    eventService.recordTransitions(rows, ConversationState.ABANDONED, TRANSITION_SOURCE);
+                    conversationCache.invalidate(rows.stream().map(row -> (String) row[3]).toList());
+                }
+                return rows;
+            });
+
+            int updated = previousStates != null ? previousStates.size() : 0;
+            total += updated;
+            if (updated < properties.getBatchSize()) {
+                return total;
+            }
+            Thread.sleep(properties.getPauseMs());
+        }
+    }
+}
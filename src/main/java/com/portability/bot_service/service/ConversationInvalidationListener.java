@@ -0,0 +1,140 @@
+package com.portability.bot_service.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Subscribes to the conversation cache invalidation channel (PostgreSQL
+ * LISTEN) and evicts the affected conversations from the local cache.
+ *
+ * Uses a dedicated connection outside the pool, polled by a single daemon
+ * thread. All notifications received in one poll are evicted as one batch.
+ * If the connection is lost, notifications may have been missed, so the whole
+ * local cache is dropped after reconnecting; staleness is therefore bounded by
+ * the poll interval plus reconnect time, and by the cache expire-after-write
+ * as a last resort.
+ */
+@Service
+public class ConversationInvalidationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationInvalidationListener.class);
+
+    private final DataSourceProperties dataSourceProperties;
+    private final ConversationCache conversationCache;
+    private final ConversationInvalidationPublisher publisher;
+
+    private volatile boolean running = false;
+    private Thread listenerThread;
+
+    @Value("${conversation.cache.invalidation.poll-timeout-ms:500}")
+    private int pollTimeoutMillis;
+
+    @Value("${conversation.cache.invalidation.reconnect-delay-ms:5000}")
+    private long reconnectDelayMillis;
+
+    public ConversationInvalidationListener(
+            DataSourceProperties dataSourceProperties,
+            ConversationCache conversationCache,
+            ConversationInvalidationPublisher publisher) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.conversationCache = conversationCache;
+        this.publisher = publisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "conversation-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    private void listenLoop() {
+        boolean firstConnection = true;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + ConversationInvalidationPublisher.CHANNEL);
+                }
+                if (!firstConnection) {
+                    // Notifications sent while disconnected are lost
+                    conversationCache.evictAllLocal();
+                    logger.info("Reconnected invalidation listener, local conversation cache dropped");
+                }
+                firstConnection = false;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        handle(notifications);
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.error("Invalidation listener connection failed, retrying in {} ms", reconnectDelayMillis, e);
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(PGNotification[] notifications) {
+        Set<String> conversationIds = new HashSet<>();
+        for (PGNotification notification : notifications) {
+            String payload = notification.getParameter();
+            int separator = payload.indexOf('|');
+            if (separator < 0 || payload.startsWith(publisher.getNodeId() + "|")) {
+                continue;
+            }
+            for (String conversationId : payload.substring(separator + 1).split(",")) {
+                if (ConversationInvalidationPublisher.EVICT_ALL.equals(conversationId)) {
+                    conversationCache.evictAllLocal();
+                    return;
+                }
+                if (!conversationId.isEmpty()) {
+                    conversationIds.add(conversationId);
+                }
+            }
+        }
+
+        if (!conversationIds.isEmpty()) {
+            conversationCache.evictLocal(conversationIds);
+            logger.debug("Evicted {} conversations invalidated by other nodes", conversationIds.size());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+}
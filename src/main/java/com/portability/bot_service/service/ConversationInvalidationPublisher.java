@@ -0,0 +1,121 @@
+package com.portability.bot_service.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Publishes conversation cache invalidations to the other replicas through
+ * PostgreSQL NOTIFY.
+ *
+ * Conversation ids are queued by the write paths (after commit) and flushed
+ * on a short interval, so a burst of writes becomes a few NOTIFY calls
+ * carrying many ids each instead of one call per write. Payloads are kept
+ * under the PostgreSQL limit of 8000 bytes.
+ *
+ * Payload format: {nodeId}|{conversationId},{conversationId},...
+ */
+@Service
+public class ConversationInvalidationPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationInvalidationPublisher.class);
+
+    public static final String CHANNEL = "conversation_cache_invalidation";
+    public static final String EVICT_ALL = "*";
+    private static final int MAX_PAYLOAD_CHARS = 7900;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${conversation.cache.invalidation.flush-interval-ms:100}")
+    private long flushIntervalMillis;
+
+    public ConversationInvalidationPublisher(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Identifier of this node, used by listeners to skip their own notifications
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Queue conversation ids to be invalidated on the other nodes
+     */
+    public void publish(Collection<String> conversationIds) {
+        pending.addAll(conversationIds);
+    }
+
+    /**
+     * Send every queued id, batched into as few NOTIFY payloads as possible
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> batch = new ArrayList<>();
+        Iterator<String> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+
+        try {
+            StringBuilder payload = new StringBuilder(nodeId).append('|');
+            int headerLength = payload.length();
+            for (String conversationId : batch) {
+                if (payload.length() + conversationId.length() + 1 > MAX_PAYLOAD_CHARS) {
+                    send(payload);
+                    payload.setLength(headerLength);
+                }
+                if (payload.length() > headerLength) {
+                    payload.append(',');
+                }
+                payload.append(conversationId);
+            }
+            if (payload.length() > headerLength) {
+                send(payload);
+            }
+            logger.debug("Published invalidation of {} conversations", batch.size());
+        } catch (Exception e) {
+            // Other nodes fall back to their cache TTL for these ids
+            logger.error("Failed to publish invalidation of {} conversations", batch.size(), e);
+        }
+    }
+
+    private void send(CharSequence payload) {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload.toString());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+}
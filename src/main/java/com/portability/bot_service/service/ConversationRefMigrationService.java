@@ -0,0 +1,193 @@
+package com.portability.bot_service.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Online migration of chat_messages from the VARCHAR conversation_id foreign
+ * key to the numeric conversation_ref (chat_conversations.id).
+ *
+ * Phases:
+ * 1. Expand: conversation_ref column, index and foreign key (schema.sql / startup)
+ * 2. Dual-write: PostgresChatMemory writes both columns for every new message
+ * 3. Backfill: this service fills conversation_ref for old rows in small id
+ *    ranges, pausing between batches so it does not compete with live traffic.
+ *    It runs on one node of the cluster at a time (JobCoordinator); replicas
+ *    that find it running elsewhere try again on the next check
+ * 4. Switch reads and deletes: once the backfill is recorded in
+ *    schema_migrations, queries filter on conversation_ref exclusively. Every
+ *    node re-reads schema_migrations on a schedule until it sees the record,
+ *    so replicas switch even when another node ran the backfill
+ * 5. Contract: dropping conversation_id and its index/foreign key from
+ *    chat_messages, a manual step once every node reads by reference (see
+ *    db/drop_chat_messages_conversation_id.sql)
+ */
+@Service
+public class ConversationRefMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationRefMigrationService.class);
+
+    private static final String MIGRATION_NAME = "chat_messages_conversation_ref";
+    private static final String JOB_NAME = "conversation-ref-backfill";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobCoordinator jobCoordinator;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean backfillSubmitted = new AtomicBoolean();
+
+    private volatile boolean backfillComplete = false;
+
+    @Value("${chat.messages.conversation-ref.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${chat.messages.conversation-ref.pause-ms:100}")
+    private long pauseMillis;
+
+    public ConversationRefMigrationService(JdbcTemplate jdbcTemplate, JobCoordinator jobCoordinator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobCoordinator = jobCoordinator;
+    }
+
+    /**
+     * Whether every message carries conversation_ref, so reads can rely on it
+     */
+    public boolean isBackfillComplete() {
+        return backfillComplete;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMigration() {
+        checkMigration();
+    }
+
+    /**
+     * Re-read the migration record until it is there, starting the backfill
+     * in the background if no node of the cluster is running it. Runs every
+     * minute by default; a no-op once the backfill is complete.
+     */
+    @Scheduled(fixedDelayString = "${chat.messages.conversation-ref.check-interval:PT1M}",
+            initialDelayString = "${chat.messages.conversation-ref.check-interval:PT1M}")
+    public void checkMigration() {
+        if (backfillComplete) {
+            return;
+        }
+        if (isRecorded()) {
+            backfillComplete = true;
+            logger.info("conversation_ref backfill recorded, messages are now read by numeric reference");
+            return;
+        }
+        if (backfillSubmitted.compareAndSet(false, true)) {
+            executor.submit(() -> {
+                try {
+                    jobCoordinator.runExclusive(JOB_NAME, Duration.ZERO, (shard, shardCount) -> runBackfill());
+                } finally {
+                    backfillSubmitted.set(false);
+                }
+            });
+        }
+    }
+
+    private boolean isRecorded() {
+        Integer completed = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM schema_migrations WHERE migration_name = ?",
+                Integer.class, MIGRATION_NAME);
+        return completed != null && completed > 0;
+    }
+
+    /**
+     * Backfill job, run under the cluster lock. The record is checked again
+     * since another node may have completed the backfill before this one got
+     * the lock; an interrupted or failed run leaves it unrecorded and resumes
+     * from the rows still NULL on the next check.
+     */
+    private Map<String, Object> runBackfill() throws InterruptedException {
+        if (isRecorded()) {
+            backfillComplete = true;
+            return Map.of("skipped", "already recorded");
+        }
+
+        ensureForeignKey();
+        long updated = backfill();
+        jdbcTemplate.update(
+                "INSERT INTO schema_migrations (migration_name, completed_at) VALUES (?, CURRENT_TIMESTAMP)"
+                        + " ON CONFLICT (migration_name) DO NOTHING",
+                MIGRATION_NAME);
+        backfillComplete = true;
+        logger.info("conversation_ref backfill completed, messages are now read by numeric reference");
+        return Map.of("updated_messages", updated);
+    }
+
+    /**
+     * Adds the foreign key while conversation_ref is still mostly NULL, so the
+     * validation scan is cheap. Rows filled later are checked one by one.
+     */
+    private void ensureForeignKey() {
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_constraint WHERE conname = 'fk_conversation_ref'"
+                        + " AND conrelid = 'chat_messages'::regclass", Integer.class);
+        if (exists == null || exists == 0) {
+            jdbcTemplate.execute("ALTER TABLE chat_messages ADD CONSTRAINT fk_conversation_ref"
+                    + " FOREIGN KEY (conversation_ref) REFERENCES chat_conversations(id) ON DELETE CASCADE");
+        }
+    }
+
+    /**
+     * Walk the id range in fixed-size slices (primary key index) and fill
+     * conversation_ref from the owning conversation. New rows are dual-written,
+     * so the range is bounded by the max id seen when the backfill starts.
+     *
+     * @return number of messages updated
+     */
+    private long backfill() throws InterruptedException {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM chat_messages", Long.class);
+        if (maxId == null) {
+            return 0;
+        }
+
+        long from = 0;
+        long updated = 0;
+        while (from < maxId) {
+            long to = from + batchSize;
+            updated += jdbcTemplate.update("""
+                    UPDATE chat_messages m SET conversation_ref = c.id
+                    FROM chat_conversations c
+                    WHERE m.conversation_id = c.conversation_id
+                      AND m.id > ? AND m.id <= ?
+                      AND m.conversation_ref IS NULL
+                    """, from, to);
+            from = to;
+
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+
+        logger.info("Backfilled conversation_ref on {} messages (max id {})", updated, maxId);
+        return updated;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
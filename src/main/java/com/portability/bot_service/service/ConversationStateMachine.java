@@ -0,0 +1,226 @@
+package com.portability.bot_service.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.portability.bot_service.config.StateMachineProperties;
+import com.portability.bot_service.config.StateMachineProperties.Rule;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Conversation state machine compiled at startup from the declarative rules
+ * in StateMachineProperties (the baseline flow unless overridden in
+ * configuration).
+ *
+ * Every (from, to) pair is evaluated once against the rules and stored as a
+ * bit in a row per source state (one long per row, indexed by enum ordinal),
+ * so a transition check is a single array lookup and shift. A second table
+ * holds the pairs allowed when the target is the conversation's resume state,
+ * where RESUME rules match as well.
+ *
+ * Transition attempts are counted per edge (accepted / rejected) and exposed
+ * as the Micrometer counter conversation.state.transitions, registered the
+ * first time an edge is attempted.
+ */
+@Service
+public class ConversationStateMachine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationStateMachine.class);
+
+    private static final ConversationState[] STATES = ConversationState.values();
+    private static final int STATE_COUNT = STATES.length;
+
+    private final long[] allowed = new long[STATE_COUNT];
+    private final long[] allowedOnResume = new long[STATE_COUNT];
+    private final Map<ConversationState, Integer> ranks;
+    private final MeterRegistry meterRegistry;
+
+    // Per-edge counters, index = from.ordinal() * STATE_COUNT + to.ordinal()
+    private final AtomicLongArray accepted = new AtomicLongArray(STATE_COUNT * STATE_COUNT);
+    private final AtomicLongArray rejected = new AtomicLongArray(STATE_COUNT * STATE_COUNT);
+    private final AtomicIntegerArray registered = new AtomicIntegerArray(STATE_COUNT * STATE_COUNT);
+
+    public ConversationStateMachine(StateMachineProperties properties, MeterRegistry meterRegistry) {
+        if (STATE_COUNT > Long.SIZE) {
+            throw new IllegalStateException("Transition rows hold at most " + Long.SIZE + " states");
+        }
+        this.meterRegistry = meterRegistry;
+        this.ranks = new EnumMap<>(properties.getRanks());
+
+        for (ConversationState state : STATES) {
+            if (!ranks.containsKey(state)) {
+                throw new IllegalStateException("No rank for state " + state
+                        + " (StateMachineProperties defaults or conversation.state-machine.ranks)");
+            }
+        }
+
+        int allowedCount = 0;
+        for (ConversationState from : STATES) {
+            for (ConversationState to : STATES) {
+                if (evaluate(properties, from, to, false)) {
+                    allowed[from.ordinal()] |= 1L << to.ordinal();
+                    allowedCount++;
+                }
+                if (evaluate(properties, from, to, true)) {
+                    allowedOnResume[from.ordinal()] |= 1L << to.ordinal();
+                }
+            }
+        }
+
+        logger.info("Compiled conversation state machine: {} rules, {} of {} transitions allowed",
+                properties.getRules().size(), allowedCount, STATE_COUNT * STATE_COUNT);
+    }
+
+    /**
+     * Whether the compiled rules allow moving from one state to another
+     */
+    public boolean isAllowed(ConversationState from, ConversationState to) {
+        return (allowed[from.ordinal()] >>> to.ordinal() & 1L) != 0;
+    }
+
+    /**
+     * Whether the compiled rules allow the transition for a conversation whose
+     * resume state (the state it was swept to ABANDONED from) is resumeState,
+     * which may be null
+     */
+    public boolean isAllowed(ConversationState from, ConversationState to, ConversationState resumeState) {
+        long[] table = to == resumeState ? allowedOnResume : allowed;
+        return (table[from.ordinal()] >>> to.ordinal() & 1L) != 0;
+    }
+
+    /**
+     * Count a transition attempt on its edge
+     */
+    public void recordAttempt(ConversationState from, ConversationState to, boolean wasAccepted) {
+        int edge = from.ordinal() * STATE_COUNT + to.ordinal();
+        if (wasAccepted) {
+            accepted.incrementAndGet(edge);
+        } else {
+            rejected.incrementAndGet(edge);
+        }
+        if (registered.get(edge) == 0 && registered.compareAndSet(edge, 0, 1)) {
+            registerCounters(from, to, edge);
+        }
+    }
+
+    public int getRank(ConversationState state) {
+        return ranks.get(state);
+    }
+
+    /**
+     * Compiled table and edge counters: ranks, allowed targets per state and
+     * the attempted edges with their accepted / rejected counts
+     */
+    public Map<String, Object> export() {
+        Map<String, Object> ranksByState = new LinkedHashMap<>();
+        Map<String, List<String>> adjacency = new LinkedHashMap<>();
+        List<Map<String, Object>> edges = new ArrayList<>();
+
+        for (ConversationState from : STATES) {
+            ranksByState.put(from.name(), ranks.get(from));
+            List<String> targets = new ArrayList<>();
+            for (ConversationState to : STATES) {
+                if (isAllowed(from, to)) {
+                    targets.add(to.name());
+                }
+                int edge = from.ordinal() * STATE_COUNT + to.ordinal();
+                long acceptedCount = accepted.get(edge);
+                long rejectedCount = rejected.get(edge);
+                if (acceptedCount > 0 || rejectedCount > 0) {
+                    Map<String, Object> counts = new LinkedHashMap<>();
+                    counts.put("from", from.name());
+                    counts.put("to", to.name());
+                    counts.put("accepted", acceptedCount);
+                    counts.put("rejected", rejectedCount);
+                    edges.add(counts);
+                }
+            }
+            adjacency.put(from.name(), targets);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ranks", ranksByState);
+        result.put("allowed", adjacency);
+        result.put("edges", edges);
+        return result;
+    }
+
+    /**
+     * Allowed transitions as a Graphviz DOT or Mermaid diagram. Self loops
+     * are omitted to keep the diagram readable.
+     */
+    public String toDiagram(String format) {
+        boolean mermaid = "mermaid".equalsIgnoreCase(format);
+        StringBuilder diagram = new StringBuilder(mermaid ? "stateDiagram-v2\n" : "digraph conversation_states {\n");
+
+        for (ConversationState from : STATES) {
+            for (ConversationState to : STATES) {
+                if (from == to || !isAllowed(from, to)) {
+                    continue;
+                }
+                if (mermaid) {
+                    diagram.append("    ").append(from).append(" --> ").append(to).append('\n');
+                } else {
+                    diagram.append("    ").append(from).append(" -> ").append(to).append(";\n");
+                }
+            }
+        }
+
+        if (!mermaid) {
+            diagram.append("}\n");
+        }
+        return diagram.toString();
+    }
+
+    private boolean evaluate(StateMachineProperties properties, ConversationState from, ConversationState to,
+            boolean resume) {
+        for (Rule rule : properties.getRules()) {
+            if (matches(rule, from, to, properties.getMaxBackward(), resume)) {
+                return rule.isAllow();
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Rule rule, ConversationState from, ConversationState to, int maxBackward,
+            boolean resume) {
+        if (!rule.getFrom().isEmpty() && !rule.getFrom().contains(from)) {
+            return false;
+        }
+        if (!rule.getTo().isEmpty() && !rule.getTo().contains(to)) {
+            return false;
+        }
+        int fromRank = ranks.get(from);
+        int toRank = ranks.get(to);
+        return switch (rule.getWhen()) {
+            case ANY -> true;
+            case SELF -> from == to;
+            case FORWARD -> toRank > fromRank;
+            case BACKWARD_WITHIN -> toRank < fromRank && toRank >= fromRank - maxBackward;
+            case RESUME -> resume;
+        };
+    }
+
+    private void registerCounters(ConversationState from, ConversationState to, int edge) {
+        FunctionCounter.builder("conversation.state.transitions", accepted, counters -> counters.get(edge))
+                .description("Conversation state transition attempts per edge")
+                .tags("from", from.name(), "to", to.name(), "outcome", "accepted")
+                .register(meterRegistry);
+        FunctionCounter.builder("conversation.state.transitions", rejected, counters -> counters.get(edge))
+                .description("Conversation state transition attempts per edge")
+                .tags("from", from.name(), "to", to.name(), "outcome", "rejected")
+                .register(meterRegistry);
+    }
+}
@@ -1,13 +1,19 @@
 package com.portability.bot_service.service;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.context.ConversationContext.Errors;
 import com.portability.bot_service.model.enm.ConversationState;
 import com.portability.bot_service.model.entity.ChatConversation;
 import com.portability.bot_service.repository.ChatConversationRepository;
@@ -17,8 +23,15 @@ import com.portability.bot_service.repository.ChatConversationRepository;
  * This provides the foundation for implementing a state machine
  * to control the conversation flow.
  * 
+ * Transition rules are declared in configuration and compiled by
+ * ConversationStateMachine.
+ * 
+ * Context captured from tool responses during a chat turn is buffered per
+ * conversation (beginContextCapture / flushContextCapture), coalesced and
+ * written once per tool round. getContext overlays the pending values, so
+ * reads within the turn already see them.
+ * 
  * Future enhancements:
- * - Implement Spring State Machine or custom FSM
  * - Add transition guards and actions
  * - Implement event-driven state changes
  * - Add state persistence and recovery
@@ -28,24 +41,33 @@ public class ConversationStateService {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversationStateService.class);
 
+    // Pending context values per conversation for the current thread's turn
+    private static final ThreadLocal<Map<String, Map<String, Object>>> pendingContext = new ThreadLocal<>();
+
     private final ChatConversationRepository conversationRepository;
     private final PostgresChatMemory chatMemory;
+    private final ConversationCache conversationCache;
+    private final ConversationEventService eventService;
+    private final ConversationStateMachine stateMachine;
 
     public ConversationStateService(
             ChatConversationRepository conversationRepository,
-            PostgresChatMemory chatMemory) {
+            PostgresChatMemory chatMemory,
+            ConversationCache conversationCache,
+            ConversationEventService eventService,
+            ConversationStateMachine stateMachine) {
         this.conversationRepository = conversationRepository;
         this.chatMemory = chatMemory;
+        this.conversationCache = conversationCache;
+        this.eventService = eventService;
+        this.stateMachine = stateMachine;
     }
 
     /**
-     * Get the current state of a conversation
+     * Get the current state of a conversation (served from the conversation cache)
      */
-    @Transactional(readOnly = true)
     public ConversationState getCurrentState(String conversationId) {
-        return conversationRepository.findByConversationId(conversationId)
-                .map(ChatConversation::getCurrentState)
-                .orElse(ConversationState.INITIAL);
+        return chatMemory.getConversationState(conversationId);
     }
 
     /**
@@ -55,17 +77,15 @@ public class ConversationStateService {
     public boolean transitionTo(String conversationId, ConversationState newState) {
         logger.info("Attempting state transition for {}: -> {}", conversationId, newState);
 
-        ChatConversation conversation = conversationRepository
-                .findByConversationId(conversationId)
-                .orElseGet(() -> {
-                    ChatConversation newConv = new ChatConversation(conversationId, conversationId);
-                    return conversationRepository.save(newConv);
-                });
+        ChatConversation conversation = chatMemory.getOrCreateConversation(conversationId);
 
         ConversationState currentState = conversation.getCurrentState();
+        LocalDateTime previousEnteredAt = conversation.getStateEnteredAt();
 
-        // Validate transition
-        if (!isValidTransition(currentState, newState)) {
+        // Validate transition (an idle-swept conversation may resume its previous state)
+        boolean valid = stateMachine.isAllowed(currentState, newState, conversation.getAbandonedFromState());
+        stateMachine.recordAttempt(currentState, newState, valid);
+        if (!valid) {
             logger.warn("Invalid state transition from {} to {} for conversation {}",
                     currentState, newState, conversationId);
             return false;
@@ -74,6 +94,11 @@ public class ConversationStateService {
         // Perform transition
         conversation.updateState(newState);
         conversationRepository.save(conversation);
+        conversationCache.writeThrough(conversation);
+        if (currentState != newState) {
+            eventService.recordTransition(
+                    conversation.getId(), currentState, newState, "transition", previousEnteredAt);
+        }
 
         logger.info("State transition successful for {}: {} -> {}",
                 conversationId, currentState, newState);
@@ -82,54 +107,149 @@ public class ConversationStateService {
     }
 
     /**
-     * Store conversation context data
+     * Put a conversation swept to ABANDONED for inactivity back in the state it
+     * was in, when its user comes back. No-op for other conversations.
+     *
+     * @return true if the conversation was resumed
+     */
+    @Transactional
+    public boolean resumeAbandoned(String conversationId) {
+        ChatConversation conversation = conversationRepository.findByConversationId(conversationId).orElse(null);
+        if (conversation == null || conversation.getCurrentState() != ConversationState.ABANDONED
+                || conversation.getAbandonedFromState() == null) {
+            return false;
+        }
+        logger.info("Resuming idle conversation {} in state {}", conversationId, conversation.getAbandonedFromState());
+        return transitionTo(conversationId, conversation.getAbandonedFromState());
+    }
+
+    /**
+     * Typed conversation context (served from the conversation cache)
+     */
+    public ConversationContext getContext(String conversationId) {
+        ConversationContext stored = chatMemory.getContext(conversationId);
+        Map<String, Map<String, Object>> pending = pendingContext.get();
+        Map<String, Object> patch = pending != null ? pending.get(conversationId) : null;
+        if (patch == null || patch.isEmpty()) {
+            return stored;
+        }
+        ConversationContext overlaid = stored.withAll(patch);
+        // Revision the context will have once the patch is written
+        return overlaid.equals(stored) ? stored : overlaid.withRevision(stored.revision() + 1);
+    }
+
+    /**
+     * Apply a typed change to the conversation context
+     */
+    @Transactional
+    public void updateContext(String conversationId, UnaryOperator<ConversationContext> change) {
+        chatMemory.updateContext(conversationId, change);
+    }
+
+    /**
+     * Store conversation context data under a flat key
      */
     @Transactional
     public void storeContextData(String conversationId, String key, Object value) {
-        chatMemory.addContextData(conversationId, key, value);
+        updateContext(conversationId, context -> context.with(key, value));
     }
 
     /**
-     * Retrieve conversation context data
+     * Retrieve conversation context data by flat key
      */
-    @Transactional(readOnly = true)
     public Object getContextData(String conversationId, String key) {
-        return chatMemory.getContextData(conversationId, key);
+        return getContext(conversationId).get(key);
     }
 
     /**
-     * Store multiple context values at once
+     * Store multiple context values at once (single write)
      */
     @Transactional
     public void storeContextData(String conversationId, Map<String, Object> contextData) {
-        contextData.forEach((key, value) -> chatMemory.addContextData(conversationId, key, value));
+        updateContext(conversationId, context -> context.withAll(contextData));
     }
 
     /**
-     * Get all context data for a conversation
+     * Start buffering captured context values on the current thread until
+     * endContextCapture
+     */
+    public void beginContextCapture() {
+        pendingContext.set(new LinkedHashMap<>());
+    }
+
+    /**
+     * Queue context values captured from a tool response. Later values for
+     * the same key replace earlier ones. Without an active capture the values
+     * are written immediately.
+     */
+    public void captureContextData(String conversationId, Map<String, Object> contextData) {
+        Map<String, Map<String, Object>> pending = pendingContext.get();
+        if (pending == null) {
+            storeContextData(conversationId, contextData);
+            return;
+        }
+        pending.computeIfAbsent(conversationId, id -> new LinkedHashMap<>()).putAll(contextData);
+    }
+
+    /**
+     * Write the queued context values, one context update per conversation.
+     * The capture stays active for the rest of the turn.
+     */
+    public void flushContextCapture() {
+        Map<String, Map<String, Object>> pending = pendingContext.get();
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : pending.entrySet()) {
+            Map<String, Object> patch = entry.getValue();
+            try {
+                chatMemory.updateContext(entry.getKey(), context -> context.withAll(patch));
+                logger.debug("Wrote {} captured context values for conversation {}", patch.size(), entry.getKey());
+            } catch (Exception e) {
+                logger.error("Failed to write captured context for conversation {}", entry.getKey(), e);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Write any queued context values and stop buffering
+     */
+    public void endContextCapture() {
+        try {
+            flushContextCapture();
+        } finally {
+            pendingContext.remove();
+        }
+    }
+
+    /**
+     * Get all context data for a conversation as a flat map with the
+     * historical keys
      */
-    @Transactional(readOnly = true)
     public Map<String, Object> getAllContextData(String conversationId) {
-        return conversationRepository.findByConversationId(conversationId)
-                .map(ChatConversation::getContextData)
-                .orElse(new HashMap<>());
+        return getContext(conversationId).toFlatMap();
     }
 
     /**
-     * Reset conversation to initial state
+     * Reset conversation to initial state: messages removed, context emptied
+     * and the conversation active again, as set-based statements.
      */
     @Transactional
     public void resetConversation(String conversationId) {
-        logger.info("Resetting conversation: {}", conversationId);
-
-        conversationRepository.findByConversationId(conversationId)
-                .ifPresent(conversation -> {
-                    conversation.updateState(ConversationState.INITIAL);
-                    conversation.setContextData(new HashMap<>());
-                    conversationRepository.save(conversation);
-                });
+        chatMemory.reset(conversationId);
+    }
 
-        chatMemory.clear(conversationId);
+    /**
+     * Clear several conversations in one batched call (messages removed,
+     * conversations marked ABANDONED and inactive)
+     *
+     * @return number of conversations cleared
+     */
+    @Transactional
+    public int clearConversations(List<String> conversationIds) {
+        logger.info("Clearing {} conversations", conversationIds.size());
+        return chatMemory.clear(conversationIds);
     }
 
     /**
@@ -140,21 +260,10 @@ public class ConversationStateService {
     public void clearErrorContext(String conversationId) {
         logger.info("Clearing error context for conversation: {}", conversationId);
         
-        // Get current context data
-        Map<String, Object> contextData = getAllContextData(conversationId);
-        
-        // Remove error-related keys
-        contextData.remove("last_error");
-        contextData.remove("error_timestamp");
-        contextData.remove("failed_tool");
-        contextData.remove("error_count");
-        
-        // Update context
-        conversationRepository.findByConversationId(conversationId)
-                .ifPresent(conversation -> {
-                    conversation.setContextData(contextData);
-                    conversationRepository.save(conversation);
-                });
+        // Drop the errors section
+        if (conversationRepository.existsByConversationId(conversationId)) {
+            chatMemory.updateContext(conversationId, "error_cleared", context -> context.withErrors(null));
+        }
         
         logger.info("Error context cleared for conversation: {}", conversationId);
     }
@@ -167,30 +276,24 @@ public class ConversationStateService {
         logger.info("Recording error for conversation {}: tool={}, message={}", 
                 conversationId, toolName, errorMessage);
         
-        Map<String, Object> errorContext = new HashMap<>();
-        errorContext.put("last_error", errorMessage);
-        errorContext.put("error_timestamp", System.currentTimeMillis());
-        errorContext.put("failed_tool", toolName);
-        
-        // Increment error count
-        Object errorCountObj = getContextData(conversationId, "error_count");
-        int errorCount = errorCountObj != null ? (int) errorCountObj + 1 : 1;
-        errorContext.put("error_count", errorCount);
-        
-        storeContextData(conversationId, errorContext);
+        // Replace the last error and increment the error count
+        long timestamp = System.currentTimeMillis();
+        ChatConversation conversation = chatMemory.updateContext(conversationId, "error", context -> context.withErrors(
+                Errors.next(context.errors(), toolName, errorMessage, timestamp)));
+        eventService.recordError(conversation.getId(), toolName, errorMessage,
+                conversation.getContextData().errors().count());
     }
 
     /**
      * Check if conversation is in error state and user is attempting retry
      * This helps detect retry intentions to clear error context
      */
-    @Transactional(readOnly = true)
     public boolean isRetryAttempt(String conversationId) {
         ConversationState currentState = getCurrentState(conversationId);
-        Object lastError = getContextData(conversationId, "last_error");
+        Errors errors = getContext(conversationId).errors();
         
         // If there's an error recorded and we're in error state
-        return currentState == ConversationState.ERROR_STATE && lastError != null;
+        return currentState == ConversationState.ERROR_STATE && errors != null && errors.lastError() != null;
     }
 
     /**
@@ -220,86 +323,17 @@ public class ConversationStateService {
     }
 
     /**
-     * Validates if a state transition is allowed.
-     * Uses a progressive ordinal-based approach to allow forward movement in the conversation flow.
-     * This is more flexible than strict transitions and matches the dynamic nature of chatbot conversations.
+     * Validates if a state transition is allowed, using the transition table
+     * compiled from conversation.state-machine (see ConversationStateMachine).
      */
     public boolean isValidTransition(ConversationState from, ConversationState to) {
-        // Allow any transition from ERROR_STATE or INITIAL (for recovery and restart)
-        if (from == ConversationState.ERROR_STATE || from == ConversationState.INITIAL) {
-            return true;
-        }
-
-        // Allow backward transitions to ERROR_STATE or BLOCKED
-        if (to == ConversationState.ERROR_STATE || to == ConversationState.BLOCKED) {
-            return true;
-        }
-
-        // Allow staying in the same state (for retries)
-        if (from == to) {
-            return true;
-        }
-
-        // Define state progression order (lower ordinal = earlier in flow)
-        int fromOrdinal = getStateOrdinal(from);
-        int toOrdinal = getStateOrdinal(to);
-        
-        // Special cases first
-        if (from == ConversationState.COMPLETED || from == ConversationState.ABANDONED) {
-            // Can restart from these states
-            return to == ConversationState.INITIAL || to == ConversationState.INTENT_SELECTION;
-        }
-        
-        if (from == ConversationState.BLOCKED) {
-            // Can reactivate from blocked
-            return to == ConversationState.INITIAL || to == ConversationState.INTENT_SELECTION;
-        }
-        
-        // Allow forward progression (can skip states)
-        // Example: INTENT_SELECTION (10) -> PAYMENT_PENDING (50) is valid
-        if (toOrdinal > fromOrdinal) {
-            return true;
-        }
-        
-        // Allow some backward movements for natural conversation flow
-        // Example: Going back from PAYMENT_PENDING to ADDRESS_REQUIRED to fix address
-        if (toOrdinal >= fromOrdinal - 20) { // Allow going back up to 2 major steps
-            return true;
-        }
-        
-        return false;
-    }
-    
-    /**
-     * Returns an ordinal value for each state to determine progression order.
-     * Lower values are earlier in the conversation flow.
-     */
-    private int getStateOrdinal(ConversationState state) {
-        return switch (state) {
-            case INITIAL -> 0;
-            case CUSTOMER_REGISTRATION -> 5;
-            case INTENT_SELECTION -> 10;
-            case PRODUCT_SELECTED -> 20;
-            case IMEI_REQUIRED -> 30;
-            case IMEI_VALIDATED -> 35;
-            case ADDRESS_REQUIRED -> 40;
-            case PAYMENT_PENDING -> 50;
-            case PAYMENT_CONFIRMED -> 60;
-            case SIM_SHIPPED -> 70;
-            case PORTABILITY_WAIT_SIM -> 80;
-            case PORTABILITY_NIP_REQUIRED -> 85;
-            case PORTABILITY_SIM_ACTIVATION -> 90;
-            case PORTABILITY_IN_PROGRESS -> 95;
-            case PORTABILITY_COMPLETED -> 100;
-            case COMPLETED -> 110;
-            case BLOCKED -> 900;
-            case ERROR_STATE -> 950;
-            case ABANDONED -> 999;
-        };
+        return stateMachine.isAllowed(from, to);
     }
 
     /**
-     * Get conversation statistics
+     * Get conversation statistics.
+     * Reads the counters maintained by PostgresChatMemory, so the messages
+     * collection is never initialized.
      */
     @Transactional(readOnly = true)
     public Map<String, Object> getConversationStats(String conversationId) {
@@ -312,7 +346,12 @@ public class ConversationStateService {
                     stats.put("createdAt", conversation.getCreatedAt());
                     stats.put("updatedAt", conversation.getUpdatedAt());
                     stats.put("isActive", conversation.getIsActive());
-                    stats.put("messageCount", conversation.getMessages().size());
+                    stats.put("messageCount", conversation.getMessageCount());
+                    stats.put("userMessageCount", conversation.getUserMessageCount());
+                    stats.put("assistantMessageCount", conversation.getAssistantMessageCount());
+                    stats.put("toolMessageCount", conversation.getToolMessageCount());
+                    stats.put("totalCharacters", conversation.getTotalCharacters());
+                    stats.put("lastMessageAt", conversation.getLastMessageAt());
                 });
 
         return stats;
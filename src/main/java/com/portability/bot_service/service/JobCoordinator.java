@@ -0,0 +1,186 @@
+package com.portability.bot_service.service;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.portability.bot_service.config.JobProperties;
+
+/**
+ * Cluster-wide coordination of scheduled jobs, so every replica can keep the
+ * same @Scheduled methods while each unit of work runs once.
+ *
+ * - A job is split into shards (jobs.shards, default 1). A node runs a shard
+ *   only while holding the Postgres session advisory lock (job, shard) on a
+ *   dedicated connection; the lock is released with the connection if the
+ *   node dies
+ * - Under the lock, a shard that succeeded within min-interval is skipped,
+ *   so replicas firing the same cron run it once
+ * - Each node walks the shards from a random offset, so replicas spread over
+ *   the shards instead of queueing on the same lock
+ * - Every run is recorded in job_runs (node, shard, status, duration,
+ *   details returned by the job); RUNNING rows left by a dead node are marked
+ *   ABANDONED by the next node taking the lock
+ */
+@Service
+public class JobCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobCoordinator.class);
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    /**
+     * Work of one shard: items with hash(key) mod shardCount == shard.
+     * Returns details recorded with the run.
+     */
+    @FunctionalInterface
+    public interface ShardedJob {
+        Map<String, Object> run(int shard, int shardCount) throws Exception;
+    }
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final JobProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final String node = ManagementFactory.getRuntimeMXBean().getName();
+
+    public JobCoordinator(DataSource dataSource, JdbcTemplate jdbcTemplate, JobProperties properties) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * Run an unsharded job on one node of the cluster, unless it succeeded
+     * within min-interval
+     *
+     * @return whether this node ran it
+     */
+    public boolean runExclusive(String jobName, ShardedJob job) {
+        return runExclusive(jobName, properties.getMinInterval(), job);
+    }
+
+    /**
+     * Same with an explicit minimum interval; Duration.ZERO runs it whenever
+     * no other node is running it (e.g. startup tasks after a deploy)
+     */
+    public boolean runExclusive(String jobName, Duration minInterval, ShardedJob job) {
+        return runShard(jobName, 0, 1, minInterval, job);
+    }
+
+    /**
+     * Run the shards of a job this node can claim
+     *
+     * @return number of shards run by this node
+     */
+    public int runSharded(String jobName, ShardedJob job) {
+        int shardCount = properties.shardsFor(jobName);
+        int offset = ThreadLocalRandom.current().nextInt(shardCount);
+        int ran = 0;
+        for (int i = 0; i < shardCount; i++) {
+            if (runShard(jobName, (offset + i) % shardCount, shardCount, properties.getMinInterval(), job)) {
+                ran++;
+            }
+        }
+        return ran;
+    }
+
+    /**
+     * Latest runs of a job, newest first
+     */
+    public List<Map<String, Object>> getRecentRuns(String jobName, int limit) {
+        return jdbcTemplate.queryForList("""
+                SELECT id, shard, shard_count, node, status, started_at, finished_at, details::text AS details, error
+                FROM job_runs
+                WHERE job_name = ?
+                ORDER BY started_at DESC
+                LIMIT ?
+                """, jobName, limit);
+    }
+
+    private boolean runShard(String jobName, int shard, int shardCount, Duration minInterval, ShardedJob job) {
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!advisoryLock(lockConnection, "pg_try_advisory_lock", jobName, shard)) {
+                logger.debug("Job {} shard {}/{} is running on another node", jobName, shard, shardCount);
+                return false;
+            }
+            try {
+                return runLocked(jobName, shard, shardCount, minInterval, job);
+            } finally {
+                advisoryLock(lockConnection, "pg_advisory_unlock", jobName, shard);
+            }
+        } catch (SQLException e) {
+            logger.error("Job {} shard {}/{}: advisory lock failed", jobName, shard, shardCount, e);
+            return false;
+        }
+    }
+
+    private boolean runLocked(String jobName, int shard, int shardCount, Duration minInterval, ShardedJob job) {
+        // Holding the lock: RUNNING rows of this shard belong to dead nodes
+        jdbcTemplate.update("""
+                UPDATE job_runs SET status = 'ABANDONED', finished_at = CURRENT_TIMESTAMP
+                WHERE job_name = ? AND shard = ? AND status = 'RUNNING'
+                """, jobName, shard);
+
+        if (!minInterval.isZero()) {
+            Integer recent = jdbcTemplate.queryForObject("""
+                    SELECT COUNT(*) FROM job_runs
+                    WHERE job_name = ? AND shard = ? AND shard_count = ? AND status = 'SUCCEEDED'
+                      AND started_at > CURRENT_TIMESTAMP - make_interval(secs => ?)
+                    """, Integer.class, jobName, shard, shardCount, (double) minInterval.toSeconds());
+            if (recent != null && recent > 0) {
+                logger.debug("Job {} shard {}/{} already ran within {}", jobName, shard, shardCount, minInterval);
+                return false;
+            }
+        }
+
+        Long runId = jdbcTemplate.queryForObject("""
+                INSERT INTO job_runs (job_name, shard, shard_count, node, status)
+                VALUES (?, ?, ?, ?, 'RUNNING')
+                RETURNING id
+                """, Long.class, jobName, shard, shardCount, node);
+
+        try {
+            Map<String, Object> details = job.run(shard, shardCount);
+            jdbcTemplate.update("""
+                    UPDATE job_runs SET status = 'SUCCEEDED', finished_at = CURRENT_TIMESTAMP,
+                        details = CAST(? AS jsonb)
+                    WHERE id = ?
+                    """, details != null ? objectMapper.writeValueAsString(details) : null, runId);
+        } catch (Exception e) {
+            logger.error("Job {} shard {}/{} failed", jobName, shard, shardCount, e);
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update("""
+                    UPDATE job_runs SET status = 'FAILED', finished_at = CURRENT_TIMESTAMP, error = ?
+                    WHERE id = ?
+                    """, error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error, runId);
+        }
+        return true;
+    }
+
+    private boolean advisoryLock(Connection connection, String function, String jobName, int shard)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + function + "(hashtext(?), ?)")) {
+            statement.setString(1, jobName);
+            statement.setInt(2, shard);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.portability.bot_service.service;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.portability.bot_service.config.MessageRetentionProperties;
+import com.portability.bot_service.config.MessageRetentionProperties.Rule;
+import com.portability.bot_service.model.enm.MessageType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Retention purge of chat_messages, whose bodies often hold what the user
+ * typed (NIP, IMEI, address) and are otherwise kept until the partition
+ * archive.
+ *
+ * - Monthly partitions entirely past the default retention are removed whole
+ *   through ChatMessagePartitionService (archived first unless mode is drop)
+ * - Every rule (and the default retention) then deletes its expired messages
+ *   in batches of batch-size rows, each statement committed on its own, with
+ *   pause-ms between batches so the purge never holds long locks. Batches walk
+ *   the messages in (created_at, id) order from a cursor, one message type at
+ *   a time, so messages kept by a state rule are scanned once per run
+ * - The same statement decrements the message counters of the conversations
+ *   it deleted from; their cached message windows are invalidated
+ * - Messages are matched to their conversation (state rules, counters) through
+ *   conversation_ref, or through conversation_id while the conversation_ref
+ *   backfill is incomplete (ConversationRefMigrationService)
+ * - Deleted rows per rule and method (partition / batch) and run durations
+ *   are exported as metrics
+ */
+@Service
+public class MessageRetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageRetentionService.class);
+
+    private static final String DEFAULT_RULE = "default";
+
+    // Cursor before any message
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatMessagePartitionService partitionService;
+    private final ConversationCache conversationCache;
+    private final MessageRetentionProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final JobCoordinator jobCoordinator;
+    private final ConversationRefMigrationService refMigrationService;
+    private final Timer runTimer;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public MessageRetentionService(
+            JdbcTemplate jdbcTemplate,
+            ChatMessagePartitionService partitionService,
+            ConversationCache conversationCache,
+            MessageRetentionProperties properties,
+            MeterRegistry meterRegistry,
+            JobCoordinator jobCoordinator,
+            ConversationRefMigrationService refMigrationService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionService = partitionService;
+        this.conversationCache = conversationCache;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.jobCoordinator = jobCoordinator;
+        this.refMigrationService = refMigrationService;
+        this.runTimer = Timer.builder("chat.messages.retention.duration")
+                .description("Duration of the chat message retention purge runs")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Scheduled message retention purge. Runs daily at 5:00 AM, on one node
+     * of the cluster
+     */
+    @Scheduled(cron = "${chat.messages.retention.cron:0 0 5 * * *}")
+    public void scheduledPurge() {
+        if (properties.isEnabled()) {
+            jobCoordinator.runExclusive("chat-message-retention",
+                    (shard, shardCount) -> new LinkedHashMap<>(purgeExpiredMessages()));
+        }
+    }
+
+    /**
+     * Delete the messages past retention. A run already in progress makes
+     * this a no-op.
+     *
+     * @return deleted messages per rule
+     */
+    public Map<String, Long> purgeExpiredMessages() {
+        Map<String, Long> deleted = new LinkedHashMap<>();
+        if (!running.compareAndSet(false, true)) {
+            logger.debug("Message retention purge already running");
+            return deleted;
+        }
+
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            Integer defaultDays = properties.getDefaultRetentionDays();
+            if (defaultDays != null && !partitionService.listPartitionMonths().isEmpty()) {
+                long removed = partitionService.removePartitionsBefore(YearMonth.from(now.minusDays(defaultDays)));
+                deletedCounter(DEFAULT_RULE, "partition").increment(removed);
+                deleted.put(DEFAULT_RULE + " (partitions)", removed);
+            }
+
+            for (Map.Entry<String, Rule> rule : effectiveRules().entrySet()) {
+                long count = purge(rule.getKey(), rule.getValue(), now.minusDays(rule.getValue().getRetentionDays()));
+                deleted.merge(rule.getKey(), count, Long::sum);
+            }
+
+            logger.info("Message retention purge finished in {} ms: {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), deleted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Message retention purge interrupted, deleted so far: {}", deleted);
+        } catch (Exception e) {
+            logger.error("Message retention purge failed, deleted so far: {}", deleted, e);
+        } finally {
+            runTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            running.set(false);
+        }
+        return deleted;
+    }
+
+    // Configured rules by label, followed by the default retention as a catch-all rule
+    private Map<String, Rule> effectiveRules() {
+        Map<String, Rule> rules = new LinkedHashMap<>();
+        for (Rule rule : properties.getRules()) {
+            rules.put(label(rule), rule);
+        }
+        if (properties.getDefaultRetentionDays() != null) {
+            Rule all = new Rule();
+            all.setRetentionDays(properties.getDefaultRetentionDays());
+            rules.put(DEFAULT_RULE, all);
+        }
+        return rules;
+    }
+
+    private record Batch(int selected, int deleted, LocalDateTime lastCreatedAt, long lastId,
+            List<String> conversationIds) {
+    }
+
+    // One keyset walk per message type of the rule (all types when it lists none)
+    private long purge(String label, Rule rule, LocalDateTime cutoff) throws InterruptedException {
+        String statement = deleteStatement(rule, refMigrationService.isBackfillComplete());
+        Counter counter = deletedCounter(label, "batch");
+        List<MessageType> types = rule.getTypes().isEmpty()
+                ? Collections.singletonList(null)
+                : rule.getTypes();
+
+        long total = 0;
+        for (MessageType type : types) {
+            LocalDateTime lastCreatedAt = CURSOR_START;
+            long lastId = 0;
+            while (true) {
+                List<Object> params = new ArrayList<>();
+                params.add(cutoff);
+                params.add(lastCreatedAt);
+                params.add(lastCreatedAt);
+                params.add(lastId);
+                if (type != null) {
+                    params.add(type.name());
+                }
+                rule.getStates().forEach(state -> params.add(state.name()));
+                params.add(properties.getBatchSize());
+
+                Batch batch = jdbcTemplate.queryForObject(statement, (rs, rowNum) -> new Batch(
+                        rs.getInt("selected"),
+                        rs.getInt("deleted"),
+                        toLocalDateTime(rs.getTimestamp("last_created_at")),
+                        rs.getLong("last_id"),
+                        toList(rs.getArray("conversation_ids"))), params.toArray());
+
+                total += batch.deleted();
+                counter.increment(batch.deleted());
+                if (!batch.conversationIds().isEmpty()) {
+                    conversationCache.invalidate(batch.conversationIds());
+                }
+                if (batch.selected() < properties.getBatchSize()) {
+                    break;
+                }
+                lastCreatedAt = batch.lastCreatedAt();
+                lastId = batch.lastId();
+                Thread.sleep(properties.getPauseMs());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * One batch of a rule, for one message type: deletes the next batch-size
+     * expired messages after the (created_at, id) cursor, located through the
+     * (message_type, created_at) or (created_at, id) index and the partitions
+     * before the cutoff, and decrements the counters of their conversations.
+     * Returns the number of messages selected and deleted, the new cursor and
+     * the conversations that lost messages.
+     *
+     * Messages are matched to their conversation through conversation_ref
+     * when byRef, through conversation_id otherwise (backfill incomplete).
+     *
+     * Parameters: cutoff, cursor created_at (twice), cursor id, the message
+     * type when the rule lists types, the rule states, limit.
+     */
+    private static String deleteStatement(Rule rule, boolean byRef) {
+        String messageKey = byRef ? "conversation_ref" : "conversation_id";
+        String conversationKey = byRef ? "id" : "conversation_id";
+
+        StringBuilder batch = new StringBuilder("SELECT m.id, m.created_at FROM chat_messages m");
+        if (!rule.getStates().isEmpty()) {
+            batch.append(" JOIN chat_conversations c ON c.").append(conversationKey)
+                    .append(" = m.").append(messageKey);
+        }
+        batch.append(" WHERE m.created_at < ?")
+                .append(" AND m.created_at >= ? AND (m.created_at > ? OR m.id > ?)");
+        if (!rule.getTypes().isEmpty()) {
+            batch.append(" AND m.message_type = ?");
+        }
+        if (!rule.getStates().isEmpty()) {
+            batch.append(" AND c.current_state IN (").append(placeholders(rule.getStates().size())).append(")");
+        }
+        batch.append(" ORDER BY m.created_at, m.id LIMIT ?");
+
+        return "WITH batch AS (" + batch + "),"
+                + " deleted AS ("
+                + " DELETE FROM chat_messages m USING batch"
+                + " WHERE m.id = batch.id AND m.created_at = batch.created_at"
+                + " RETURNING m." + messageKey + " AS conversation_key, m.message_type, m.content),"
+                + " removed AS ("
+                + " SELECT conversation_key, COUNT(*) AS total,"
+                + " COUNT(*) FILTER (WHERE message_type = 'USER') AS user_count,"
+                + " COUNT(*) FILTER (WHERE message_type = 'ASSISTANT') AS assistant_count,"
+                + " COUNT(*) FILTER (WHERE message_type = 'TOOL') AS tool_count,"
+                + " COALESCE(SUM(LENGTH(content)), 0) AS characters"
+                + " FROM deleted WHERE conversation_key IS NOT NULL GROUP BY conversation_key),"
+                + " adjusted AS ("
+                + " UPDATE chat_conversations c SET"
+                + " message_count = GREATEST(c.message_count - removed.total, 0),"
+                + " user_message_count = GREATEST(c.user_message_count - removed.user_count, 0),"
+                + " assistant_message_count = GREATEST(c.assistant_message_count - removed.assistant_count, 0),"
+                + " tool_message_count = GREATEST(c.tool_message_count - removed.tool_count, 0),"
+                + " total_characters = GREATEST(c.total_characters - removed.characters, 0)"
+                + " FROM removed WHERE c." + conversationKey + " = removed.conversation_key"
+                + " RETURNING c.conversation_id)"
+                + " SELECT (SELECT COUNT(*) FROM batch) AS selected,"
+                + " (SELECT COUNT(*) FROM deleted) AS deleted,"
+                + " last.created_at AS last_created_at, last.id AS last_id,"
+                + " (SELECT array_agg(conversation_id) FROM adjusted) AS conversation_ids"
+                + " FROM (SELECT 1) one LEFT JOIN LATERAL ("
+                + " SELECT created_at, id FROM batch ORDER BY created_at DESC, id DESC LIMIT 1) last ON true";
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private static List<String> toList(Array array) throws SQLException {
+        if (array == null) {
+            return List.of();
+        }
+        return List.of((String[]) array.getArray());
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static String label(Rule rule) {
+        String types = rule.getTypes().isEmpty() ? "ALL"
+                : rule.getTypes().stream().map(Enum::name).collect(Collectors.joining(","));
+        String states = rule.getStates().isEmpty() ? "ALL"
+                : rule.getStates().stream().map(Enum::name).collect(Collectors.joining(","));
+        return types + "/" + states + "/" + rule.getRetentionDays() + "d";
+    }
+
+    private Counter deletedCounter(String rule, String method) {
+        return Counter.builder("chat.messages.retention.deleted")
+                .description("Chat messages deleted by the retention purge")
+                .tag("rule", rule)
+                .tag("method", method)
+                .register(meterRegistry);
+    }
+}
@@ -1,6 +1,9 @@
 package com.portability.bot_service.service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -10,15 +13,19 @@ import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.portability.bot_service.model.context.ConversationContext;
 import com.portability.bot_service.model.enm.ConversationState;
 import com.portability.bot_service.model.enm.MessageType;
 import com.portability.bot_service.model.entity.ChatConversation;
 import com.portability.bot_service.model.entity.ChatMessage;
 import com.portability.bot_service.repository.ChatConversationRepository;
 import com.portability.bot_service.repository.ChatMessageRepository;
+import com.portability.bot_service.service.ConversationCache.CachedConversation;
+import com.portability.bot_service.service.ConversationCache.CachedMessage;
 
 /**
  * PostgreSQL-based implementation of ChatMemory for persistent conversation storage.
@@ -29,15 +36,31 @@ public class PostgresChatMemory implements ChatMemory {
 
     private static final Logger logger = LoggerFactory.getLogger(PostgresChatMemory.class);
     private static final int MAX_MESSAGES_TO_LOAD = 50; // Limit messages for context window
+    private static final int BULK_CHUNK_SIZE = 1000; // Conversation ids per bulk statement
 
     private final ChatConversationRepository conversationRepository;
     private final ChatMessageRepository messageRepository;
+    private final ChatMessagePartitionService partitionService;
+    private final ConversationRefMigrationService refMigrationService;
+    private final ConversationCache conversationCache;
+    private final ConversationEventService eventService;
+    private final BlindIndexService blindIndexService;
 
     public PostgresChatMemory(
             ChatConversationRepository conversationRepository,
-            ChatMessageRepository messageRepository) {
+            ChatMessageRepository messageRepository,
+            ChatMessagePartitionService partitionService,
+            ConversationRefMigrationService refMigrationService,
+            ConversationCache conversationCache,
+            ConversationEventService eventService,
+            BlindIndexService blindIndexService) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
+        this.partitionService = partitionService;
+        this.refMigrationService = refMigrationService;
+        this.conversationCache = conversationCache;
+        this.eventService = eventService;
+        this.blindIndexService = blindIndexService;
     }
 
     @Override
@@ -46,24 +69,46 @@ public class PostgresChatMemory implements ChatMemory {
         logger.debug("Adding {} messages to conversation: {}", messages.size(), conversationId);
 
         // Get or create conversation
-        ChatConversation conversation = conversationRepository
-                .findByConversationId(conversationId)
-                .orElseGet(() -> {
-                    logger.info("Creating new conversation: {}", conversationId);
-                    ChatConversation newConv = new ChatConversation(conversationId, conversationId);
-                    return conversationRepository.save(newConv);
-                });
-
-        // Get current message count for ordering
-        Integer maxOrder = messageRepository.findMaxMessageOrderByConversationId(conversationId);
-        int currentOrder = (maxOrder != null) ? maxOrder + 1 : 0;
-
-        // Save each message
+        ChatConversation conversation = getOrCreateConversation(conversationId);
+
+        // Tally the conversation counters first: the atomic increment hands
+        // out the range of message orders, so concurrent adds to the same
+        // conversation never reuse an order (the row lock serializes them)
+        int userCount = 0;
+        int assistantCount = 0;
+        int toolCount = 0;
+        long characters = 0;
+        List<MessageType> messageTypes = new ArrayList<>(messages.size());
         for (Message message : messages) {
             MessageType messageType = determineMessageType(message);
+            messageTypes.add(messageType);
+            switch (messageType) {
+                case USER -> userCount++;
+                case ASSISTANT -> assistantCount++;
+                case TOOL -> toolCount++;
+                default -> { }
+            }
+            characters += message.getText() != null ? message.getText().length() : 0;
+        }
+
+        // Update counters and conversation timestamp in a single statement
+        int currentOrder = conversationRepository.incrementMessageCounters(
+                conversation.getId(),
+                messages.size(),
+                userCount,
+                assistantCount,
+                toolCount,
+                characters,
+                LocalDateTime.now());
+
+        // Save each message in the reserved order range
+        List<CachedMessage> cachedMessages = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
             ChatMessage chatMessage = new ChatMessage(
                     conversationId,
-                    messageType,
+                    conversation.getId(),
+                    messageTypes.get(i),
                     message.getText(),
                     currentOrder++
             );
@@ -74,25 +119,41 @@ public class PostgresChatMemory implements ChatMemory {
             }
 
             messageRepository.save(chatMessage);
+            cachedMessages.add(new CachedMessage(
+                    chatMessage.getMessageOrder(), messageTypes.get(i), chatMessage.getContent()));
         }
 
-        // Update conversation timestamp
-        conversation.setUpdatedAt(java.time.LocalDateTime.now());
-        conversationRepository.save(conversation);
+        // Write through to the cached message window
+        conversationCache.update(conversationId,
+                cached -> cached.withAppendedMessages(cachedMessages, MAX_MESSAGES_TO_LOAD));
 
         logger.debug("Successfully added messages to conversation: {}", conversationId);
     }
 
+    /**
+     * Returns the recent message window (at most MAX_MESSAGES_TO_LOAD messages
+     * from the hot partitions), served from the conversation cache when the
+     * conversation is hot.
+     */
     @Override
-    @Transactional(readOnly = true)
     public List<Message> get(String conversationId) {
-        logger.debug("Retrieving all messages from conversation: {}", conversationId);
+        logger.debug("Retrieving recent messages from conversation: {}", conversationId);
+
+        CachedConversation cached = getCachedConversation(conversationId);
+        if (cached == null) {
+            return List.of();
+        }
 
-        // Get all messages ordered by message order
-        List<ChatMessage> chatMessages = messageRepository.findByConversationIdOrderByMessageOrderAsc(conversationId);
+        List<CachedMessage> window = cached.recentMessages();
+        if (window == null) {
+            window = loadRecentMessages(conversationId, cached.id());
+            List<CachedMessage> loaded = window;
+            conversationCache.update(conversationId,
+                    current -> current.recentMessages() == null ? current.withRecentMessages(loaded) : current);
+        }
 
         // Convert to Spring AI Message objects
-        List<Message> messages = chatMessages.stream()
+        List<Message> messages = window.stream()
                 .map(this::convertToMessage)
                 .collect(Collectors.toList());
 
@@ -105,18 +166,50 @@ public class PostgresChatMemory implements ChatMemory {
     public void clear(String conversationId) {
         logger.info("Clearing conversation: {}", conversationId);
 
-        messageRepository.deleteByConversationId(conversationId);
-
-        conversationRepository.findByConversationId(conversationId)
-                .ifPresent(conversation -> {
-                    conversation.setIsActive(false);
-                    conversation.setCurrentState(ConversationState.ABANDONED);
-                    conversationRepository.save(conversation);
-                });
+        clear(List.of(conversationId));
 
         logger.info("Successfully cleared conversation: {}", conversationId);
     }
 
+    /**
+     * Clear several conversations with set-based statements: one bulk delete of
+     * their messages and one update marking them ABANDONED and inactive per
+     * chunk of ids.
+     *
+     * @return number of conversations updated
+     */
+    @Transactional
+    public int clear(List<String> conversationIds) {
+        conversationCache.invalidate(conversationIds);
+
+        int updated = 0;
+        for (int from = 0; from < conversationIds.size(); from += BULK_CHUNK_SIZE) {
+            List<String> chunk = conversationIds.subList(from, Math.min(from + BULK_CHUNK_SIZE, conversationIds.size()));
+            int deleted = deleteMessages(chunk);
+            List<Object[]> previousStates = conversationRepository.bulkResetConversations(
+                    chunk, ConversationState.ABANDONED.name(), false, false);
+            eventService.recordTransitions(previousStates, ConversationState.ABANDONED, "clear");
+            updated += previousStates.size();
+            logger.debug("Cleared {} messages from {} conversations", deleted, chunk.size());
+        }
+        return updated;
+    }
+
+    /**
+     * Reset a conversation to INITIAL with an empty context and no messages,
+     * using one bulk delete and one update.
+     */
+    @Transactional
+    public void reset(String conversationId) {
+        logger.info("Resetting conversation: {}", conversationId);
+
+        conversationCache.invalidate(conversationId);
+        deleteMessages(List.of(conversationId));
+        List<Object[]> previousStates = conversationRepository.bulkResetConversations(
+                List.of(conversationId), ConversationState.INITIAL.name(), true, true);
+        eventService.recordTransitions(previousStates, ConversationState.INITIAL, "reset");
+    }
+
     // Additional methods for state management
 
     @Transactional
@@ -128,41 +221,117 @@ public class PostgresChatMemory implements ChatMemory {
                 .orElseThrow(() -> new IllegalArgumentException(
                         "Conversation not found: " + conversationId));
 
+        ConversationState previousState = conversation.getCurrentState();
+        LocalDateTime previousEnteredAt = conversation.getStateEnteredAt();
         conversation.updateState(state);
         conversationRepository.save(conversation);
+        conversationCache.writeThrough(conversation);
+        if (previousState != state) {
+            eventService.recordTransition(conversation.getId(), previousState, state, "memory", previousEnteredAt);
+        }
+    }
+
+    /**
+     * Load a conversation, creating it in INITIAL (and recording its creation
+     * in the event log) if it does not exist yet
+     */
+    @Transactional
+    public ChatConversation getOrCreateConversation(String conversationId) {
+        return conversationRepository
+                .findByConversationId(conversationId)
+                .orElseGet(() -> {
+                    logger.info("Creating new conversation: {}", conversationId);
+                    ChatConversation newConv = conversationRepository.save(
+                            new ChatConversation(conversationId, conversationId));
+                    eventService.recordCreated(newConv.getId());
+                    return newConv;
+                });
     }
 
-    @Transactional(readOnly = true)
     public ConversationState getConversationState(String conversationId) {
-        return conversationRepository.findByConversationId(conversationId)
-                .map(ChatConversation::getCurrentState)
-                .orElse(ConversationState.INITIAL);
+        CachedConversation cached = getCachedConversation(conversationId);
+        return cached != null ? cached.state() : ConversationState.INITIAL;
     }
 
     @Transactional
-    public void addContextData(String conversationId, String key, Object value) {
-        logger.debug("Adding context data to conversation {}: {} = {}", conversationId, key, value);
+    public ChatConversation updateContext(String conversationId, UnaryOperator<ConversationContext> change) {
+        return updateContext(conversationId, "context", change);
+    }
 
-        ChatConversation conversation = conversationRepository
-                .findByConversationId(conversationId)
-                .orElseGet(() -> {
-                    ChatConversation newConv = new ChatConversation(conversationId, conversationId);
-                    return conversationRepository.save(newConv);
-                });
+    /**
+     * Apply a change to the conversation context (creating the conversation if
+     * needed), write it through to the cache and record the changed fields in
+     * the event log under the given source.
+     */
+    @Transactional
+    public ChatConversation updateContext(String conversationId, String source,
+            UnaryOperator<ConversationContext> change) {
+        logger.debug("Updating context data of conversation {}", conversationId);
+
+        ChatConversation conversation = getOrCreateConversation(conversationId);
 
-        conversation.addContextData(key, value);
+        ConversationContext previous = conversation.getContextData();
+        conversation.updateContext(change);
+        blindIndexService.refresh(conversation, previous);
         conversationRepository.save(conversation);
+        conversationCache.writeThrough(conversation);
+        eventService.recordContextPatch(
+                conversation.getId(), conversation.getContextData().changedKeys(previous), source);
+        return conversation;
+    }
+
+    public ConversationContext getContext(String conversationId) {
+        CachedConversation cached = getCachedConversation(conversationId);
+        return cached != null ? cached.contextData() : ConversationContext.empty();
     }
 
-    @Transactional(readOnly = true)
     public Object getContextData(String conversationId, String key) {
-        return conversationRepository.findByConversationId(conversationId)
-                .map(conv -> conv.getContextData(key))
-                .orElse(null);
+        return getContext(conversationId).get(key);
+    }
+
+    /**
+     * Cached view of a conversation (state, context, recent messages), loaded
+     * from the database on a miss. Returns null if the conversation does not exist.
+     */
+    public CachedConversation getCachedConversation(String conversationId) {
+        return conversationCache.get(conversationId, id -> conversationRepository.findByConversationId(id)
+                .map(conversation -> CachedConversation.of(conversation, null))
+                .orElse(null));
     }
 
     // Helper methods
 
+    /**
+     * Most recent hot-window messages, oldest first. Reads by numeric
+     * conversation reference once the conversation_ref backfill is done; by
+     * conversation_id until then.
+     */
+    private List<CachedMessage> loadRecentMessages(String conversationId, Long conversationRef) {
+        LocalDateTime hotWindowStart = partitionService.getHotWindowStart();
+        PageRequest window = PageRequest.of(0, MAX_MESSAGES_TO_LOAD);
+
+        List<ChatMessage> recent = refMigrationService.isBackfillComplete()
+                ? messageRepository.findRecentMessagesByConversationRef(conversationRef, hotWindowStart, window)
+                : messageRepository.findRecentMessagesByConversationId(conversationId, hotWindowStart, window);
+
+        List<CachedMessage> messages = new ArrayList<>(recent.size());
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            ChatMessage message = recent.get(i);
+            messages.add(new CachedMessage(message.getMessageOrder(), message.getMessageType(), message.getContent()));
+        }
+        return messages;
+    }
+
+    /**
+     * Delete every message of the given conversations, by numeric conversation
+     * reference once the conversation_ref backfill is done
+     */
+    private int deleteMessages(List<String> conversationIds) {
+        return refMigrationService.isBackfillComplete()
+                ? messageRepository.bulkDeleteByConversationRefs(conversationIds)
+                : messageRepository.bulkDeleteByConversationIds(conversationIds);
+    }
+
     private MessageType determineMessageType(Message message) {
         if (message instanceof UserMessage) {
             return MessageType.USER;
@@ -175,10 +344,10 @@ public class PostgresChatMemory implements ChatMemory {
         }
     }
 
-    private Message convertToMessage(ChatMessage chatMessage) {
-        String content = chatMessage.getContent();
+    private Message convertToMessage(CachedMessage chatMessage) {
+        String content = chatMessage.content();
 
-        return switch (chatMessage.getMessageType()) {
+        return switch (chatMessage.type()) {
             case USER -> new UserMessage(content);
             case ASSISTANT -> new AssistantMessage(content);
             case SYSTEM -> new SystemMessage(content);
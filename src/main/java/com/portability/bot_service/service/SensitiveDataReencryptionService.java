@@ -0,0 +1,333 @@
+package com.portability.bot_service.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.portability.bot_service.config.EncryptionProperties;
+import com.portability.bot_service.security.SensitiveDataEncryptor;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Online re-encryption of the sensitive context fields (IMEI, NIP, ICC,
+ * portability phone, checkout URL) stored in chat_conversations, after the
+ * current key version changed. Portability phones still stored in plaintext
+ * (written before the field was encrypted) are encrypted on the way.
+ *
+ * - Walks chat_conversations in id order (keyset chunks of batch-size),
+ *   selecting only rows holding a ciphertext without the current key prefix,
+ *   in context_data or snapshot_context
+ * - Rewrites each row with an optimistic check: the update only applies if
+ *   the jsonb is still the one that was read, so a concurrent live write is
+ *   never overwritten (the row is picked up by the next run instead)
+ * - Bumps the context revision and invalidates the cached conversations
+ * - Skips (and counts) rows holding a value it cannot decrypt, e.g. a
+ *   plaintext or a ciphertext of a key removed from the keyring, so one bad
+ *   value never blocks the rest of the table
+ * - Sleeps between chunks to stay under max-rows-per-second
+ *
+ * Runs on a schedule, which also covers values written by nodes still on the
+ * previous key during a rolling deploy, and in the background at startup when
+ * the current key version differs from the one of the last completed run
+ * (recorded in job_runs). Only one node of the cluster runs it at a time
+ * (JobCoordinator).
+ */
+@Service
+public class SensitiveDataReencryptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensitiveDataReencryptionService.class);
+
+    private static final String JOB_NAME = "sensitive-data-reencryption";
+
+    private static final String[] COLUMNS = { "context_data", "snapshot_context" };
+
+    // Ciphertext locations: versioned context sections and legacy flat keys
+    private static final List<String[]> SENSITIVE_PATHS = List.of(
+            new String[] { "p", "im" },
+            new String[] { "p", "nip" },
+            new String[] { "p", "icc" },
+            new String[] { "p", "ph" },
+            new String[] { "k", "url" },
+            new String[] { "portability_imei" },
+            new String[] { "portability_nip" },
+            new String[] { "sim_card_icc" },
+            new String[] { "portability_phone" },
+            new String[] { "checkout_session_url" });
+
+    private static final String PHONE_FIELD = "ph";
+    private static final String LEGACY_PHONE_KEY = "portability_phone";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SensitiveDataEncryptor encryptor;
+    private final ConversationCache conversationCache;
+    private final EncryptionProperties properties;
+    private final JobCoordinator jobCoordinator;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SensitiveDataReencryptionService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            SensitiveDataEncryptor encryptor,
+            ConversationCache conversationCache,
+            EncryptionProperties properties,
+            JobCoordinator jobCoordinator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.encryptor = encryptor;
+        this.conversationCache = conversationCache;
+        this.properties = properties;
+        this.jobCoordinator = jobCoordinator;
+    }
+
+    private record Candidate(long id, String conversationId, String context, String snapshot) {
+    }
+
+    /**
+     * Outcome of a re-encryption run. Only a completed run covered the whole
+     * table; failed counts the rows skipped because a value could not be
+     * decrypted.
+     */
+    public record ReencryptionRun(long scanned, long rewritten, long failed, boolean completed) {
+    }
+
+    // At startup (no minimum interval) when a deploy changed the current key, and on schedule
+    @EventListener(ApplicationReadyEvent.class)
+    public void startReencryption() {
+        if (!properties.getReencryption().isEnabled() || !encryptor.isEncryptionEnabled()) {
+            return;
+        }
+        String keyVersion = encryptor.getCurrentPrefix();
+        if (keyVersion.equals(lastCompletedKeyVersion())) {
+            logger.debug("Re-encryption already completed with key version {}, not run at startup", keyVersion);
+            return;
+        }
+        executor.submit(() -> jobCoordinator.runExclusive(JOB_NAME, Duration.ZERO, this::reencryptionJob));
+    }
+
+    @Scheduled(cron = "${security.encryption.reencryption.cron:0 15 4 * * *}")
+    public void scheduledReencryption() {
+        if (properties.getReencryption().isEnabled() && encryptor.isEncryptionEnabled()) {
+            jobCoordinator.runExclusive(JOB_NAME, this::reencryptionJob);
+        }
+    }
+
+    /**
+     * Key version (ciphertext prefix) of the last run that went through the
+     * whole table, null if none did
+     */
+    private String lastCompletedKeyVersion() {
+        return jdbcTemplate.query("""
+                SELECT details->>'key_version' FROM job_runs
+                WHERE job_name = ? AND shard = 0 AND status = 'SUCCEEDED'
+                  AND details->>'key_version' IS NOT NULL
+                ORDER BY started_at DESC
+                LIMIT 1
+                """, rs -> rs.next() ? rs.getString(1) : null, JOB_NAME);
+    }
+
+    // The key version is only recorded for runs that completed, so an aborted
+    // run is picked up again at the next startup
+    private Map<String, Object> reencryptionJob(int shard, int shardCount) {
+        String keyVersion = encryptor.getCurrentPrefix();
+        ReencryptionRun run = reencryptAll();
+        if (!run.completed()) {
+            throw new IllegalStateException("Re-encryption to key version " + keyVersion + " did not complete ("
+                    + run.scanned() + " conversations scanned)");
+        }
+        return Map.of("key_version", keyVersion, "scanned", run.scanned(), "rewritten", run.rewritten(),
+                "failed", run.failed());
+    }
+
+    /**
+     * Re-encrypt every stored ciphertext not produced with the current key.
+     * A run already in progress makes this a no-op (reported as not completed).
+     */
+    public ReencryptionRun reencryptAll() {
+        if (!running.compareAndSet(false, true)) {
+            logger.debug("Re-encryption already running");
+            return new ReencryptionRun(0, 0, 0, false);
+        }
+        long started = System.currentTimeMillis();
+        long scanned = 0;
+        long rewritten = 0;
+        long[] failed = new long[1];
+        boolean completed = false;
+        try {
+            String query = candidateQuery();
+            Object[] prefixPatterns = new Object[COLUMNS.length * SENSITIVE_PATHS.size()];
+            Arrays.fill(prefixPatterns, encryptor.getCurrentPrefix() + "%");
+
+            int batchSize = properties.getReencryption().getBatchSize();
+            long lastId = 0;
+            while (true) {
+                long chunkStarted = System.currentTimeMillis();
+                Object[] params = new Object[prefixPatterns.length + 2];
+                params[0] = lastId;
+                System.arraycopy(prefixPatterns, 0, params, 1, prefixPatterns.length);
+                params[params.length - 1] = batchSize;
+
+                List<Candidate> chunk = jdbcTemplate.query(query, (rs, rowNum) -> new Candidate(
+                        rs.getLong("id"), rs.getString("conversation_id"),
+                        rs.getString("context_data"), rs.getString("snapshot_context")), params);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                scanned += chunk.size();
+                rewritten += rewrite(chunk, failed);
+                lastId = chunk.get(chunk.size() - 1).id();
+
+                if (chunk.size() < batchSize) {
+                    break;
+                }
+                throttle(chunk.size(), System.currentTimeMillis() - chunkStarted);
+            }
+
+            completed = true;
+            if (scanned > 0) {
+                logger.info("Re-encryption finished: {} conversations with old key versions, {} rewritten,"
+                        + " {} skipped (undecryptable values) in {} ms",
+                        scanned, rewritten, failed[0], System.currentTimeMillis() - started);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Re-encryption interrupted after {} conversations, it resumes on the next run", scanned);
+        } catch (Exception e) {
+            logger.error("Re-encryption failed after {} conversations", scanned, e);
+        } finally {
+            running.set(false);
+        }
+        return new ReencryptionRun(scanned, rewritten, failed[0], completed);
+    }
+
+    private String candidateQuery() {
+        List<String> conditions = new ArrayList<>();
+        for (String column : COLUMNS) {
+            for (String[] path : SENSITIVE_PATHS) {
+                conditions.add("(" + column + " #>> '{" + String.join(",", path) + "}') NOT LIKE ?");
+            }
+        }
+        return "SELECT id, conversation_id, context_data::text AS context_data, snapshot_context::text AS snapshot_context"
+                + " FROM chat_conversations WHERE id > ? AND (" + String.join(" OR ", conditions) + ")"
+                + " ORDER BY id LIMIT ?";
+    }
+
+    /**
+     * Re-encrypt the fields of a chunk and write the rows that did not change
+     * meanwhile, in one transaction. Rows with a value that cannot be
+     * re-encrypted are left as they are and counted in failed[0].
+     */
+    private int rewrite(List<Candidate> chunk, long[] failed) {
+        List<Object[]> updates = new ArrayList<>(chunk.size());
+        List<String> conversationIds = new ArrayList<>(chunk.size());
+        for (Candidate candidate : chunk) {
+            String context;
+            String snapshot;
+            try {
+                context = reencryptJson(candidate.context(), true);
+                snapshot = reencryptJson(candidate.snapshot(), false);
+            } catch (JsonProcessingException | RuntimeException e) {
+                failed[0]++;
+                logger.warn("Skipping conversation row {} in re-encryption, a sensitive value cannot be"
+                        + " re-encrypted: {}", candidate.id(), e.getMessage());
+                continue;
+            }
+            updates.add(new Object[] { context, snapshot, candidate.id(), candidate.context(), candidate.snapshot() });
+            conversationIds.add(candidate.conversationId());
+        }
+
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        Integer written = transactionTemplate.execute(status -> {
+            int[] counts = jdbcTemplate.batchUpdate("""
+                    UPDATE chat_conversations
+                    SET context_data = CAST(? AS jsonb), snapshot_context = CAST(? AS jsonb)
+                    WHERE id = ?
+                      AND context_data IS NOT DISTINCT FROM CAST(? AS jsonb)
+                      AND snapshot_context IS NOT DISTINCT FROM CAST(? AS jsonb)
+                    """, updates);
+            conversationCache.invalidate(conversationIds);
+            return Arrays.stream(counts).map(count -> Math.max(count, 0)).sum();
+        });
+        return written != null ? written : 0;
+    }
+
+    /**
+     * Re-encrypt the sensitive fields of a jsonb document. The context
+     * revision is bumped on versioned contexts.
+     */
+    private String reencryptJson(String json, boolean bumpRevision) throws JsonProcessingException {
+        if (json == null) {
+            return null;
+        }
+        JsonNode root = objectMapper.readTree(json);
+        if (!(root instanceof ObjectNode document)) {
+            return json;
+        }
+
+        boolean changed = false;
+        for (String[] path : SENSITIVE_PATHS) {
+            JsonNode parent = document;
+            for (int i = 0; i < path.length - 1 && parent != null; i++) {
+                parent = parent.get(path[i]);
+            }
+            if (!(parent instanceof ObjectNode section)) {
+                continue;
+            }
+            String field = path[path.length - 1];
+            JsonNode value = section.get(field);
+            if (value == null || !value.isTextual() || encryptor.isCurrent(value.asText())) {
+                continue;
+            }
+            boolean phone = PHONE_FIELD.equals(field) || LEGACY_PHONE_KEY.equals(field);
+            section.put(field, phone && SensitiveDataEncryptor.isPlaintextPhone(value.asText())
+                    ? encryptor.encrypt(value.asText())
+                    : encryptor.reencrypt(value.asText()));
+            changed = true;
+        }
+
+        if (!changed) {
+            return json;
+        }
+        if (bumpRevision && document.has("v")) {
+            document.put("r", document.path("r").asLong(0) + 1);
+        }
+        return objectMapper.writeValueAsString(document);
+    }
+
+    private void throttle(int rows, long elapsedMillis) throws InterruptedException {
+        long budgetMillis = rows * 1000L / Math.max(1, properties.getReencryption().getMaxRowsPerSecond());
+        if (budgetMillis > elapsedMillis) {
+            Thread.sleep(budgetMillis - elapsedMillis);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
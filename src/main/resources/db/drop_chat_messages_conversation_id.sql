@@ -0,0 +1,28 @@
+-- Contract phase of the chat_messages conversation_ref migration (see
+-- ConversationRefMigrationService). Not run at startup: apply it by hand in a
+-- maintenance window, once
+--   1. schema_migrations holds 'chat_messages_conversation_ref' and every node
+--      logged "messages are now read by numeric reference"
+--   2. the release deployed with it no longer maps the column: it removes
+--      ChatMessage.conversationId (and the repository methods on it), the
+--      conversation_id fallbacks of PostgresChatMemory and MessageRetentionService,
+--      and the schema.sql statements on chat_messages.conversation_id (the
+--      idx_chat_messages_conversation index and the counters backfill, which
+--      groups by conversation_ref instead)
+--
+-- SET NOT NULL scans every partition and fails if a message was missed by the
+-- backfill: delete the schema_migrations row and restart the nodes to re-run
+-- the backfill, then retry.
+
+BEGIN;
+
+ALTER TABLE chat_messages ALTER COLUMN conversation_ref SET NOT NULL;
+
+ALTER TABLE chat_messages DROP CONSTRAINT IF EXISTS fk_conversation;
+DROP INDEX IF EXISTS idx_chat_messages_conversation;
+ALTER TABLE chat_messages DROP COLUMN conversation_id;
+
+INSERT INTO schema_migrations (migration_name) VALUES ('chat_messages_drop_conversation_id')
+ON CONFLICT DO NOTHING;
+
+COMMIT;
@@ -20,23 +20,217 @@ CREATE TABLE IF NOT EXISTS chat_conversations (
     context_data JSONB,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    is_active BOOLEAN DEFAULT TRUE
+    is_active BOOLEAN DEFAULT TRUE,
+    message_count INTEGER NOT NULL DEFAULT 0,
+    user_message_count INTEGER NOT NULL DEFAULT 0,
+    assistant_message_count INTEGER NOT NULL DEFAULT 0,
+    tool_message_count INTEGER NOT NULL DEFAULT 0,
+    total_characters BIGINT NOT NULL DEFAULT 0,
+    last_message_at TIMESTAMP,
+    next_message_order INTEGER NOT NULL DEFAULT 0
 );
 
+-- Range-partitioned by created_at month. Monthly partitions are created (and
+-- a pre-existing unpartitioned table is converted) by ChatMessagePartitionService,
+-- along with a DEFAULT partition for rows outside every month (alerted on).
 CREATE TABLE IF NOT EXISTS chat_messages (
-    id BIGSERIAL PRIMARY KEY,
+    id BIGSERIAL,
     conversation_id VARCHAR(255) NOT NULL,
+    conversation_ref BIGINT, -- chat_conversations.id, replaces conversation_id
     message_type VARCHAR(20) NOT NULL, -- USER, ASSISTANT, SYSTEM, TOOL
     content TEXT NOT NULL,
     metadata JSONB,
     message_order INTEGER NOT NULL,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at),
     CONSTRAINT fk_conversation FOREIGN KEY (conversation_id) 
-        REFERENCES chat_conversations(conversation_id) ON DELETE CASCADE
-);
+        REFERENCES chat_conversations(conversation_id) ON DELETE CASCADE,
+    CONSTRAINT fk_conversation_ref FOREIGN KEY (conversation_ref)
+        REFERENCES chat_conversations(id) ON DELETE CASCADE
+) PARTITION BY RANGE (created_at);
 
 -- Indexes for efficient querying
 CREATE INDEX IF NOT EXISTS idx_chat_conversations_phone ON chat_conversations(phone_number);
 CREATE INDEX IF NOT EXISTS idx_chat_conversations_state ON chat_conversations(current_state);
+-- Conversations by last update: retention cleanup and its statistics (active
+-- or not) and the inactivity sweep (active ones, by state)
+DROP INDEX IF EXISTS idx_chat_conversations_active_updated_at;
+CREATE INDEX IF NOT EXISTS idx_chat_conversations_updated_at ON chat_conversations(updated_at);
+CREATE INDEX IF NOT EXISTS idx_chat_conversations_active_updated ON chat_conversations(is_active, updated_at);
 CREATE INDEX IF NOT EXISTS idx_chat_messages_conversation ON chat_messages(conversation_id, message_order);
-CREATE INDEX IF NOT EXISTS idx_chat_messages_created ON chat_messages(created_at); 
\ No newline at end of file
+-- Message retention purge by type and age, and by age for rules on all types
+-- (see MessageRetentionService)
+CREATE INDEX IF NOT EXISTS idx_chat_messages_type_created ON chat_messages(message_type, created_at);
+CREATE INDEX IF NOT EXISTS idx_chat_messages_created_id ON chat_messages(created_at, id);
+
+-- Message counters on chat_conversations (maintained by PostgresChatMemory.add).
+-- Existing databases get the columns added and backfilled once from chat_messages;
+-- the backfill only touches rows whose counters are still NULL.
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS message_count INTEGER;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS user_message_count INTEGER;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS assistant_message_count INTEGER;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS tool_message_count INTEGER;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS total_characters BIGINT;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS last_message_at TIMESTAMP;
+
+UPDATE chat_conversations c SET
+    message_count = s.total,
+    user_message_count = s.user_count,
+    assistant_message_count = s.assistant_count,
+    tool_message_count = s.tool_count,
+    total_characters = s.characters,
+    last_message_at = s.last_message_at
+FROM (
+    SELECT conversation_id,
+           COUNT(*) AS total,
+           COUNT(*) FILTER (WHERE message_type = 'USER') AS user_count,
+           COUNT(*) FILTER (WHERE message_type = 'ASSISTANT') AS assistant_count,
+           COUNT(*) FILTER (WHERE message_type = 'TOOL') AS tool_count,
+           COALESCE(SUM(LENGTH(content)), 0) AS characters,
+           MAX(created_at) AS last_message_at
+    FROM chat_messages
+    GROUP BY conversation_id
+) s
+WHERE c.conversation_id = s.conversation_id AND c.message_count IS NULL;
+
+UPDATE chat_conversations SET
+    message_count = 0,
+    user_message_count = 0,
+    assistant_message_count = 0,
+    tool_message_count = 0,
+    total_characters = 0
+WHERE message_count IS NULL;
+
+ALTER TABLE chat_conversations ALTER COLUMN message_count SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN message_count SET NOT NULL;
+ALTER TABLE chat_conversations ALTER COLUMN user_message_count SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN user_message_count SET NOT NULL;
+ALTER TABLE chat_conversations ALTER COLUMN assistant_message_count SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN assistant_message_count SET NOT NULL;
+ALTER TABLE chat_conversations ALTER COLUMN tool_message_count SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN tool_message_count SET NOT NULL;
+ALTER TABLE chat_conversations ALTER COLUMN total_characters SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN total_characters SET NOT NULL;
+
+-- Next message_order of a conversation. message_count goes down when the
+-- retention purge deletes messages, so orders are handed out from this
+-- counter instead, which only grows (reset to 0 with the messages).
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS next_message_order INTEGER;
+UPDATE chat_conversations SET next_message_order = message_count WHERE next_message_order IS NULL;
+ALTER TABLE chat_conversations ALTER COLUMN next_message_order SET DEFAULT 0;
+ALTER TABLE chat_conversations ALTER COLUMN next_message_order SET NOT NULL;
+
+-- Numeric conversation reference on chat_messages (online migration, see
+-- ConversationRefMigrationService). The foreign key is added and the column
+-- backfilled at startup; completion is recorded in schema_migrations.
+CREATE TABLE IF NOT EXISTS schema_migrations (
+    migration_name VARCHAR(100) PRIMARY KEY,
+    completed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS conversation_ref BIGINT;
+CREATE INDEX IF NOT EXISTS idx_chat_messages_conversation_ref ON chat_messages(conversation_ref, message_order);
+
+-- Append-only conversation event log (see ConversationEventService): state
+-- transitions, context patches (field names only) and errors. Snapshots of
+-- state and context are kept on chat_conversations every N events.
+CREATE TABLE IF NOT EXISTS conversation_events (
+    id BIGSERIAL PRIMARY KEY,
+    conversation_ref BIGINT NOT NULL,
+    event_type VARCHAR(20) NOT NULL, -- STATE_TRANSITION, CONTEXT_PATCH, ERROR
+    from_state VARCHAR(50),
+    to_state VARCHAR(50),
+    payload JSONB,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT fk_conversation_events_conversation FOREIGN KEY (conversation_ref)
+        REFERENCES chat_conversations(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_conversation_events_conversation ON conversation_events(conversation_ref, id);
+CREATE INDEX IF NOT EXISTS idx_conversation_events_type_created ON conversation_events(event_type, created_at);
+
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS snapshot_state VARCHAR(50);
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS snapshot_context JSONB;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS snapshot_event_id BIGINT;
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS snapshot_at TIMESTAMP;
+
+-- Snapshots taken before they were stripped of sensitive values are dropped
+-- once; the next snapshot of each conversation is taken without them.
+UPDATE chat_conversations SET snapshot_context = NULL
+WHERE snapshot_context IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM schema_migrations WHERE migration_name = 'strip_snapshot_context');
+INSERT INTO schema_migrations (migration_name) VALUES ('strip_snapshot_context') ON CONFLICT DO NOTHING;
+
+-- State an idle conversation was swept to ABANDONED from, resumed when its
+-- user comes back (see ConversationInactivitySweeper). Conversations swept
+-- before the column existed take it once from their sweep transition event.
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS abandoned_from_state VARCHAR(50);
+UPDATE chat_conversations c SET abandoned_from_state = (
+    SELECT e.from_state FROM conversation_events e
+    WHERE e.conversation_ref = c.id
+      AND e.event_type = 'STATE_TRANSITION'
+      AND e.to_state = 'ABANDONED'
+      AND e.payload->>'source' = 'inactivity'
+    ORDER BY e.id DESC
+    LIMIT 1)
+WHERE c.current_state = 'ABANDONED'
+  AND c.abandoned_from_state IS NULL
+  AND NOT EXISTS (SELECT 1 FROM schema_migrations WHERE migration_name = 'backfill_abandoned_from_state');
+INSERT INTO schema_migrations (migration_name) VALUES ('backfill_abandoned_from_state') ON CONFLICT DO NOTHING;
+
+-- Blind indexes: keyed HMACs of sensitive identifiers stored encrypted in
+-- context_data, for lookups by value (see BlindIndexService)
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS imei_bidx VARCHAR(32);
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS sim_icc_bidx VARCHAR(32);
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS portability_phone_bidx VARCHAR(32);
+CREATE INDEX IF NOT EXISTS idx_chat_conversations_imei_bidx
+    ON chat_conversations(imei_bidx) WHERE imei_bidx IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_chat_conversations_sim_icc_bidx
+    ON chat_conversations(sim_icc_bidx) WHERE sim_icc_bidx IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_chat_conversations_portability_phone_bidx
+    ON chat_conversations(portability_phone_bidx) WHERE portability_phone_bidx IS NOT NULL;
+
+-- Funnel analytics rollups (see ConversationAnalyticsService), updated from
+-- state transition events so dashboards never scan chat_conversations.
+ALTER TABLE chat_conversations ADD COLUMN IF NOT EXISTS state_entered_at TIMESTAMP;
+
+CREATE TABLE IF NOT EXISTS conversation_state_hourly (
+    bucket_start TIMESTAMP NOT NULL,
+    state VARCHAR(50) NOT NULL,
+    entered BIGINT NOT NULL DEFAULT 0,
+    exited BIGINT NOT NULL DEFAULT 0,
+    dwell_seconds_total BIGINT NOT NULL DEFAULT 0, -- of the conversations that exited
+    dwell_seconds_max BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, state)
+);
+
+CREATE TABLE IF NOT EXISTS conversation_transition_hourly (
+    bucket_start TIMESTAMP NOT NULL,
+    from_state VARCHAR(50) NOT NULL,
+    to_state VARCHAR(50) NOT NULL,
+    transitions BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, from_state, to_state)
+);
+
+CREATE TABLE IF NOT EXISTS conversation_state_counts (
+    state VARCHAR(50) PRIMARY KEY,
+    conversations BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Runs of the scheduled jobs coordinated across replicas with advisory locks
+-- (see JobCoordinator), one row per job shard run
+CREATE TABLE IF NOT EXISTS job_runs (
+    id BIGSERIAL PRIMARY KEY,
+    job_name VARCHAR(100) NOT NULL,
+    shard INTEGER NOT NULL DEFAULT 0,
+    shard_count INTEGER NOT NULL DEFAULT 1,
+    node VARCHAR(255) NOT NULL,
+    status VARCHAR(20) NOT NULL, -- RUNNING, SUCCEEDED, FAILED, ABANDONED
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP,
+    details JSONB,
+    error TEXT
+);
+
+CREATE INDEX IF NOT EXISTS idx_job_runs_job_shard_started ON job_runs(job_name, shard, started_at DESC);
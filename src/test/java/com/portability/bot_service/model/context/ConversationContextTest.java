@@ -0,0 +1,134 @@
+package com.portability.bot_service.model.context;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ConversationContextTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsLegacyFlatMapIntoSections() throws Exception {
+        ConversationContext context = objectMapper.readValue("""
+                {
+                  "customer_id": 42,
+                  "customer_first_name": "Ana",
+                  "customer_last_name": "Ruiz",
+                  "address_postal_code": "03100",
+                  "order_id": "ORD-7",
+                  "order_product_id": "15",
+                  "portability_phone": "5512345678",
+                  "sim_card_icc": "8952140061234567890",
+                  "payment_completed": "true",
+                  "imei_compatible": false,
+                  "error_count": "3",
+                  "_retention_policy": "standard"
+                }
+                """, ConversationContext.class);
+
+        assertEquals(ConversationContext.CURRENT_VERSION, context.version());
+        assertEquals(0L, context.revision());
+        assertEquals(42L, context.customer().id());
+        assertEquals("Ana Ruiz", context.get("customer_name"));
+        assertEquals("03100", context.address().postalCode());
+        assertEquals("ORD-7", context.get("last_order_id"));
+        assertEquals(15L, context.order().productId());
+        assertEquals("5512345678", context.portability().phone());
+        assertEquals("8952140061234567890", context.portability().simIcc());
+        assertEquals(Boolean.TRUE, context.checkout().paymentCompleted());
+        assertEquals(Boolean.FALSE, context.imei().compatible());
+        assertEquals(3, context.errors().count());
+        assertEquals("standard", context.retention().policy());
+        assertTrue(context.extra().isEmpty());
+    }
+
+    @Test
+    void keepsUnknownLegacyKeysInExtra() throws Exception {
+        ConversationContext context = objectMapper.readValue(
+                "{\"customer_email\":\"ana@example.com\",\"campaign\":\"summer\",\"attempts\":2}",
+                ConversationContext.class);
+
+        assertEquals("ana@example.com", context.customer().email());
+        assertEquals(Map.of("campaign", "summer", "attempts", 2), context.extra());
+        assertEquals("summer", context.get("campaign"));
+    }
+
+    @Test
+    void dropsUnparseableLegacyNumbers() throws Exception {
+        ConversationContext context = objectMapper.readValue(
+                "{\"customer_id\":\"not-a-number\",\"address_id\":\"\"}", ConversationContext.class);
+
+        assertNull(context.customer());
+        assertNull(context.address());
+        assertTrue(context.isEmpty());
+    }
+
+    @Test
+    void writesLegacyContextInCompactForm() throws Exception {
+        ConversationContext context = objectMapper.readValue(
+                "{\"customer_id\":42,\"portability_nip\":\"1234\"}", ConversationContext.class);
+
+        JsonNode written = objectMapper.readTree(objectMapper.writeValueAsString(context));
+
+        assertEquals(ConversationContext.CURRENT_VERSION, written.get("v").asInt());
+        assertEquals(42L, written.get("c").get("id").asLong());
+        assertEquals("1234", written.get("p").get("nip").asText());
+        assertFalse(written.has("customer_id"));
+        assertFalse(written.has("a"));
+        assertFalse(written.has("x"));
+    }
+
+    @Test
+    void roundTripsVersionedForm() throws Exception {
+        ConversationContext context = ConversationContext.empty()
+                .withAll(Map.of("customer_id", 42L, "order_status", "PAID", "campaign", "summer"))
+                .withRevision(7);
+
+        String json = objectMapper.writeValueAsString(context);
+        ConversationContext read = objectMapper.readValue(json, ConversationContext.class);
+
+        assertEquals(context, read);
+        assertEquals(7L, read.revision());
+    }
+
+    @Test
+    void readsNullAndNonObjectsAsEmpty() throws Exception {
+        assertSame(ConversationContext.empty(), objectMapper.readValue("[]", ConversationContext.class));
+        assertSame(ConversationContext.empty(),
+                objectMapper.readValue("{\"context\":null}", Holder.class).context);
+    }
+
+    @Test
+    void removingLastFieldDropsSection() {
+        ConversationContext context = ConversationContext.empty().with("order_status", "PAID");
+
+        ConversationContext cleared = context.with("order_status", null);
+
+        assertNull(cleared.order());
+        assertTrue(cleared.isEmpty());
+        assertEquals(ConversationContext.empty(), cleared);
+    }
+
+    @Test
+    void returnsSameInstanceWhenValueUnchanged() {
+        ConversationContext context = ConversationContext.empty().with("customer_id", 42L);
+
+        assertSame(context, context.with("customer_id", "42"));
+        assertSame(context, context.with("address_street", null));
+        assertSame(context, context.with("customer_name", "ignored"));
+    }
+
+    static class Holder {
+        public ConversationContext context;
+    }
+}
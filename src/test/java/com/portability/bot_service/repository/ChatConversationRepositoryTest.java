@@ -0,0 +1,131 @@
+package com.portability.bot_service.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.portability.bot_service.PostgresTestSupport;
+
+class ChatConversationRepositoryTest extends PostgresTestSupport {
+
+    private static final LocalDateTime STATE_ENTERED_AT = LocalDateTime.of(2026, 1, 1, 10, 0);
+
+    @Autowired
+    private ChatConversationRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void incrementsCountersAndHandsOutConsecutiveOrders() {
+        long id = insertConversation("5512345678");
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        assertEquals(0, repository.incrementMessageCounters(id, 2, 1, 1, 0, 30, now));
+        assertEquals(2, repository.incrementMessageCounters(id, 3, 1, 1, 1, 45, now));
+
+        Map<String, Object> counters = counters(id);
+        assertEquals(5, counters.get("message_count"));
+        assertEquals(2, counters.get("user_message_count"));
+        assertEquals(2, counters.get("assistant_message_count"));
+        assertEquals(1, counters.get("tool_message_count"));
+        assertEquals(75L, counters.get("total_characters"));
+        assertEquals(5, counters.get("next_message_order"));
+        assertEquals(now, ((Timestamp) counters.get("last_message_at")).toLocalDateTime());
+    }
+
+    @Test
+    void takesOrdersFromNextMessageOrderAfterMessagesWerePurged() {
+        long id = insertConversation("5512345678");
+        repository.incrementMessageCounters(id, 4, 2, 2, 0, 40, LocalDateTime.now());
+        // The retention purge decrements message_count only
+        jdbcTemplate.update("UPDATE chat_conversations SET message_count = 1 WHERE id = ?", id);
+
+        assertEquals(4, repository.incrementMessageCounters(id, 1, 1, 0, 0, 10, LocalDateTime.now()));
+        assertEquals(2, counters(id).get("message_count"));
+    }
+
+    @Test
+    void bulkResetClearsContextIndexesAndCounters() {
+        long first = insertConversation("5511111111", "PAYMENT_PENDING", "{\"v\": 1, \"r\": 3, \"p\": {\"im\": \"x\"}}");
+        long second = insertConversation("5522222222", "INITIAL", "{\"v\": 1, \"r\": 1}");
+        long other = insertConversation("5533333333", "PAYMENT_PENDING", "{\"v\": 1, \"r\": 5}");
+        for (long id : List.of(first, second, other)) {
+            repository.incrementMessageCounters(id, 2, 1, 1, 0, 20, LocalDateTime.now());
+        }
+
+        List<Object[]> previous = repository.bulkResetConversations(
+                List.of("5511111111", "5522222222", "5599999999"), "INITIAL", false, true);
+
+        Map<Long, String> previousStates = new HashMap<>();
+        previous.forEach(row -> previousStates.put(((Number) row[0]).longValue(), (String) row[1]));
+        assertEquals(Map.of(first, "PAYMENT_PENDING", second, "INITIAL"), previousStates);
+
+        Map<String, Object> reset = jdbcTemplate.queryForMap("""
+                SELECT current_state, is_active, context_data::text AS context, imei_bidx, snapshot_context,
+                       message_count, total_characters, next_message_order, last_message_at
+                FROM chat_conversations WHERE id = ?
+                """, first);
+        assertEquals("INITIAL", reset.get("current_state"));
+        assertEquals(false, reset.get("is_active"));
+        // Revision bumped so cached summaries of the old context are not reused
+        assertEquals("{\"r\": 4, \"v\": 1}", reset.get("context"));
+        assertNull(reset.get("imei_bidx"));
+        assertNull(reset.get("snapshot_context"));
+        assertEquals(0, reset.get("message_count"));
+        assertEquals(0L, reset.get("total_characters"));
+        assertEquals(0, reset.get("next_message_order"));
+        assertNull(reset.get("last_message_at"));
+
+        // Not listed: untouched
+        assertEquals("PAYMENT_PENDING", jdbcTemplate.queryForObject(
+                "SELECT current_state FROM chat_conversations WHERE id = ?", String.class, other));
+        assertEquals(2, counters(other).get("message_count"));
+    }
+
+    @Test
+    void bulkResetKeepsContextAndStateEntryWhenNotAsked() {
+        long id = insertConversation("5511111111", "INITIAL", "{\"v\": 1, \"r\": 3}");
+
+        repository.bulkResetConversations(List.of("5511111111"), "INITIAL", true, false);
+
+        Map<String, Object> reset = jdbcTemplate.queryForMap(
+                "SELECT context_data::text AS context, imei_bidx, state_entered_at FROM chat_conversations WHERE id = ?",
+                id);
+        assertEquals("{\"r\": 3, \"v\": 1}", reset.get("context"));
+        assertEquals("bidx", reset.get("imei_bidx"));
+        assertEquals(STATE_ENTERED_AT, ((Timestamp) reset.get("state_entered_at")).toLocalDateTime());
+    }
+
+    private long insertConversation(String conversationId, String state, String context) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO chat_conversations
+                    (conversation_id, current_state, context_data, imei_bidx, state_entered_at)
+                VALUES (?, ?, ?::jsonb, 'bidx', ?)
+                RETURNING id
+                """, Long.class, conversationId, state, context, STATE_ENTERED_AT);
+    }
+
+    private long insertConversation(String conversationId) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO chat_conversations (conversation_id, phone_number) VALUES (?, ?) RETURNING id",
+                Long.class, conversationId, conversationId);
+    }
+
+    private Map<String, Object> counters(long id) {
+        return jdbcTemplate.queryForMap("""
+                SELECT message_count, user_message_count, assistant_message_count, tool_message_count,
+                       total_characters, next_message_order, last_message_at
+                FROM chat_conversations WHERE id = ?
+                """, id);
+    }
+}
@@ -0,0 +1,120 @@
+package com.portability.bot_service.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.pattern.MessageConverter;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Overhead of masking PII per log event: the %msg conversion with
+ * MaskingMessageConverter against logback's plain MessageConverter, and
+ * LogSanitizer.sanitize against comparable rules written as chained regular
+ * expressions. Messages without PII, a short one with every kind of PII, and
+ * a ~2 KB tool call body as logged by ServiceLoggingAspect.
+ *
+ * Run after mvn test-compile with the main method, or
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main LogSanitizerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogSanitizerBenchmark {
+
+    private static final String PLAIN = "Conversation state changed from PAYMENT_PENDING to "
+            + "PORTABILITY_NIP_REQUIRED after 35 ms (revision 12, 2026-10-18 10:15:42)";
+
+    private static final String PII = "Tool updatePortabilityNip called for 5512345678 with nip=1234, "
+            + "imei 356938035643809, email maria.gonzalez@example.com, "
+            + "checkout https://checkout.stripe.com/c/pay/cs_live_a1B2c3D4e5F6g7H8 sent";
+
+    private static final Pattern EMAIL = Pattern.compile("([A-Za-z0-9._%+-])[A-Za-z0-9._%+-]*(@[A-Za-z0-9.-]+\\.[A-Za-z]{2,})");
+    private static final Pattern IDENTIFIER = Pattern.compile("(?<![\\w.])\\+?\\d(?:[ -]?\\d){5,18}(\\d{4})(?![\\w.])");
+    private static final Pattern NIP = Pattern.compile("(?i)(nip\\W{1,4})\\d{4}\\b");
+    private static final Pattern STRIPE_URL = Pattern.compile("(https?://[\\w.-]*stripe\\.com)/[^\\s\"')]*");
+
+    @Param({ "plain", "pii", "body" })
+    private String message;
+
+    private String text;
+    private LoggingEvent event;
+    private MaskingMessageConverter maskingConverter;
+    private MessageConverter plainConverter;
+
+    @Setup
+    public void setUp() {
+        text = switch (message) {
+            case "plain" -> PLAIN;
+            case "pii" -> PII;
+            default -> body();
+        };
+
+        Logger logger = (Logger) LoggerFactory.getLogger(LogSanitizerBenchmark.class);
+        event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, text, null, null);
+        maskingConverter = new MaskingMessageConverter();
+        plainConverter = new MessageConverter();
+    }
+
+    @Benchmark
+    public String maskingConverter() {
+        return maskingConverter.convert(event);
+    }
+
+    @Benchmark
+    public String plainConverter() {
+        return plainConverter.convert(event);
+    }
+
+    @Benchmark
+    public String sanitize() {
+        return LogSanitizer.sanitize(text);
+    }
+
+    @Benchmark
+    public String regex() {
+        String masked = EMAIL.matcher(text).replaceAll("$1***$2");
+        masked = STRIPE_URL.matcher(masked).replaceAll("$1/***");
+        masked = NIP.matcher(masked).replaceAll("$1****");
+        return IDENTIFIER.matcher(masked).replaceAll("***$1");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LogSanitizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    // Arguments and result of a tool call, as logged at INFO by ServiceLoggingAspect
+    private static String body() {
+        StringBuilder body = new StringBuilder("PortabilityClient.updatePortabilityNip([{\"conversationId\":\"5512345678\",");
+        for (int i = 0; i < 12; i++) {
+            body.append("\"note").append(i).append("\":\"Cliente solicita portabilidad del plan ilimitado, ")
+                    .append("revisión ").append(i).append(" del 2026-10-18\",");
+        }
+        body.append("\"portability_nip\":\"1234\",\"imei\":\"356938035643809\"}]) returned ")
+                .append("{\"id\":5531,\"phoneNumber\":\"5587654321\",\"status\":\"WAITING_NIP\",")
+                .append("\"email\":\"maria.gonzalez@example.com\"} in 184 ms");
+        return body.toString();
+    }
+}
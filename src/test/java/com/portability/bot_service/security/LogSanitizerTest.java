@@ -0,0 +1,103 @@
+package com.portability.bot_service.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class LogSanitizerTest {
+
+    @Test
+    void returnsSameInstanceWhenNothingToMask() {
+        String text = "conversation abc-123 moved to PAYMENT_PENDING after 3 attempts";
+        assertSame(text, LogSanitizer.sanitize(text));
+        assertNull(LogSanitizer.sanitize(null));
+    }
+
+    @Test
+    void masksEmails() {
+        assertEquals("customer j***@example.com registered",
+                LogSanitizer.sanitize("customer john.doe@example.com registered"));
+        assertEquals("to a***@mail.example.org.",
+                LogSanitizer.sanitize("to a_b+tag@mail.example.org."));
+    }
+
+    @Test
+    void keepsAtSignsThatAreNotEmails() {
+        String text = "user@localhost and @mention";
+        assertSame(text, LogSanitizer.sanitize(text));
+        String dotted = "see docs.example.com, user@localhost";
+        assertSame(dotted, LogSanitizer.sanitize(dotted));
+    }
+
+    @Test
+    void masksPhonesKeepingLastFourDigits() {
+        assertEquals("phone=***5678", LogSanitizer.sanitize("phone=5512345678"));
+        assertEquals("call ***5678 now", LogSanitizer.sanitize("call +52 55 1234 5678 now"));
+        assertEquals("call ***5678", LogSanitizer.sanitize("call 55-1234-5678"));
+    }
+
+    @Test
+    void masksImeisAndIccs() {
+        assertEquals("imei ***2345 checked", LogSanitizer.sanitize("imei 123456789012345 checked"));
+        assertEquals("{\"icc\":\"***1234\"}", LogSanitizer.sanitize("{\"icc\":\"89520123456789011234\"}"));
+    }
+
+    @Test
+    void keepsShortAndOverlongNumbers() {
+        String text = "order 123456789 total 1234567890123456789012";
+        assertSame(text, LogSanitizer.sanitize(text));
+    }
+
+    @Test
+    void masksLabelledNips() {
+        assertEquals("nip=****", LogSanitizer.sanitize("nip=1234"));
+        assertEquals("NIP: ****", LogSanitizer.sanitize("NIP: 1234"));
+        assertEquals("{\"portability_nip\":\"****\"}", LogSanitizer.sanitize("{\"portability_nip\":\"1234\"}"));
+    }
+
+    @Test
+    void keepsUnlabelledFourDigitNumbers() {
+        String text = "retrying in 1500 ms, snip=1234";
+        assertSame(text, LogSanitizer.sanitize(text));
+    }
+
+    @Test
+    void masksStripeUrls() {
+        assertEquals("redirect to https://checkout.stripe.com/*** done",
+                LogSanitizer.sanitize("redirect to https://checkout.stripe.com/c/pay/cs_test_abc123#fid done"));
+        assertEquals("(http://stripe.com/***)", LogSanitizer.sanitize("(http://stripe.com/pay?session=1)"));
+    }
+
+    @Test
+    void keepsOtherUrls() {
+        String text = "see https://notstripe.com/c/pay/1 and https://example.com/stripe.com";
+        assertSame(text, LogSanitizer.sanitize(text));
+    }
+
+    @Test
+    void keepsUuids() {
+        String text = "conversation 123e4567-e89b-12d3-a456-426614174000 and 00000000-0000-0000-0000-000000000000";
+        assertSame(text, LogSanitizer.sanitize(text));
+    }
+
+    @Test
+    void keepsTimestamps() {
+        String text = "cleanup oldest=2026-10-18 12:30:00.0 count=5";
+        assertSame(text, LogSanitizer.sanitize(text));
+        String iso = "cutoff 2026-10-18T12:30:00.123 reached";
+        assertSame(iso, LogSanitizer.sanitize(iso));
+    }
+
+    @Test
+    void masksPhoneAfterTimestamp() {
+        assertEquals("at 2026-10-18 ***5678", LogSanitizer.sanitize("at 2026-10-18 5512345678"));
+    }
+
+    @Test
+    void keepsDecimalsAndWordGluedDigits() {
+        String text = "ratio 0.1234567890123 id cs_1234567890 v2x1234567890";
+        assertSame(text, LogSanitizer.sanitize(text));
+    }
+}
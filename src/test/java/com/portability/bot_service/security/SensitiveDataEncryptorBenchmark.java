@@ -0,0 +1,174 @@
+package com.portability.bot_service.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.portability.bot_service.config.EncryptionProperties;
+
+/**
+ * Throughput of SensitiveDataEncryptor against the implementation it replaced
+ * (key decoded, Cipher and SecureRandom created on every call), for single
+ * values from 4 threads and for the batch API on the fields of one context.
+ *
+ * Run after mvn test-compile with the main method, or
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main SensitiveDataEncryptorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SensitiveDataEncryptorBenchmark {
+
+    private static final String IMEI = "356938035643809";
+
+    // NIP, IMEI, ICC, phone and checkout URL of one conversation
+    private static final List<String> CONTEXT_FIELDS = List.of("1234", IMEI, "8952140061234567890F", "5587654321",
+            "https://checkout.stripe.com/c/pay/cs_live_a1B2c3D4e5F6g7H8");
+
+    private SensitiveDataEncryptor encryptor;
+    private LegacyEncryptor legacy;
+    private String ciphertext;
+    private String legacyCiphertext;
+    private List<String> contextCiphertexts;
+
+    @Setup
+    public void setUp() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        String encodedKey = Base64.getEncoder().encodeToString(key);
+
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setKey(encodedKey);
+        encryptor = new SensitiveDataEncryptor(properties);
+        encryptor.init();
+        legacy = new LegacyEncryptor(encodedKey);
+
+        ciphertext = encryptor.encrypt(IMEI);
+        legacyCiphertext = legacy.encrypt(IMEI);
+        contextCiphertexts = encryptor.encryptAll(CONTEXT_FIELDS);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptor.encrypt(IMEI);
+    }
+
+    @Benchmark
+    public String encryptLegacy() {
+        return legacy.encrypt(IMEI);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptor.decrypt(ciphertext);
+    }
+
+    @Benchmark
+    public String decryptLegacy() {
+        return legacy.decrypt(legacyCiphertext);
+    }
+
+    @Benchmark
+    public List<String> encryptContext() {
+        return encryptor.encryptAll(CONTEXT_FIELDS);
+    }
+
+    @Benchmark
+    public List<String> encryptContextLegacy() {
+        List<String> encrypted = new ArrayList<>(CONTEXT_FIELDS.size());
+        for (String field : CONTEXT_FIELDS) {
+            encrypted.add(legacy.encrypt(field));
+        }
+        return encrypted;
+    }
+
+    @Benchmark
+    public List<String> decryptContext() {
+        return encryptor.decryptAll(contextCiphertexts);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SensitiveDataEncryptorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    // SensitiveDataEncryptor before the key, ciphers and IV source were reused
+    private static class LegacyEncryptor {
+
+        private final String encryptionKey;
+
+        LegacyEncryptor(String encryptionKey) {
+            this.encryptionKey = encryptionKey;
+        }
+
+        String encrypt(String plaintext) {
+            try {
+                SecretKey key = getKeyFromString(encryptionKey);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+                byte[] iv = new byte[12];
+                SecureRandom random = new SecureRandom();
+                random.nextBytes(iv);
+
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                byte[] cipherText = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+                byte[] combined = new byte[iv.length + cipherText.length];
+                System.arraycopy(iv, 0, combined, 0, iv.length);
+                System.arraycopy(cipherText, 0, combined, iv.length, cipherText.length);
+                return Base64.getEncoder().encodeToString(combined);
+            } catch (Exception e) {
+                throw new SecurityException("Failed to encrypt sensitive data", e);
+            }
+        }
+
+        String decrypt(String encrypted) {
+            try {
+                byte[] decoded = Base64.getDecoder().decode(encrypted);
+                byte[] iv = Arrays.copyOfRange(decoded, 0, 12);
+                byte[] cipherText = Arrays.copyOfRange(decoded, 12, decoded.length);
+
+                SecretKey key = getKeyFromString(encryptionKey);
+                Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+                return new String(cipher.doFinal(cipherText), StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                throw new SecurityException("Failed to decrypt sensitive data", e);
+            }
+        }
+
+        private static SecretKey getKeyFromString(String keyString) {
+            byte[] decodedKey = Base64.getDecoder().decode(keyString);
+            return new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.portability.bot_service.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import com.portability.bot_service.config.EncryptionProperties;
+
+class SensitiveDataEncryptorTest {
+
+    private static final String KEY_V1 = key(1);
+    private static final String KEY_V2 = key(2);
+
+    @Test
+    void decryptsUnprefixedLegacyCiphertexts() throws Exception {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        String legacy = legacyEncrypt(KEY_V1, "1234");
+
+        assertEquals(1, encryptor.keyVersion(legacy));
+        assertEquals("1234", encryptor.decrypt(legacy));
+        assertEquals(List.of("1234"), encryptor.decryptAll(List.of(legacy)));
+    }
+
+    @Test
+    void decryptsLegacyCiphertextsAfterKeyRotation() throws Exception {
+        SensitiveDataEncryptor encryptor = encryptor(null, Map.of(1, KEY_V1, 2, KEY_V2), 2);
+
+        String legacy = legacyEncrypt(KEY_V1, "356938035643809");
+
+        assertEquals("356938035643809", encryptor.decrypt(legacy));
+        assertFalse(encryptor.isCurrent(legacy));
+        String reencrypted = encryptor.reencrypt(legacy);
+        assertTrue(reencrypted.startsWith("v2:"));
+        assertEquals("356938035643809", encryptor.decrypt(reencrypted));
+    }
+
+    @Test
+    void prefixesCiphertextsWithCurrentVersion() {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        String encrypted = encryptor.encrypt("john.doe@example.com");
+
+        assertTrue(encrypted.startsWith("v1:"));
+        assertEquals("v1:", encryptor.getCurrentPrefix());
+        assertEquals(1, encryptor.keyVersion(encrypted));
+        assertTrue(encryptor.isCurrent(encrypted));
+        assertEquals("john.doe@example.com", encryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void decryptsEveryVersionInKeyring() {
+        SensitiveDataEncryptor previous = encryptor(null, Map.of(1, KEY_V1), 1);
+        SensitiveDataEncryptor current = encryptor(null, Map.of(1, KEY_V1, 2, KEY_V2), 2);
+
+        String v1 = previous.encrypt("5512345678");
+        String v2 = current.encrypt("5512345678");
+
+        assertTrue(v1.startsWith("v1:"));
+        assertTrue(v2.startsWith("v2:"));
+        assertEquals(2, current.keyVersion(v2));
+        assertEquals("5512345678", current.decrypt(v1));
+        assertEquals("5512345678", current.decrypt(v2));
+        assertSame(v2, current.reencrypt(v2));
+    }
+
+    @Test
+    void roundTripsValues() {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        for (String value : List.of("1234", "john.doe@example.com", "Calle Niños 5")) {
+            assertEquals(value, encryptor.decrypt(encryptor.encrypt(value)));
+        }
+    }
+
+    @Test
+    void rejectsCiphertextsOfAnotherKey() {
+        String encrypted = encryptor(key(3), Map.of(), 1).encrypt("1234");
+
+        assertThrows(SecurityException.class, () -> encryptor(KEY_V1, Map.of(), 1).decrypt(encrypted));
+    }
+
+    @Test
+    void rejectsCiphertextsOfUnknownVersion() {
+        SensitiveDataEncryptor rotated = encryptor(null, Map.of(3, key(3)), 3);
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        String encrypted = rotated.encrypt("1234");
+
+        assertThrows(SecurityException.class, () -> encryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void rejectsTamperedCiphertexts() {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+        byte[] combined = Base64.getDecoder().decode(encryptor.encrypt("1234").substring(3));
+        combined[combined.length - 1] ^= 1;
+
+        String tampered = "v1:" + Base64.getEncoder().encodeToString(combined);
+
+        assertThrows(SecurityException.class, () -> encryptor.decrypt(tampered));
+    }
+
+    @Test
+    void usesFreshIvPerEncryption() {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        assertNotEquals(encryptor.encrypt("1234"), encryptor.encrypt("1234"));
+    }
+
+    @Test
+    void batchKeepsNullAndEmptyValuesInPlace() {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+
+        List<String> encrypted = encryptor.encryptAll(Arrays.asList("1234", null, "", "Calle Niños 5"));
+
+        assertNull(encrypted.get(1));
+        assertEquals("", encrypted.get(2));
+        assertEquals(Arrays.asList("1234", null, "", "Calle Niños 5"), encryptor.decryptAll(encrypted));
+    }
+
+    @Test
+    void sharesPooledCiphersAcrossThreads() throws Exception {
+        SensitiveDataEncryptor encryptor = encryptor(KEY_V1, Map.of(), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String value = "5512" + i;
+                results.add(executor.submit(() -> value.equals(encryptor.decrypt(encryptor.encrypt(value)))));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(Boolean.TRUE, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void requiresConfiguredKey() {
+        SensitiveDataEncryptor encryptor = encryptor(null, Map.of(), 1);
+
+        assertFalse(encryptor.isEncryptionEnabled());
+        assertNull(encryptor.encrypt(null));
+        assertThrows(IllegalStateException.class, () -> encryptor.encrypt("1234"));
+        assertThrows(IllegalStateException.class, () -> encryptor(null, Map.of(1, KEY_V1), 2));
+    }
+
+    @Test
+    void tellsPlaintextPhonesFromCiphertexts() throws Exception {
+        SensitiveDataEncryptor encryptor = encryptor(null, Map.of(1, KEY_V1, 2, KEY_V2), 2);
+
+        assertTrue(SensitiveDataEncryptor.isPlaintextPhone("5512345678"));
+        assertTrue(SensitiveDataEncryptor.isPlaintextPhone("+52 (55) 1234-5678"));
+        assertFalse(SensitiveDataEncryptor.isPlaintextPhone(encryptor.encrypt("5512345678")));
+        assertFalse(SensitiveDataEncryptor.isPlaintextPhone(legacyEncrypt(KEY_V1, "5512345678")));
+        assertFalse(SensitiveDataEncryptor.isPlaintextPhone(null));
+    }
+
+    private static SensitiveDataEncryptor encryptor(String key, Map<Integer, String> keys, int currentVersion) {
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setKey(key);
+        properties.setKeys(keys);
+        properties.setCurrentVersion(currentVersion);
+        properties.setCipherPoolSize(4);
+        SensitiveDataEncryptor encryptor = new SensitiveDataEncryptor(properties);
+        encryptor.init();
+        return encryptor;
+    }
+
+    // Format written before key versioning: Base64(IV + ciphertext), no prefix
+    private static String legacyEncrypt(String key, String plaintext) throws Exception {
+        byte[] iv = new byte[12];
+        Arrays.fill(iv, (byte) 7);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(key), "AES"),
+                new GCMParameterSpec(128, iv));
+        byte[] cipherText = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+        byte[] combined = new byte[iv.length + cipherText.length];
+        System.arraycopy(iv, 0, combined, 0, iv.length);
+        System.arraycopy(cipherText, 0, combined, iv.length, cipherText.length);
+        return Base64.getEncoder().encodeToString(combined);
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
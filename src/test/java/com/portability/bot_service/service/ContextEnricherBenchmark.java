@@ -0,0 +1,173 @@
+package com.portability.bot_service.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import com.portability.bot_service.config.ContextSummaryProperties;
+import com.portability.bot_service.config.ContextSummaryProperties.Format;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost of ContextEnricher.generateContextSummary per call across context
+ * sizes and formats: unchanged revision (memoized text), a new revision with
+ * one changed field (one section re-rendered) and a new revision with every
+ * field changed (every section re-rendered).
+ *
+ * Run after mvn test-compile with the main method, or
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main ContextEnricherBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextEnricherBenchmark {
+
+    private static final String CONVERSATION = "5512345678";
+    private static final ConversationState STATE = ConversationState.PORTABILITY_NIP_REQUIRED;
+
+    /**
+     * small: customer; medium: customer, address and order; large: every section
+     */
+    @Param({ "small", "medium", "large" })
+    private String size;
+
+    @Param({ "VERBOSE", "COMPACT" })
+    private Format format;
+
+    private StubStateService stateService;
+    private ContextEnricher enricher;
+    private ConversationContext context;
+    private ConversationContext renamed;
+    private ConversationContext changed;
+    private long revision = 1;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        // Logback defaults to DEBUG without a configuration; production logs at INFO
+        ((Logger) LoggerFactory.getLogger(ContextEnricher.class)).setLevel(Level.INFO);
+
+        Map<String, Object> values = values(size);
+        context = ConversationContext.empty().withAll(values);
+        renamed = context.with("customer_first_name", "Mariana");
+        changed = ConversationContext.empty().withAll(changedValues(values));
+
+        ContextSummaryProperties properties = new ContextSummaryProperties();
+        properties.setFormat(format);
+        stateService = new StubStateService();
+        enricher = new ContextEnricher(stateService, properties, new SimpleMeterRegistry());
+
+        stateService.context = context.withRevision(revision);
+        enricher.generateContextSummary(CONVERSATION, STATE);
+    }
+
+    @Benchmark
+    public String unchangedRevision() {
+        return enricher.generateContextSummary(CONVERSATION, STATE);
+    }
+
+    @Benchmark
+    public String oneFieldChanged() {
+        flip = !flip;
+        stateService.context = (flip ? renamed : context).withRevision(++revision);
+        return enricher.generateContextSummary(CONVERSATION, STATE);
+    }
+
+    @Benchmark
+    public String everyFieldChanged() {
+        flip = !flip;
+        stateService.context = (flip ? changed : context).withRevision(++revision);
+        return enricher.generateContextSummary(CONVERSATION, STATE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ContextEnricherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static Map<String, Object> values(String size) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("customer_id", 1042L);
+        values.put("customer_first_name", "María");
+        values.put("customer_last_name", "González");
+        values.put("customer_email", "maria.gonzalez@example.com");
+        values.put("customer_phone", "5512345678");
+        if (size.equals("small")) {
+            return values;
+        }
+        values.put("address_id", 311L);
+        values.put("address_street", "Av. Insurgentes Sur");
+        values.put("address_number", "1457");
+        values.put("address_district", "Benito Juárez");
+        values.put("address_postal_code", "03920");
+        values.put("order_id", "ORD-88412");
+        values.put("order_product_id", "PLAN-ILIM-299");
+        values.put("order_status", "PAID");
+        if (size.equals("medium")) {
+            return values;
+        }
+        values.put("checkout_session_id", "cs_live_a1B2c3D4e5F6g7H8");
+        values.put("payment_completed", true);
+        values.put("portability_id", 5531L);
+        values.put("portability_phone", "v1:Q2lwaGVydGV4dC1waG9uZQ==");
+        values.put("portability_status", "WAITING_NIP");
+        values.put("portability_imei", "v1:Q2lwaGVydGV4dC1pbWVp");
+        values.put("sim_card_icc", "v1:Q2lwaGVydGV4dC1pY2M=");
+        values.put("imei_checked", "356938035643809");
+        values.put("imei_compatible", true);
+        values.put("last_error", "Timeout creating checkout session");
+        values.put("failed_tool", "createCheckout");
+        values.put("error_count", 1);
+        return values;
+    }
+
+    private static Map<String, Object> changedValues(Map<String, Object> values) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        values.forEach((key, value) -> changed.put(key, switch (value) {
+            case Long number -> number + 1;
+            case Integer number -> number + 1;
+            case Boolean flag -> !flag;
+            default -> value + "2";
+        }));
+        return changed;
+    }
+
+    private static class StubStateService extends ConversationStateService {
+
+        private ConversationContext context;
+
+        StubStateService() {
+            super(null, null, null, null, null);
+        }
+
+        @Override
+        public ConversationContext getContext(String conversationId) {
+            return context;
+        }
+    }
+}
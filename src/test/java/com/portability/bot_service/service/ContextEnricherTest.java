@@ -0,0 +1,160 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.portability.bot_service.config.ContextSummaryProperties;
+import com.portability.bot_service.config.ContextSummaryProperties.Format;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.enm.ContextSection;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ContextEnricherTest {
+
+    private static final String CONVERSATION = "5512345678";
+
+    private final StubStateService stateService = new StubStateService();
+    private final ContextSummaryProperties properties = new ContextSummaryProperties();
+    private final ContextEnricher enricher = new ContextEnricher(stateService, properties, new SimpleMeterRegistry());
+
+    @Test
+    void returnsMemoizedSummaryForSameRevision() {
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 7L, "customer_first_name", "John")));
+        String first = enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+
+        // Same revision: the stored context is not read again
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 8L)));
+
+        assertSame(first, enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION));
+        assertTrue(first.contains("customer_id: 7"));
+    }
+
+    @Test
+    void rendersAgainForNewerRevision() {
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 7L)));
+        String first = enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+
+        stateService.put(CONVERSATION, context(2, Map.of("customer_id", 7L, "order_id", "P1")));
+        String second = enricher.generateContextSummary(CONVERSATION, ConversationState.PRODUCT_SELECTED);
+
+        assertNotSame(first, second);
+        assertFalse(first.contains("order_id: P1"));
+        assertTrue(second.contains("order_id: P1"));
+    }
+
+    @Test
+    void incrementalSummaryMatchesFullRendering() {
+        properties.setSections(Map.of(ConversationState.PAYMENT_PENDING,
+                List.of(ContextSection.ORDER, ContextSection.CHECKOUT)));
+        Map<String, Object> values = new HashMap<>();
+        values.put("customer_id", 7L);
+        values.put("customer_first_name", "John");
+        values.put("address_id", 4L);
+
+        for (Format format : Format.values()) {
+            properties.setFormat(format);
+            long revision = 0;
+            for (Map.Entry<String, Object> update : List.of(
+                    Map.entry("order_id", (Object) "P1"),
+                    Map.entry("checkout_session_id", (Object) "cs_1"),
+                    Map.entry("customer_first_name", (Object) "Jane"),
+                    Map.entry("last_error", (Object) "timeout"),
+                    Map.entry("payment_completed", (Object) true))) {
+                values.put(update.getKey(), update.getValue());
+                stateService.put(CONVERSATION, context(++revision, values));
+
+                String incremental = enricher.generateContextSummary(CONVERSATION, ConversationState.PAYMENT_PENDING);
+                String full = new ContextEnricher(stateService, properties, new SimpleMeterRegistry())
+                        .generateContextSummary(CONVERSATION, ConversationState.PAYMENT_PENDING);
+
+                assertEquals(full, incremental, format + " after " + update.getKey());
+            }
+        }
+    }
+
+    @Test
+    void rendersAgainWhenFormatChanges() {
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 7L)));
+        String verbose = enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+
+        properties.setFormat(Format.COMPACT);
+        String compact = enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+
+        assertTrue(verbose.contains("customer_id: 7"));
+        assertTrue(compact.startsWith("CONTEXTO"));
+        assertTrue(compact.contains("customer_id=7"));
+    }
+
+    @Test
+    void compactSummaryFollowsStateSections() {
+        properties.setFormat(Format.COMPACT);
+        properties.setSections(Map.of(ConversationState.PAYMENT_PENDING, List.of(ContextSection.CHECKOUT)));
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 7L, "checkout_session_id", "cs_1")));
+
+        String initial = enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+        String payment = enricher.generateContextSummary(CONVERSATION, ConversationState.PAYMENT_PENDING);
+
+        assertTrue(initial.contains("customer_id=7"));
+        assertFalse(payment.contains("customer_id=7"));
+        assertTrue(payment.contains("session_id=cs_1"));
+    }
+
+    @Test
+    void emptyContextHasNoSections() {
+        stateService.put(CONVERSATION, context(1, Map.of("customer_id", 7L)));
+        enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION);
+
+        stateService.put(CONVERSATION, context(2, Map.of()));
+
+        assertFalse(enricher.generateContextSummary(CONVERSATION, ConversationState.INTENT_SELECTION)
+                .contains("customer_id"));
+    }
+
+    @Test
+    void comparesFormatsWithoutStoredContext() {
+        stateService.put(CONVERSATION, null);
+
+        Map<String, Object> comparison = enricher.compareFormats(CONVERSATION);
+
+        assertEquals(0L, comparison.get("revision"));
+        assertEquals(0.0, comparison.get("tokenSavingsPercent"));
+    }
+
+    private static ConversationContext context(long revision, Map<String, ?> values) {
+        return ConversationContext.empty().withAll(values).withRevision(revision);
+    }
+
+    private static class StubStateService extends ConversationStateService {
+
+        private final Map<String, ConversationContext> contexts = new HashMap<>();
+
+        StubStateService() {
+            super(null, null, null, null, null);
+        }
+
+        void put(String conversationId, ConversationContext context) {
+            contexts.put(conversationId, context);
+        }
+
+        @Override
+        public ConversationContext getContext(String conversationId) {
+            return contexts.getOrDefault(conversationId, ConversationContext.empty());
+        }
+
+        @Override
+        public ConversationState getCurrentState(String conversationId) {
+            return ConversationState.INITIAL;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.portability.bot_service.service;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.portability.bot_service.config.EncryptionProperties;
+import com.portability.bot_service.model.dto.AddressResponse;
+import com.portability.bot_service.model.dto.CheckoutSessionResponse;
+import com.portability.bot_service.model.dto.CustomerResponse;
+import com.portability.bot_service.model.dto.OrderResponse;
+import com.portability.bot_service.model.dto.PortabilityResponse;
+import com.portability.bot_service.model.dto.ScrapeResponse;
+import com.portability.bot_service.model.dto.SimCardResponse;
+import com.portability.bot_service.model.enm.PortabiliyStatus;
+import com.portability.bot_service.security.SensitiveDataEncryptor;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Cost of extracting the context values of one tool response with the
+ * compiled extractors of ContextExtractorRegistry, against the tool name
+ * switch with instanceof checks of ContextDataManager it replaced.
+ *
+ * Run after mvn test-compile with the main method, or
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main ContextExtractorRegistryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextExtractorRegistryBenchmark {
+
+    @Param({ "getCustomerByPhoneNumber", "createAddress", "createOrderForSimCardPortabilityPurchase",
+            "updatePortabilityNip", "Create_checkout_session", "unknownTool" })
+    private String tool;
+
+    private ContextExtractorRegistry registry;
+    private LegacyExtractor legacy;
+    private Object response;
+
+    @Setup
+    public void setUp() {
+        // Logback defaults to DEBUG without a configuration; production logs at INFO
+        ((Logger) LoggerFactory.getLogger(ContextExtractorRegistry.class)).setLevel(Level.INFO);
+
+        byte[] key = new byte[32];
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setKey(Base64.getEncoder().encodeToString(key));
+        SensitiveDataEncryptor encryptor = new SensitiveDataEncryptor(properties);
+        ReflectionTestUtils.invokeMethod(encryptor, "init");
+
+        registry = new ContextExtractorRegistry(encryptor);
+        legacy = new LegacyExtractor(encryptor);
+        response = response(tool);
+    }
+
+    @Benchmark
+    public Map<String, Object> extract() {
+        return registry.extract(tool, response);
+    }
+
+    @Benchmark
+    public Map<String, Object> extractLegacy() {
+        return legacy.extract(tool, response);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ContextExtractorRegistryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static Object response(String tool) {
+        return switch (tool) {
+            case "getCustomerByPhoneNumber" ->
+                    new CustomerResponse(7L, "John", "Doe", "john.doe@email.com", "5512345678");
+            case "createAddress" -> {
+                AddressResponse address = new AddressResponse();
+                address.setId(4L);
+                address.setCustomerId(7L);
+                address.setStreet("Av. Reforma");
+                address.setDistrict("Centro");
+                address.setPostalCode("06000");
+                yield address;
+            }
+            case "createOrderForSimCardPortabilityPurchase" -> new OrderResponse("P17379827490001", 7L, 3L, 11L, 5L,
+                    2L, 9L, LocalDateTime.now(), LocalDateTime.now());
+            case "updatePortabilityNip" -> PortabilityResponse.builder()
+                    .id(12L)
+                    .phoneNumber("5512345678")
+                    .imei("356938035643809")
+                    .portabilityNip("1234")
+                    .portabilityStatus(PortabiliyStatus.STARTED)
+                    .orderId("P17379827490001")
+                    .build();
+            case "Create_checkout_session" ->
+                    new CheckoutSessionResponse("created", "https://checkout.stripe.com/c/pay/cs_test_1234567890", "1");
+            default -> new ScrapeResponse(true, "Compatible");
+        };
+    }
+
+    // ContextDataManager.extractRelevantData before the registry, without its
+    // debug logging; the portability phone is encrypted as it is now
+    private static class LegacyExtractor {
+
+        private final SensitiveDataEncryptor encryptor;
+
+        LegacyExtractor(SensitiveDataEncryptor encryptor) {
+            this.encryptor = encryptor;
+        }
+
+        Map<String, Object> extract(String toolName, Object toolResponse) {
+            Map<String, Object> data = new HashMap<>();
+            if (toolResponse == null) {
+                return data;
+            }
+
+            switch (toolName) {
+                case "registerCustomer":
+                case "getCustomerById":
+                case "getCustomerByEmail":
+                case "getCustomerByPhoneNumber":
+                    if (toolResponse instanceof CustomerResponse customer) {
+                        data.put("customer_id", customer.id());
+                        data.put("customer_first_name", customer.firstName());
+                        data.put("customer_last_name", customer.lastName());
+                        data.put("customer_email", customer.email());
+                    }
+                    break;
+
+                case "createAddress":
+                    if (toolResponse instanceof AddressResponse address) {
+                        data.put("address_id", address.getId());
+                        data.put("address_district", address.getDistrict());
+                        data.put("address_postal_code", address.getPostalCode());
+                    }
+                    break;
+
+                case "createNewOrderForSimCardPurchase":
+                case "createOrderForSimCardPortabilityPurchase":
+                    if (toolResponse instanceof OrderResponse order) {
+                        data.put("order_id", order.id());
+                        data.put("order_product_id", order.productId());
+                    }
+                    break;
+
+                case "getPortabilityByPhoneNumber":
+                case "updateImei":
+                case "updatePortabilityNip":
+                    if (toolResponse instanceof PortabilityResponse portability) {
+                        data.put("portability_id", portability.getId());
+                        if (portability.getPhoneNumber() != null) {
+                            data.put("portability_phone", encryptor.encrypt(portability.getPhoneNumber()));
+                        }
+                        if (portability.getImei() != null) {
+                            data.put("portability_imei", encryptor.encrypt(portability.getImei()));
+                        }
+                        if (portability.getPortabilityNip() != null) {
+                            data.put("portability_nip", encryptor.encrypt(portability.getPortabilityNip()));
+                        }
+                        data.put("portability_order_id", portability.getOrderId());
+                    }
+                    break;
+
+                case "getSimIcc":
+                    if (toolResponse instanceof SimCardResponse simCardResponse) {
+                        data.put("sim_card_icc", encryptor.encrypt(simCardResponse.icc()));
+                    }
+                    break;
+
+                case "Create_checkout_session":
+                    if (toolResponse instanceof CheckoutSessionResponse checkout) {
+                        data.put("checkout_session_url", encryptor.encrypt(checkout.stripe_session_url()));
+                        data.put("payment_completed", false);
+                    }
+                    break;
+
+                case "scrapeImeiCompatibility":
+                    if (toolResponse instanceof ScrapeResponse scrape) {
+                        data.put("imei_compatible", scrape.compatibility());
+                        data.put("imei_compatibility_message", scrape.message());
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+            return data;
+        }
+    }
+}
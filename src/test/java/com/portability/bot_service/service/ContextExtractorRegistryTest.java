@@ -0,0 +1,174 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.portability.bot_service.config.EncryptionProperties;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.dto.AddressResponse;
+import com.portability.bot_service.model.dto.CheckoutSessionResponse;
+import com.portability.bot_service.model.dto.CustomerResponse;
+import com.portability.bot_service.model.dto.OrderResponse;
+import com.portability.bot_service.model.dto.PortabilityResponse;
+import com.portability.bot_service.model.dto.ScrapeResponse;
+import com.portability.bot_service.model.dto.SimCardResponse;
+import com.portability.bot_service.model.enm.PortabiliyStatus;
+import com.portability.bot_service.security.SensitiveDataEncryptor;
+
+class ContextExtractorRegistryTest {
+
+    private final SensitiveDataEncryptor encryptor = encryptor();
+    private final ContextExtractorRegistry registry = new ContextExtractorRegistry(encryptor);
+
+    @Test
+    void extractsCustomer() {
+        CustomerResponse response = new CustomerResponse(7L, "John", "Doe", "john.doe@email.com", "5512345678");
+
+        Map<String, Object> data = registry.extract("registerCustomer", response);
+
+        assertEquals(Map.of(
+                "customer_id", 7L,
+                "customer_first_name", "John",
+                "customer_last_name", "Doe",
+                "customer_email", "john.doe@email.com"), data);
+        assertEquals(data, registry.extract("getCustomerByPhoneNumber", response));
+    }
+
+    @Test
+    void extractsOrder() {
+        OrderResponse response = new OrderResponse("P17379827490001", 7L, 3L, 11L, 5L, 2L, 9L,
+                LocalDateTime.now(), LocalDateTime.now());
+
+        assertEquals(Map.of("order_id", "P17379827490001", "order_product_id", 3L),
+                registry.extract("createOrderForSimCardPortabilityPurchase", response));
+    }
+
+    @Test
+    void extractsAddress() {
+        AddressResponse response = new AddressResponse();
+        response.setId(4L);
+        response.setCustomerId(7L);
+        response.setStreet("Av. Reforma");
+        response.setDistrict("Centro");
+        response.setPostalCode("06000");
+
+        assertEquals(Map.of("address_id", 4L, "address_district", "Centro", "address_postal_code", "06000"),
+                registry.extract("createAddress", response));
+    }
+
+    @Test
+    void extractsPortabilityEncryptingPhoneImeiAndNip() {
+        PortabilityResponse response = PortabilityResponse.builder()
+                .id(12L)
+                .phoneNumber("5512345678")
+                .imei("356938035643809")
+                .portabilityNip("1234")
+                .portabilityStatus(PortabiliyStatus.STARTED)
+                .orderId("P17379827490001")
+                .build();
+
+        Map<String, Object> data = registry.extract("updatePortabilityNip", response);
+
+        assertEquals(12L, data.get("portability_id"));
+        assertEncrypted("5512345678", data.get("portability_phone"));
+        assertEquals("P17379827490001", data.get("portability_order_id"));
+        assertEncrypted("356938035643809", data.get("portability_imei"));
+        assertEncrypted("1234", data.get("portability_nip"));
+        assertEquals(5, data.size());
+    }
+
+    @Test
+    void skipsNullEncryptedFields() {
+        PortabilityResponse response = PortabilityResponse.builder().id(12L).imei("356938035643809").build();
+
+        Map<String, Object> data = registry.extract("updateImei", response);
+
+        assertEncrypted("356938035643809", data.get("portability_imei"));
+        assertFalse(data.containsKey("portability_nip"));
+        assertFalse(data.containsKey("portability_phone"));
+    }
+
+    @Test
+    void extractsImeiCompatibility() {
+        assertEquals(Map.of("imei_compatible", true, "imei_compatibility_message", "Compatible"),
+                registry.extract("scrapeImeiCompatibility", new ScrapeResponse(true, "Compatible")));
+    }
+
+    @Test
+    void extractsCheckoutSessionWithDerivedPaymentFlag() {
+        String url = "https://checkout.stripe.com/c/pay/cs_test_1234567890";
+        CheckoutSessionResponse response = new CheckoutSessionResponse("created", url, "1");
+
+        Map<String, Object> data = registry.extract("Create_checkout_session", response);
+
+        assertEncrypted(url, data.get("checkout_session_url"));
+        assertEquals(false, data.get("payment_completed"));
+        assertEquals(2, data.size());
+    }
+
+    @Test
+    void extractsEncryptedSimIcc() {
+        SimCardResponse response = new SimCardResponse(1L, "89570000000000000001", true, "PORT-12345",
+                "PHYSICAL", "Movistar", 1L, "Basic Prepaid Plan");
+
+        Map<String, Object> data = registry.extract("getSimIcc", response);
+
+        assertEncrypted("89570000000000000001", data.get("sim_card_icc"));
+        assertEquals(1, data.size());
+    }
+
+    @Test
+    void ignoresToolsNotDeclaredOnResponse() {
+        CustomerResponse response = new CustomerResponse(7L, "John", "Doe", "john.doe@email.com", "5512345678");
+
+        assertTrue(registry.extract("createAddress", response).isEmpty());
+        assertTrue(registry.extract("getSimIcc", new ScrapeResponse(true, "Compatible")).isEmpty());
+    }
+
+    @Test
+    void ignoresNullAndUnannotatedResponses() {
+        assertTrue(registry.extract("registerCustomer", null).isEmpty());
+        assertTrue(registry.extract("registerCustomer", "plain text").isEmpty());
+        assertTrue(registry.extract("registerCustomer", Map.of("customer_id", 7L)).isEmpty());
+    }
+
+    @Test
+    void extractedKeysApplyToContext() {
+        Map<String, Object> data = new HashMap<>(registry.extract("getCustomerById",
+                new CustomerResponse(7L, "John", "Doe", "john.doe@email.com", null)));
+        data.putAll(registry.extract("createNewOrderForSimCardPurchase", new OrderResponse("P1", 7L, 3L,
+                null, null, null, null, null, null)));
+
+        ConversationContext context = ConversationContext.empty().withAll(data);
+
+        assertEquals("John Doe", context.get("customer_name"));
+        assertEquals("P1", context.get("last_order_id"));
+        assertTrue(context.extra().isEmpty());
+    }
+
+    private void assertEncrypted(String plaintext, Object value) {
+        String ciphertext = (String) value;
+        assertTrue(ciphertext.startsWith(encryptor.getCurrentPrefix()));
+        assertEquals(plaintext, encryptor.decrypt(ciphertext));
+    }
+
+    private static SensitiveDataEncryptor encryptor() {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) 1);
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setKey(Base64.getEncoder().encodeToString(key));
+        SensitiveDataEncryptor encryptor = new SensitiveDataEncryptor(properties);
+        ReflectionTestUtils.invokeMethod(encryptor, "init");
+        return encryptor;
+    }
+}
@@ -0,0 +1,146 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+import com.portability.bot_service.config.ContextSummaryProperties;
+import com.portability.bot_service.config.ContextSummaryProperties.Format;
+import com.portability.bot_service.model.context.ConversationContext;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Renders fixture conversations (one per stage of the portability flow) in
+ * both summary formats with the configured sections, and counts their tokens
+ * with the tokenizer of the chat model. Logs the comparison table.
+ */
+class ContextSummaryFormatComparisonTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextSummaryFormatComparisonTest.class);
+
+    private record Fixture(String name, ConversationState state, Map<String, Object> values) {
+    }
+
+    private static final List<Fixture> FIXTURES = List.of(
+            new Fixture("registered customer", ConversationState.INTENT_SELECTION, values(
+                    "customer_id", 1042L, "customer_first_name", "María", "customer_last_name", "González",
+                    "customer_email", "maria.gonzalez@example.com", "customer_phone", "5512345678")),
+            new Fixture("product and address", ConversationState.PRODUCT_SELECTED, values(
+                    "customer_id", 1042L, "customer_first_name", "María", "customer_last_name", "González",
+                    "customer_email", "maria.gonzalez@example.com", "customer_phone", "5512345678",
+                    "address_id", 311L, "address_street", "Av. Insurgentes Sur", "address_number", "1457",
+                    "address_district", "Benito Juárez", "address_postal_code", "03920",
+                    "address_reference", "Edificio azul, depto 4B",
+                    "order_id", "ORD-88412", "order_product_id", "PLAN-ILIM-299", "order_status", "CREATED")),
+            new Fixture("imei check", ConversationState.IMEI_VALIDATED, values(
+                    "customer_id", 1042L, "customer_first_name", "María", "customer_last_name", "González",
+                    "order_id", "ORD-88412", "order_product_id", "PLAN-ILIM-299", "order_status", "CREATED",
+                    "portability_id", 5531L, "portability_phone", "5587654321",
+                    "portability_status", "PENDING", "portability_imei", "356938035643809",
+                    "imei_checked", "356938035643809", "imei_compatible", true)),
+            new Fixture("payment pending", ConversationState.PAYMENT_PENDING, values(
+                    "customer_id", 1042L, "customer_first_name", "María", "customer_last_name", "González",
+                    "customer_email", "maria.gonzalez@example.com",
+                    "address_id", 311L, "address_full", "Av. Insurgentes Sur 1457, Benito Juárez, 03920",
+                    "order_id", "ORD-88412", "order_product_id", "PLAN-ILIM-299", "order_status", "CREATED",
+                    "checkout_session_id", "cs_live_a1B2c3D4e5F6g7H8",
+                    "checkout_session_url", "https://checkout.example.com/pay/cs_live_a1B2c3D4e5F6g7H8",
+                    "payment_completed", false,
+                    "last_error", "Timeout creating checkout session", "failed_tool", "createCheckout",
+                    "error_count", 1)),
+            new Fixture("nip required", ConversationState.PORTABILITY_NIP_REQUIRED, values(
+                    "customer_id", 1042L, "customer_first_name", "María", "customer_last_name", "González",
+                    "customer_email", "maria.gonzalez@example.com", "customer_phone", "5512345678",
+                    "address_id", 311L, "address_full", "Av. Insurgentes Sur 1457, Benito Juárez, 03920",
+                    "order_id", "ORD-88412", "order_product_id", "PLAN-ILIM-299", "order_status", "PAID",
+                    "checkout_session_id", "cs_live_a1B2c3D4e5F6g7H8", "payment_completed", true,
+                    "portability_id", 5531L, "portability_phone", "5587654321",
+                    "portability_status", "WAITING_NIP", "portability_imei", "356938035643809",
+                    "sim_card_icc", "8952140061234567890F")));
+
+    @Test
+    void compactSummaryUsesFewerTokensForEveryFixture() throws IOException {
+        ContextSummaryProperties properties = loadSummaryProperties();
+        TokenCountEstimator tokenizer = new JTokkitTokenCountEstimator();
+        StubStateService stateService = new StubStateService();
+
+        StringBuilder table = new StringBuilder(String.format("%n%-22s %-28s %8s %8s %8s%n",
+                "fixture", "state", "verbose", "compact", "saved"));
+        long verboseTotal = 0;
+        long compactTotal = 0;
+        for (Fixture fixture : FIXTURES) {
+            stateService.put(fixture.name(), ConversationContext.empty().withAll(fixture.values()).withRevision(1));
+
+            Map<Format, Integer> tokens = new EnumMap<>(Format.class);
+            for (Format format : Format.values()) {
+                properties.setFormat(format);
+                String summary = new ContextEnricher(stateService, properties, new SimpleMeterRegistry())
+                        .generateContextSummary(fixture.name(), fixture.state());
+                tokens.put(format, tokenizer.estimate(summary));
+            }
+
+            int verbose = tokens.get(Format.VERBOSE);
+            int compact = tokens.get(Format.COMPACT);
+            verboseTotal += verbose;
+            compactTotal += compact;
+            table.append(String.format("%-22s %-28s %8d %8d %7.1f%%%n",
+                    fixture.name(), fixture.state(), verbose, compact, 100.0 * (verbose - compact) / verbose));
+
+            assertTrue(compact < verbose, fixture.name() + ": " + compact + " compact vs " + verbose + " verbose tokens");
+        }
+        table.append(String.format("%-51s %8d %8d %7.1f%%", "total", verboseTotal, compactTotal,
+                100.0 * (verboseTotal - compactTotal) / verboseTotal));
+        logger.info("Context summary tokens per format:{}", table);
+    }
+
+    private static ContextSummaryProperties loadSummaryProperties() throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+                .load("application.yml", new ClassPathResource("application.yml"));
+        return new Binder(ConfigurationPropertySources.from(sources))
+                .bind("context.summary", ContextSummaryProperties.class)
+                .get();
+    }
+
+    private static Map<String, Object> values(Object... keysAndValues) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return values;
+    }
+
+    private static class StubStateService extends ConversationStateService {
+
+        private final Map<String, ConversationContext> contexts = new LinkedHashMap<>();
+
+        StubStateService() {
+            super(null, null, null, null, null);
+        }
+
+        void put(String conversationId, ConversationContext context) {
+            contexts.put(conversationId, context);
+        }
+
+        @Override
+        public ConversationContext getContext(String conversationId) {
+            return contexts.get(conversationId);
+        }
+    }
+}
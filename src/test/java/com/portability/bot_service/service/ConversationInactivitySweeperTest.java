@@ -0,0 +1,128 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.portability.bot_service.PostgresTestSupport;
+import com.portability.bot_service.config.InactivityProperties;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.repository.ChatConversationRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ConversationInactivitySweeperTest extends PostgresTestSupport {
+
+    private static final LocalDateTime IDLE = LocalDateTime.now().minusDays(8).withNano(0);
+
+    @Autowired
+    private ChatConversationRepository conversationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final InactivityProperties properties = new InactivityProperties();
+    private final StubEventService eventService = new StubEventService();
+    private final StubConversationCache conversationCache = new StubConversationCache();
+
+    @Test
+    void abandonsIdleActiveConversationsInBatchesRememberingTheirState() {
+        insertConversation("5511111111", ConversationState.PAYMENT_PENDING, true, IDLE);
+        insertConversation("5522222222", ConversationState.PAYMENT_PENDING, true, IDLE.plusMinutes(1));
+        insertConversation("5533333333", ConversationState.IMEI_VALIDATED, true, IDLE.plusMinutes(2));
+        insertConversation("5544444444", ConversationState.PAYMENT_PENDING, true, LocalDateTime.now());
+        insertConversation("5555555555", ConversationState.PAYMENT_PENDING, false, IDLE);
+        properties.setBatchSize(1);
+        properties.setPauseMs(0);
+
+        Map<ConversationState, Integer> abandoned = sweeper().sweep();
+
+        assertEquals(Map.of(ConversationState.PAYMENT_PENDING, 2, ConversationState.IMEI_VALIDATED, 1), abandoned);
+        assertEquals(List.of("ABANDONED", "PAYMENT_PENDING", false, IDLE), row("5511111111"));
+        assertEquals(List.of("ABANDONED", "IMEI_VALIDATED", false, IDLE.plusMinutes(2)), row("5533333333"));
+        assertEquals("PAYMENT_PENDING", row("5544444444").get(0));
+        assertEquals("PAYMENT_PENDING", row("5555555555").get(0));
+        assertEquals(3, eventService.transitions);
+        assertEquals(List.of("5511111111", "5522222222", "5533333333"),
+                conversationCache.invalidated.stream().sorted().toList());
+    }
+
+    @Test
+    void skipsStatesWithZeroIdleTimeout() {
+        insertConversation("5511111111", ConversationState.PAYMENT_PENDING, true, IDLE);
+        insertConversation("5522222222", ConversationState.COMPLETED, true, IDLE);
+        properties.getIdleTimeouts().put(ConversationState.PAYMENT_PENDING, Duration.ZERO);
+
+        assertEquals(Map.of(ConversationState.COMPLETED, 1), sweeper().sweep());
+        assertEquals("PAYMENT_PENDING", row("5511111111").get(0));
+    }
+
+    private ConversationInactivitySweeper sweeper() {
+        return new ConversationInactivitySweeper(conversationRepository, transactionManager, eventService,
+                conversationCache, null, properties);
+    }
+
+    private void insertConversation(String conversationId, ConversationState state, boolean active,
+            LocalDateTime updatedAt) {
+        jdbcTemplate.update("""
+                INSERT INTO chat_conversations (conversation_id, current_state, is_active, updated_at)
+                VALUES (?, ?, ?, ?)
+                """, conversationId, state.name(), active, updatedAt);
+    }
+
+    // current_state, abandoned_from_state, is_active, updated_at
+    private List<Object> row(String conversationId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT current_state, abandoned_from_state, is_active, updated_at
+                FROM chat_conversations WHERE conversation_id = ?
+                """, (rs, rowNum) -> {
+            List<Object> values = new ArrayList<>();
+            values.add(rs.getString(1));
+            values.add(rs.getString(2));
+            values.add(rs.getBoolean(3));
+            values.add(rs.getTimestamp(4).toLocalDateTime());
+            return values;
+        }, conversationId);
+    }
+
+    private static class StubEventService extends ConversationEventService {
+
+        private int transitions;
+
+        StubEventService() {
+            super(null, null, null, new SimpleMeterRegistry());
+        }
+
+        @Override
+        public void recordTransitions(List<Object[]> previousStates, ConversationState toState, String source) {
+            transitions += previousStates.size();
+        }
+    }
+
+    private static class StubConversationCache extends ConversationCache {
+
+        private final List<String> invalidated = new ArrayList<>();
+
+        StubConversationCache() {
+            super(new SimpleMeterRegistry(), null, 1024, 1, 1);
+        }
+
+        @Override
+        public void invalidate(Collection<String> conversationIds) {
+            invalidated.addAll(conversationIds);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+import com.portability.bot_service.config.StateMachineProperties;
+import com.portability.bot_service.model.enm.ConversationState;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ConversationStateMachineTest {
+
+    private static final List<String> CONFIG_FILES = List.of("application.yml", "application-prod.yml");
+
+    @Test
+    void configuredRulesMatchBaselineTransitions() throws IOException {
+        for (String file : CONFIG_FILES) {
+            ConversationStateMachine stateMachine = new ConversationStateMachine(load(file), new SimpleMeterRegistry());
+            for (ConversationState from : ConversationState.values()) {
+                for (ConversationState to : ConversationState.values()) {
+                    assertEquals(baselineIsValid(from, to), stateMachine.isAllowed(from, to),
+                            file + ": " + from + " -> " + to);
+                    assertEquals(baselineIsValid(from, to), stateMachine.isAllowed(from, to, null),
+                            file + ": " + from + " -> " + to + " without resume state");
+                }
+            }
+        }
+    }
+
+    @Test
+    void configuredRanksMatchBaselineOrdinals() throws IOException {
+        for (String file : CONFIG_FILES) {
+            ConversationStateMachine stateMachine = new ConversationStateMachine(load(file), new SimpleMeterRegistry());
+            for (ConversationState state : ConversationState.values()) {
+                assertEquals(baselineOrdinal(state), stateMachine.getRank(state), file + ": " + state);
+            }
+        }
+    }
+
+    @Test
+    void defaultsMatchBaseline() {
+        ConversationStateMachine stateMachine =
+                new ConversationStateMachine(new StateMachineProperties(), new SimpleMeterRegistry());
+
+        for (ConversationState from : ConversationState.values()) {
+            assertEquals(baselineOrdinal(from), stateMachine.getRank(from), from.name());
+            for (ConversationState to : ConversationState.values()) {
+                assertEquals(baselineIsValid(from, to), stateMachine.isAllowed(from, to), from + " -> " + to);
+            }
+        }
+    }
+
+    @Test
+    void configuredRankOverridesOnlyThatState() {
+        StateMachineProperties properties = bind(Map.of(
+                "conversation.state-machine.ranks.SIM_SHIPPED", "75"));
+        ConversationStateMachine stateMachine = new ConversationStateMachine(properties, new SimpleMeterRegistry());
+
+        for (ConversationState state : ConversationState.values()) {
+            int expected = state == ConversationState.SIM_SHIPPED ? 75 : baselineOrdinal(state);
+            assertEquals(expected, stateMachine.getRank(state), state.name());
+        }
+        assertEquals(8, properties.getRules().size());
+    }
+
+    @Test
+    void configuredRulesReplaceDefaultRules() {
+        StateMachineProperties properties = bind(Map.of(
+                "conversation.state-machine.rules[0].from", "COMPLETED",
+                "conversation.state-machine.rules[0].allow", "false",
+                "conversation.state-machine.rules[1].when", "ANY"));
+        ConversationStateMachine stateMachine = new ConversationStateMachine(properties, new SimpleMeterRegistry());
+
+        assertEquals(2, properties.getRules().size());
+        assertFalse(stateMachine.isAllowed(ConversationState.COMPLETED, ConversationState.INITIAL));
+        assertTrue(stateMachine.isAllowed(ConversationState.ABANDONED, ConversationState.PAYMENT_PENDING));
+        assertFalse(stateMachine.isAllowed(ConversationState.COMPLETED, ConversationState.COMPLETED));
+    }
+
+    @Test
+    void abandonedResumesOnlyItsPreviousState() throws IOException {
+        ConversationStateMachine stateMachine =
+                new ConversationStateMachine(load("application.yml"), new SimpleMeterRegistry());
+
+        for (ConversationState resumeState : ConversationState.values()) {
+            for (ConversationState to : ConversationState.values()) {
+                boolean expected = to == resumeState || baselineIsValid(ConversationState.ABANDONED, to);
+                assertEquals(expected, stateMachine.isAllowed(ConversationState.ABANDONED, to, resumeState),
+                        "ABANDONED -> " + to + " resuming " + resumeState);
+            }
+        }
+        assertTrue(stateMachine.isAllowed(ConversationState.ABANDONED,
+                ConversationState.PORTABILITY_IN_PROGRESS, ConversationState.PORTABILITY_IN_PROGRESS));
+        assertFalse(stateMachine.isAllowed(ConversationState.ABANDONED,
+                ConversationState.PORTABILITY_IN_PROGRESS, ConversationState.PAYMENT_PENDING));
+    }
+
+    @Test
+    void resumeStateDoesNotWidenOtherStates() throws IOException {
+        ConversationStateMachine stateMachine =
+                new ConversationStateMachine(load("application.yml"), new SimpleMeterRegistry());
+
+        for (ConversationState from : ConversationState.values()) {
+            if (from == ConversationState.ABANDONED) {
+                continue;
+            }
+            for (ConversationState to : ConversationState.values()) {
+                assertEquals(baselineIsValid(from, to), stateMachine.isAllowed(from, to, to),
+                        from + " -> " + to + " resuming " + to);
+            }
+        }
+    }
+
+    @Test
+    void failsWithoutRankForEveryState() throws IOException {
+        StateMachineProperties properties = load("application.yml");
+        properties.getRanks().remove(ConversationState.SIM_SHIPPED);
+
+        assertThrows(IllegalStateException.class,
+                () -> new ConversationStateMachine(properties, new SimpleMeterRegistry()));
+    }
+
+    private static StateMachineProperties load(String file) throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader().load(file, new ClassPathResource(file));
+        return new Binder(ConfigurationPropertySources.from(sources))
+                .bind("conversation.state-machine", StateMachineProperties.class)
+                .get();
+    }
+
+    private static StateMachineProperties bind(Map<String, String> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bind("conversation.state-machine", StateMachineProperties.class)
+                .get();
+    }
+
+    // Transition rules as hard-coded in ConversationStateService before they were compiled from configuration
+
+    private static boolean baselineIsValid(ConversationState from, ConversationState to) {
+        if (from == ConversationState.ERROR_STATE || from == ConversationState.INITIAL) {
+            return true;
+        }
+        if (to == ConversationState.ERROR_STATE || to == ConversationState.BLOCKED) {
+            return true;
+        }
+        if (from == to) {
+            return true;
+        }
+        if (from == ConversationState.COMPLETED || from == ConversationState.ABANDONED
+                || from == ConversationState.BLOCKED) {
+            return to == ConversationState.INITIAL || to == ConversationState.INTENT_SELECTION;
+        }
+        int fromOrdinal = baselineOrdinal(from);
+        int toOrdinal = baselineOrdinal(to);
+        return toOrdinal > fromOrdinal || toOrdinal >= fromOrdinal - 20;
+    }
+
+    private static int baselineOrdinal(ConversationState state) {
+        return switch (state) {
+            case INITIAL -> 0;
+            case CUSTOMER_REGISTRATION -> 5;
+            case INTENT_SELECTION -> 10;
+            case PRODUCT_SELECTED -> 20;
+            case IMEI_REQUIRED -> 30;
+            case IMEI_VALIDATED -> 35;
+            case ADDRESS_REQUIRED -> 40;
+            case PAYMENT_PENDING -> 50;
+            case PAYMENT_CONFIRMED -> 60;
+            case SIM_SHIPPED -> 70;
+            case PORTABILITY_WAIT_SIM -> 80;
+            case PORTABILITY_NIP_REQUIRED -> 85;
+            case PORTABILITY_SIM_ACTIVATION -> 90;
+            case PORTABILITY_IN_PROGRESS -> 95;
+            case PORTABILITY_COMPLETED -> 100;
+            case COMPLETED -> 110;
+            case BLOCKED -> 900;
+            case ERROR_STATE -> 950;
+            case ABANDONED -> 999;
+        };
+    }
+}
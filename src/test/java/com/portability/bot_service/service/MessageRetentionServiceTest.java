@@ -0,0 +1,183 @@
+package com.portability.bot_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.portability.bot_service.PostgresTestSupport;
+import com.portability.bot_service.config.MessageRetentionProperties;
+import com.portability.bot_service.config.MessageRetentionProperties.Rule;
+import com.portability.bot_service.model.enm.ConversationState;
+import com.portability.bot_service.model.enm.MessageType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MessageRetentionServiceTest extends PostgresTestSupport {
+
+    private static final LocalDateTime EXPIRED = LocalDateTime.now().minusDays(40);
+    private static final LocalDateTime RECENT = LocalDateTime.now().minusDays(2);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final MessageRetentionProperties properties = new MessageRetentionProperties();
+    private final StubConversationCache conversationCache = new StubConversationCache();
+    private final StubRefMigrationService refMigrationService = new StubRefMigrationService();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS chat_messages_default PARTITION OF chat_messages DEFAULT");
+        properties.setPauseMs(0);
+    }
+
+    @Test
+    void deletesExpiredMessagesOfRuleStatesAndDecrementsCounters() {
+        long completed = insertConversation("5511111111", ConversationState.COMPLETED);
+        long active = insertConversation("5522222222", ConversationState.PAYMENT_PENDING);
+        insertMessage(completed, "5511111111", MessageType.USER, "nip 1234", EXPIRED, true);
+        insertMessage(completed, "5511111111", MessageType.ASSISTANT, "ok", EXPIRED, true);
+        insertMessage(completed, "5511111111", MessageType.USER, "hola", RECENT, true);
+        insertMessage(active, "5522222222", MessageType.USER, "imei", EXPIRED, true);
+        properties.setRules(List.of(rule(List.of(MessageType.USER), List.of(ConversationState.COMPLETED))));
+
+        Map<String, Long> deleted = service().purgeExpiredMessages();
+
+        assertEquals(Map.of("USER/COMPLETED/30d", 1L), deleted);
+        assertEquals(List.of("ASSISTANT", "USER"), messageTypes(completed));
+        assertEquals(List.of("USER"), messageTypes(active));
+        assertCounters(completed, 2, 1, 6);
+        assertCounters(active, 1, 1, 4);
+        assertEquals(List.of("5511111111"), conversationCache.invalidated);
+    }
+
+    @Test
+    void walksExpiredMessagesInBatches() {
+        long id = insertConversation("5511111111", ConversationState.INITIAL);
+        for (int i = 0; i < 5; i++) {
+            insertMessage(id, "5511111111", MessageType.USER, "m" + i, EXPIRED.plusMinutes(i), true);
+        }
+        insertMessage(id, "5511111111", MessageType.USER, "kept", RECENT, true);
+        properties.setBatchSize(2);
+        properties.setRules(List.of(rule(List.of(), List.of())));
+
+        assertEquals(Map.of("ALL/ALL/30d", 5L), service().purgeExpiredMessages());
+        assertCounters(id, 1, 1, 4);
+    }
+
+    @Test
+    void matchesConversationsByIdWhileRefBackfillIsIncomplete() {
+        refMigrationService.complete = false;
+        long completed = insertConversation("5511111111", ConversationState.COMPLETED);
+        long active = insertConversation("5522222222", ConversationState.PAYMENT_PENDING);
+        insertMessage(completed, "5511111111", MessageType.USER, "nip 1234", EXPIRED, false);
+        insertMessage(active, "5522222222", MessageType.USER, "imei", EXPIRED, false);
+        properties.setRules(List.of(rule(List.of(MessageType.USER), List.of(ConversationState.COMPLETED))));
+
+        assertEquals(Map.of("USER/COMPLETED/30d", 1L), service().purgeExpiredMessages());
+        assertEquals(List.of(), messageTypes(completed));
+        assertEquals(List.of("USER"), messageTypes(active));
+        assertCounters(completed, 0, 0, 0);
+        assertCounters(active, 1, 1, 4);
+        assertEquals(List.of("5511111111"), conversationCache.invalidated);
+    }
+
+    @Test
+    void keepsEverythingWithoutRules() {
+        long id = insertConversation("5511111111", ConversationState.COMPLETED);
+        insertMessage(id, "5511111111", MessageType.USER, "nip 1234", EXPIRED, true);
+
+        assertTrue(service().purgeExpiredMessages().isEmpty());
+        assertCounters(id, 1, 1, 8);
+    }
+
+    private MessageRetentionService service() {
+        return new MessageRetentionService(jdbcTemplate, null, conversationCache, properties,
+                new SimpleMeterRegistry(), null, refMigrationService);
+    }
+
+    private static Rule rule(List<MessageType> types, List<ConversationState> states) {
+        Rule rule = new Rule();
+        rule.setTypes(types);
+        rule.setStates(states);
+        rule.setRetentionDays(30);
+        return rule;
+    }
+
+    private long insertConversation(String conversationId, ConversationState state) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO chat_conversations (conversation_id, current_state) VALUES (?, ?) RETURNING id",
+                Long.class, conversationId, state.name());
+    }
+
+    // Inserts the message and counts it on its conversation, as the chat memory does
+    private void insertMessage(long id, String conversationId, MessageType type, String content,
+            LocalDateTime createdAt, boolean withRef) {
+        jdbcTemplate.update("""
+                UPDATE chat_conversations SET
+                    message_count = message_count + 1,
+                    user_message_count = user_message_count + CASE WHEN ? = 'USER' THEN 1 ELSE 0 END,
+                    total_characters = total_characters + ?,
+                    next_message_order = next_message_order + 1
+                WHERE id = ?
+                """, type.name(), content.length(), id);
+        jdbcTemplate.update("""
+                INSERT INTO chat_messages
+                    (conversation_id, conversation_ref, message_type, content, message_order, created_at)
+                VALUES (?, ?, ?, ?, (SELECT next_message_order FROM chat_conversations WHERE id = ?), ?)
+                """, conversationId, withRef ? id : null, type.name(), content, id, createdAt);
+    }
+
+    private List<String> messageTypes(long id) {
+        return jdbcTemplate.queryForList("""
+                SELECT m.message_type FROM chat_messages m
+                JOIN chat_conversations c ON c.conversation_id = m.conversation_id
+                WHERE c.id = ? ORDER BY m.message_type
+                """, String.class, id);
+    }
+
+    private void assertCounters(long id, int messages, int userMessages, long characters) {
+        Map<String, Object> counters = jdbcTemplate.queryForMap(
+                "SELECT message_count, user_message_count, total_characters FROM chat_conversations WHERE id = ?", id);
+        assertEquals(messages, counters.get("message_count"));
+        assertEquals(userMessages, counters.get("user_message_count"));
+        assertEquals(characters, counters.get("total_characters"));
+    }
+
+    private static class StubConversationCache extends ConversationCache {
+
+        private final List<String> invalidated = new ArrayList<>();
+
+        StubConversationCache() {
+            super(new SimpleMeterRegistry(), null, 1024, 1, 1);
+        }
+
+        @Override
+        public void invalidate(Collection<String> conversationIds) {
+            invalidated.addAll(conversationIds);
+        }
+    }
+
+    private static class StubRefMigrationService extends ConversationRefMigrationService {
+
+        private boolean complete = true;
+
+        StubRefMigrationService() {
+            super(null, null);
+        }
+
+        @Override
+        public boolean isBackfillComplete() {
+            return complete;
+        }
+    }
+}